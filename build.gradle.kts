@@ -13,7 +13,17 @@ java {
     }
 }
 
+// JMH benchmarks of every stage, see src/jmh. Run with ./gradlew jmh -PjmhArgs="LexerBenchmark -p program=closures"
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
 dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.10.0")
     testImplementation("org.junit.jupiter:junit-jupiter-params:5.10.0")
     testImplementation("org.junit.jupiter:junit-jupiter-engine:5.10.0")
@@ -42,6 +52,12 @@ tasks {
         dependsOn("benchmark")
     }
 
+    register<JavaExec>("jmh") {
+        classpath = sourceSets["jmh"].runtimeClasspath
+        mainClass = "org.openjdk.jmh.Main"
+        args = (project.findProperty("jmhArgs") as String? ?: "").split(" ").filter { it.isNotBlank() }
+    }
+
     shadowJar {
         archiveFileName = project.name + ".jar"
     }
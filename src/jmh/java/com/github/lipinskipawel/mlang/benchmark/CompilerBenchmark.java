@@ -0,0 +1,60 @@
+package com.github.lipinskipawel.mlang.benchmark;
+
+import com.github.lipinskipawel.mlang.compiler.Bytecode;
+import com.github.lipinskipawel.mlang.compiler.Compiler;
+import com.github.lipinskipawel.mlang.parser.ast.Program;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+// compilation of parsed programs, without and with the optimizations the benchmark Main uses
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class CompilerBenchmark {
+
+    @Param({"recursion", "closures", "arrays", "hashes", "strings"})
+    public String program;
+
+    private Program parsed;
+
+    @Setup
+    public void setUp() {
+        parsed = Corpus.parse(program);
+    }
+
+    @Benchmark
+    public Bytecode compile() {
+        return compile(compiler());
+    }
+
+    @Benchmark
+    public Bytecode compileOptimized() {
+        return compile(compiler()
+                .withSuperinstructions()
+                .withConstantFolding()
+                .withPeepholeOptimizer());
+    }
+
+    private Bytecode compile(Compiler compiler) {
+        final var error = compiler.compile(parsed);
+        if (error.isPresent()) {
+            throw new IllegalStateException("compiler error [%s]".formatted(error.get()));
+        }
+        return compiler.bytecode();
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.lipinskipawel.mlang.benchmark;
+
+import com.github.lipinskipawel.mlang.parser.Parser;
+import com.github.lipinskipawel.mlang.parser.ast.Program;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// the programs in src/jmh/resources/corpus. Every benchmark runs each of them, the names are the @Param values
+final class Corpus {
+
+    private Corpus() {
+    }
+
+    static String source(String program) {
+        try (var input = Corpus.class.getResourceAsStream("/corpus/%s.monkey".formatted(program))) {
+            if (input == null) {
+                throw new IllegalArgumentException("no program [%s] in the corpus".formatted(program));
+            }
+            return new String(input.readAllBytes(), UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not read program [%s]".formatted(program), e);
+        }
+    }
+
+    static Program parse(String program) {
+        final var parser = new Parser(lexer(source(program)));
+        final var parsed = parser.parseProgram();
+        if (!parser.errors().isEmpty()) {
+            throw new IllegalStateException("parser errors in [%s]: %s".formatted(program, parser.errors()));
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.lipinskipawel.mlang.benchmark;
+
+import com.github.lipinskipawel.mlang.evaluator.Environment;
+import com.github.lipinskipawel.mlang.evaluator.Evaluator;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.parser.ast.Program;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.github.lipinskipawel.mlang.evaluator.Evaluator.evaluator;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+// tree walking evaluation of parsed programs, every run in a new environment
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 3, jvmArgsAppend = "-Xss8m")
+public class EvaluatorBenchmark {
+
+    @Param({"recursion", "closures", "arrays", "hashes", "strings"})
+    public String program;
+
+    private Program parsed;
+    private Evaluator evaluator;
+
+    @Setup
+    public void setUp() {
+        parsed = Corpus.parse(program);
+        evaluator = evaluator();
+    }
+
+    @Benchmark
+    public MonkeyObject eval() {
+        return evaluator.eval(parsed, new Environment());
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.lipinskipawel.mlang.benchmark;
+
+import com.github.lipinskipawel.mlang.evaluator.objects.HashKey;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyHash;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+// lookups of string keys per microsecond. The keys looked up are other MonkeyString instances than the ones in the
+// hash, the way index expressions with string literals look them up
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 3, jvmArgsAppend = "-Xmx2g")
+public class HashBenchmark {
+
+    @Param({"1000000"})
+    public int keys;
+
+    private MonkeyString[] lookups;
+    private MonkeyHash hash;
+    private Map<HashKey, MonkeyObject> map;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        lookups = new MonkeyString[keys];
+        final var builder = MonkeyHash.builder();
+        map = new HashMap<>();
+        for (var i = 0; i < keys; i++) {
+            final var key = new MonkeyString("key-" + i);
+            builder.put(key, monkeyInteger(i));
+            map.put(key.hashKey(), monkeyInteger(i));
+            lookups[i] = new MonkeyString("key-" + i);
+        }
+        hash = builder.build();
+    }
+
+    @Benchmark
+    public MonkeyHash.HashPair monkeyHash() {
+        return hash.get(nextKey());
+    }
+
+    @Benchmark
+    public MonkeyObject hashKeyMap() {
+        return map.get(nextKey().hashKey());
+    }
+
+    private MonkeyString nextKey() {
+        final var key = lookups[next];
+        next = next + 1 == keys ? 0 : next + 1;
+        return key;
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.lipinskipawel.mlang.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static com.github.lipinskipawel.mlang.lexer.token.TokenType.EOF;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// programs lexed per millisecond, every token is read with Lexer.nextToken
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class LexerBenchmark {
+
+    @Param({"recursion", "closures", "arrays", "hashes", "strings"})
+    public String program;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = Corpus.source(program);
+    }
+
+    @Benchmark
+    public void nextToken(Blackhole blackhole) {
+        final var lexer = lexer(source);
+        var token = lexer.nextToken();
+        while (token.type() != EOF) {
+            blackhole.consume(token);
+            token = lexer.nextToken();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.lipinskipawel.mlang.benchmark;
+
+import com.github.lipinskipawel.mlang.parser.Parser;
+import com.github.lipinskipawel.mlang.parser.ast.Program;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// programs lexed and parsed per millisecond
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class ParserBenchmark {
+
+    @Param({"recursion", "closures", "arrays", "hashes", "strings"})
+    public String program;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = Corpus.source(program);
+    }
+
+    @Benchmark
+    public Program parseProgram() {
+        return new Parser(lexer(source)).parseProgram();
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.lipinskipawel.mlang.benchmark;
+
+import com.github.lipinskipawel.mlang.compiler.Bytecode;
+import com.github.lipinskipawel.mlang.parser.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.virtualMachine;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// a string built by appends of 10 characters and flattened by inspect, 100000 appends build 1MB. Appends are linear
+// when the time grows with the number of appends, not with its square
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class StringBenchmark {
+
+    @Param({"25000", "50000", "100000"})
+    public int appends;
+
+    private Bytecode bytecode;
+
+    @Setup
+    public void setUp() {
+        final var source = """
+                let append = fn(string, n) {
+                  if (n == 0) { string } else { append(string + "0123456789", n - 1) }
+                };
+                append("", %d);
+                """.formatted(appends);
+        final var compiler = compiler();
+        final var error = compiler.compile(new Parser(lexer(source)).parseProgram());
+        if (error.isPresent()) {
+            throw new IllegalStateException("compiler error [%s]".formatted(error.get()));
+        }
+        bytecode = compiler.bytecode().freeze();
+    }
+
+    @Benchmark
+    public String append() {
+        final var vm = virtualMachine(bytecode);
+        vm.run();
+        return vm.lastPoppedStackElement().inspect();
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.lipinskipawel.mlang.benchmark;
+
+import com.github.lipinskipawel.mlang.compiler.Bytecode;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.vm.VirtualMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.virtualMachine;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+// runs of programs compiled once, every run in a new virtual machine. The engines are the plain interpreter, the
+// interpreter with unboxed integers and the interpreter with unboxed integers and the JIT
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class VirtualMachineBenchmark {
+
+    @Param({"recursion", "closures", "arrays", "hashes", "strings"})
+    public String program;
+
+    @Param({"interpreter", "unboxed", "jit"})
+    public String engine;
+
+    private Bytecode bytecode;
+
+    @Setup
+    public void setUp() {
+        final var compiler = compiler()
+                .withSuperinstructions()
+                .withConstantFolding()
+                .withPeepholeOptimizer();
+        final var error = compiler.compile(Corpus.parse(program));
+        if (error.isPresent()) {
+            throw new IllegalStateException("compiler error [%s]".formatted(error.get()));
+        }
+        bytecode = compiler.bytecode().freeze();
+    }
+
+    @Benchmark
+    public MonkeyObject run() {
+        final var vm = configure(virtualMachine(bytecode));
+        vm.run();
+        return vm.lastPoppedStackElement();
+    }
+
+    private VirtualMachine configure(VirtualMachine vm) {
+        return switch (engine) {
+            case "interpreter" -> vm;
+            case "unboxed" -> vm.withUnboxedIntegers();
+            case "jit" -> vm.withUnboxedIntegers().withJit();
+            default -> throw new IllegalArgumentException("unknown engine [%s]".formatted(engine));
+        };
+    }
+}
@@ -3,18 +3,27 @@ package com.github.lipinskipawel.mlang.benchmark;
 import com.github.lipinskipawel.mlang.evaluator.Environment;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
 import com.github.lipinskipawel.mlang.parser.Parser;
+import com.github.lipinskipawel.mlang.parser.ast.Program;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 
 import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
+import static com.github.lipinskipawel.mlang.compiler.PeepholeOptimizer.peepholeOptimizer;
+import static com.github.lipinskipawel.mlang.compiler.RegisterCompiler.registerCompiler;
 import static com.github.lipinskipawel.mlang.evaluator.Evaluator.evaluator;
 import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static com.github.lipinskipawel.mlang.vm.RegisterVirtualMachine.registerVirtualMachine;
 import static com.github.lipinskipawel.mlang.vm.VirtualMachine.virtualMachine;
 import static java.lang.System.nanoTime;
 import static java.time.temporal.ChronoUnit.NANOS;
 import static java.util.Optional.ofNullable;
 
 public final class Main {
+    private static final List<String> ENGINES = List.of("eval", "vm", "jit", "register");
+    // not part of all, it prints the profile of the virtual machine
+    private static final String PROFILE = "profile";
     private static final String BENCHMARK_PROGRAM = """
             let fibonacci = fn(x) {
               if (x == 0) {
@@ -30,41 +39,84 @@ public final class Main {
             fibonacci(35);
             """;
 
+    private record Result(MonkeyObject result, Duration duration) {
+    }
+
     public static void main(String[] args) {
         final var engine = parseArgument(args);
-        MonkeyObject result;
-        Duration duration;
 
         final var lexer = lexer(BENCHMARK_PROGRAM);
         final var parser = new Parser(lexer);
         final var program = parser.parseProgram();
 
-        if (engine.equals("eval")) {
-            final var environment = new Environment();
-            final var evaluator = evaluator();
-            final var start = nanoTime();
+        final var engines = engine.equals("all") ? ENGINES : List.of(engine);
+        for (var it : engines) {
+            final var result = switch (it) {
+                case "eval" -> runEvaluator(program);
+                case "vm" -> runVirtualMachine(program, false, false);
+                case "jit" -> runVirtualMachine(program, true, false);
+                case PROFILE -> runVirtualMachine(program, false, true);
+                default -> runRegisterVirtualMachine(program);
+            };
+            result.ifPresent(r ->
+                    System.out.printf("engine=%s, result=%s, duration=%s%n", it, r.result().inspect(), r.duration()));
+        }
+    }
+
+    private static Optional<Result> runEvaluator(Program program) {
+        final var environment = new Environment();
+        final var evaluator = evaluator();
+        final var start = nanoTime();
 
-            result = evaluator.eval(program, environment);
-            final var end = nanoTime();
-            duration = Duration.of(end - start, NANOS);
-        } else {
-            final var compiler = compiler();
-            var error = compiler.compile(program);
-            if (error.isPresent()) {
-                System.out.printf("compiler error [%s]%n", error.get());
-                return;
-            }
+        final var result = evaluator.eval(program, environment);
+        final var end = nanoTime();
+        return Optional.of(new Result(result, Duration.of(end - start, NANOS)));
+    }
 
-            final var vm = virtualMachine(compiler.bytecode());
-            final var start = nanoTime();
-            vm.run();
-            final var end = nanoTime();
+    private static Optional<Result> runVirtualMachine(Program program, boolean jit, boolean profile) {
+        final var peephole = peepholeOptimizer();
+        final var compiler = compiler()
+                .withSuperinstructions()
+                .withConstantFolding()
+                .withPeepholeOptimizer(peephole);
+        var error = compiler.compile(program);
+        if (error.isPresent()) {
+            System.out.printf("compiler error [%s]%n", error.get());
+            return Optional.empty();
+        }
+        final var bytecode = compiler.bytecode();
+        peephole.statistics().forEach(it -> System.out.printf("peephole pass=%s, rewrites=%d, bytes saved=%d%n",
+                it.pass(), it.rewrites(), it.bytesSaved()));
+
+        final var vm = virtualMachine(bytecode).withUnboxedIntegers();
+        if (jit) {
+            vm.withJit();
+        }
+        if (profile) {
+            vm.withProfiler();
+        }
+        final var start = nanoTime();
+        vm.run();
+        final var end = nanoTime();
+        if (profile) {
+            System.out.print(vm.profile().report());
+        }
+        return Optional.of(new Result(vm.lastPoppedStackElement(), Duration.of(end - start, NANOS)));
+    }
 
-            result = vm.lastPoppedStackElement();
-            duration = Duration.of(end - start, NANOS);
+    private static Optional<Result> runRegisterVirtualMachine(Program program) {
+        final var compiler = registerCompiler();
+        var error = compiler.compile(program);
+        if (error.isPresent()) {
+            System.out.printf("compiler error [%s]%n", error.get());
+            return Optional.empty();
         }
 
-        System.out.printf("engine=%s, result=%s, duration=%s", engine, result.inspect(), duration);
+        final var vm = registerVirtualMachine(compiler.bytecode());
+        final var start = nanoTime();
+        vm.run();
+        final var end = nanoTime();
+        return Optional.of(new Result(vm.lastPoppedStackElement(), Duration.of(end - start, NANOS)));
     }
 
     private static String parseArgument(String[] args) {
@@ -72,10 +124,10 @@ public final class Main {
                 .map(it -> it.split("="))
                 .filter(it -> it[0].equals("--engine"))
                 .map(it -> it[1])
-                .filter(it -> it.equals("eval") || it.equals("vm"));
+                .filter(it -> it.equals("all") || it.equals(PROFILE) || ENGINES.contains(it));
         if (chosenEngine.isEmpty()) {
             System.err.println("Engine has not been chosen. Fallback to eval");
-            System.err.println("Usage: --engine=eval or --engine=vm");
+            System.err.println("Usage: --engine=eval, --engine=vm, --engine=jit, --engine=register, --engine=all or --engine=profile");
             return "eval";
         }
         return chosenEngine.get();
@@ -0,0 +1,128 @@
+package com.github.lipinskipawel.mlang.benchmark;
+
+import com.github.lipinskipawel.mlang.compiler.Bytecode;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
+import static com.github.lipinskipawel.mlang.compiler.SymbolTable.symbolTable;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static com.github.lipinskipawel.mlang.object.Builtins.builtins;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.virtualMachine;
+import static com.github.lipinskipawel.mlang.vm.VmConfig.vmConfig;
+import static java.lang.System.nanoTime;
+
+// runs one frozen Bytecode on 1, 2, 4 ... threads, every run in its own virtual machine with its own input. The work
+// per thread is fixed, so with linear scaling the runs per second grow with the number of threads.
+// Usage: --runs=N runs per thread, --threads=N the most threads to try, defaults to the number of cores
+public final class Throughput {
+    private static final String PROGRAM = """
+            let fibonacci = fn(x) {
+              if (x == 0) {
+                0
+              } else {
+                if (x == 1) {
+                  return 1;
+                } else {
+                  fibonacci(x - 1) + fibonacci(x - 2);
+                }
+              }
+            };
+            fibonacci(input);
+            """;
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        final var runs = intArgument(args, "--runs", 200);
+        final var maxThreads = intArgument(args, "--threads", Runtime.getRuntime().availableProcessors());
+        final var bytecode = compile();
+
+        // warm up the JVM before measuring
+        for (var i = 0; i < 5; i++) {
+            measure(bytecode, maxThreads, runs);
+        }
+
+        final var singleThreaded = measure(bytecode, 1, runs);
+        System.out.printf("threads=1, runs/s=%.1f, speedup=1.00%n", singleThreaded);
+        for (var threads : threadCounts(maxThreads)) {
+            final var runsPerSecond = measure(bytecode, threads, runs);
+            System.out.printf("threads=%d, runs/s=%.1f, speedup=%.2f%n", threads, runsPerSecond, runsPerSecond / singleThreaded);
+        }
+    }
+
+    // 2, 4, 8 ... up to and including maxThreads
+    private static List<Integer> threadCounts(int maxThreads) {
+        final var counts = new ArrayList<Integer>();
+        for (var threads = 2; threads < maxThreads; threads *= 2) {
+            counts.add(threads);
+        }
+        if (maxThreads > 1) {
+            counts.add(maxThreads);
+        }
+        return counts;
+    }
+
+    private static Bytecode compile() {
+        final var symbolTable = symbolTable();
+        final var builtins = builtins();
+        for (var i = 0; i < builtins.size(); i++) {
+            symbolTable.defineBuiltin(i, builtins.get(i).name());
+        }
+        symbolTable.define("input");
+
+        final var compiler = compiler(new ArrayList<>(), symbolTable).withSuperinstructions();
+        final var error = compiler.compile(new Parser(lexer(PROGRAM)).parseProgram());
+        if (error.isPresent()) {
+            throw new IllegalStateException("compiler error [%s]".formatted(error.get()));
+        }
+        return compiler.bytecode().freeze();
+    }
+
+    private static double measure(Bytecode bytecode, int threads, int runs) throws InterruptedException, ExecutionException {
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            final var results = new ArrayList<Future<Long>>();
+            final var start = nanoTime();
+            for (var thread = 0; thread < threads; thread++) {
+                results.add(executor.submit(() -> runAll(bytecode, runs)));
+            }
+            var checksum = 0L;
+            for (var result : results) {
+                checksum += result.get();
+            }
+            final var seconds = (nanoTime() - start) / 1e9;
+            if (checksum == 0) {
+                throw new IllegalStateException("no results");
+            }
+            return threads * runs / seconds;
+        }
+    }
+
+    private static long runAll(Bytecode bytecode, int runs) {
+        var checksum = 0L;
+        for (var run = 0; run < runs; run++) {
+            // input is the first global defined, see compile()
+            final var globals = new MonkeyObject[vmConfig().globalsCapacity()];
+            globals[0] = monkeyInteger(15 + run % 5);
+
+            final var vm = virtualMachine(bytecode, globals);
+            vm.run();
+            checksum += Long.parseLong(vm.lastPoppedStackElement().inspect());
+        }
+        return checksum;
+    }
+
+    private static int intArgument(String[] args, String name, int defaultValue) {
+        return List.of(args).stream()
+                .map(it -> it.split("="))
+                .filter(it -> it.length == 2 && it[0].equals(name))
+                .map(it -> Integer.parseInt(it[1]))
+                .findFirst()
+                .orElse(defaultValue);
+    }
+}
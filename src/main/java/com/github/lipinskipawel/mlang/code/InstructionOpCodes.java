@@ -32,4 +32,22 @@ public interface InstructionOpCodes {
     int OP_CLOSURE = 28;
     int OP_GET_FREE = 29;
     int OP_CURRENT_CLOSURE = 30;
+
+    // superinstructions, see Superinstructions in the compiler package
+    int OP_ADD_LOCAL_CONSTANT = 31;
+    int OP_SUB_LOCAL_CONSTANT = 32;
+    int OP_JUMP_NOT_EQUAL = 33;
+    int OP_JUMP_NOT_GREATER_THAN = 34;
+    int OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL = 35;
+    int OP_GET_LOCAL_CALL = 36;
+
+    // OP_CALL in tail position, see TailCalls in the compiler package
+    int OP_TAIL_CALL = 37;
+
+    // duplicates the top of the stack, see PeepholeOptimizer in the compiler package
+    int OP_DUP = 38;
+
+    // superinstructions of recursive functions, see Superinstructions in the compiler package
+    int OP_SELF_CALL_SUB_LOCAL_CONSTANT = 39;
+    int OP_ADD_RETURN_VALUE = 40;
 }
@@ -7,13 +7,24 @@ import java.util.List;
 
 import static java.lang.System.arraycopy;
 import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.util.Arrays.copyOf;
 import static java.util.Arrays.stream;
 
 public final class Instructions {
-    byte[] instructions;
+    private byte[] instructions; // grows by doubling, only the first length bytes are instructions
+    private int length;
+    private volatile int[] decoded; // lazily computed, see decoded()
+    private ByteBuffer region; // the bytes are copied out of it on first use, see mapped() and freeze()
+    private boolean frozen; // see freeze()
 
     private Instructions(byte[] instructions) {
         this.instructions = instructions;
+        this.length = instructions.length;
+    }
+
+    private Instructions(ByteBuffer region) {
+        this.region = region;
+        this.length = region.remaining();
     }
 
     public static Instructions noInstructions() {
@@ -24,6 +35,12 @@ public final class Instructions {
         return new Instructions(instructions);
     }
 
+    // instructions over the remaining bytes of the region, e.g. a memory mapped file. Nothing is read from the region
+    // until the instructions are used, so functions which never run are never copied out of it
+    public static Instructions mapped(ByteBuffer region) {
+        return new Instructions(region.slice());
+    }
+
     public static byte[] make(OpCode op, int[] operands) {
         final var definition = op.definition();
 
@@ -54,7 +71,7 @@ public final class Instructions {
         var offset = 0;
 
         for (var i = 0; i < definition.operandWidths().length; i++) {
-            final var wrap = ByteBuffer.wrap(instructions.instructions).order(BIG_ENDIAN);
+            final var wrap = ByteBuffer.wrap(instructions.bytes()).order(BIG_ENDIAN);
             var width = definition.operandWidths()[i];
             switch (width) {
                 case 1: {
@@ -92,35 +109,106 @@ public final class Instructions {
                 .mapToInt(Instructions::length)
                 .sum();
         final var contacted = ByteBuffer.allocate(length).order(BIG_ENDIAN);
-        instructions.stream()
-                .map(it -> it.instructions)
-                .forEach(contacted::put);
+        instructions.forEach(it -> contacted.put(it.bytes(), 0, it.length));
 
         return instructions(contacted.array());
     }
 
+    // read-only instructions which can be shared between virtual machines and threads. Frozen instructions over a
+    // region stay over it and are never copied out of it, they are decoded straight from the region on first use
+    public Instructions freeze() {
+        if (frozen) {
+            return this;
+        }
+        if (isMapped()) {
+            final var mapped = new Instructions(region);
+            mapped.frozen = true;
+            return mapped;
+        }
+        final var copy = new Instructions(copyOf(bytes(), length));
+        copy.decoded();
+        copy.frozen = true;
+        return copy;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    // the bytes are still read from the region, nothing was copied out of it
+    public boolean isMapped() {
+        return instructions == null;
+    }
+
     public void append(Instructions additional) {
-        final var byteBuffer = ByteBuffer.allocate(instructions.length + additional.length()).order(BIG_ENDIAN);
-        byteBuffer.put(instructions);
-        byteBuffer.put(additional.instructions);
+        checkNotFrozen();
+        ensureCapacity(length + additional.length);
+        arraycopy(additional.bytes(), 0, instructions, length, additional.length);
+        length += additional.length;
+        decoded = null;
+    }
+
+    // encodes the instruction straight into the buffer, same layout as make(). Returns its position
+    public int append(OpCode op, int[] operands) {
+        checkNotFrozen();
+        final var widths = op.definition().operandWidths();
+        var instructionLen = 1;
+        for (var width : widths) {
+            instructionLen += width;
+        }
+        ensureCapacity(length + instructionLen);
+
+        final var position = length;
+        instructions[length++] = op.opCode;
+        for (var i = 0; i < operands.length; i++) {
+            switch (widths[i]) {
+                case 1 -> instructions[length++] = (byte) operands[i];
+                case 2 -> {
+                    instructions[length++] = (byte) (operands[i] >> 8);
+                    instructions[length++] = (byte) operands[i];
+                }
+            }
+        }
+        decoded = null;
+        return position;
+    }
 
-        instructions = byteBuffer.array();
+    // drops every instruction from position on, the buffer keeps its capacity
+    public void truncate(int position) {
+        checkNotFrozen();
+        length = position;
+        decoded = null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        bytes();
+        if (capacity > instructions.length) {
+            instructions = copyOf(instructions, Math.max(capacity, Math.max(16, instructions.length * 2)));
+        }
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("instructions are frozen");
+        }
     }
 
     public int length() {
-        return instructions.length;
+        return length;
     }
 
     public void replaceInstructions(int pos, byte[] newInstructions) {
-        arraycopy(newInstructions, 0, instructions, pos, newInstructions.length);
+        checkNotFrozen();
+        arraycopy(newInstructions, 0, bytes(), pos, newInstructions.length);
+        decoded = null;
     }
 
     public byte instructionAt(int position) {
-        return instructions[position];
+        return isMapped() ? region.get(position) : instructions[position];
     }
 
     public byte[] slice(int start, int end) {
-        final var byteBuffer = ByteBuffer.wrap(instructions).order(BIG_ENDIAN);
+        final var byteBuffer = ByteBuffer.wrap(bytes()).order(BIG_ENDIAN);
         byteBuffer.position(start);
         byteBuffer.limit(end);
 
@@ -130,18 +218,68 @@ public final class Instructions {
         return slice;
     }
 
+    // same layout as the byte stream, so jump targets and instruction widths stay valid,
+    // but every operand is already widened to int and stored in the first slot after its opcode.
+    // Threads sharing frozen instructions may decode them at the same time, each of them publishes an equal array
+    public int[] decoded() {
+        var code = decoded;
+        if (code == null) {
+            code = decode();
+            decoded = code;
+        }
+        return code;
+    }
+
+    private int[] decode() {
+        final var code = new int[length];
+
+        var i = 0;
+        while (i < length) {
+            final var definition = OpCode.definition(instructionAt(i));
+            code[i] = instructionAt(i);
+
+            var offset = i + 1;
+            for (var width : definition.operandWidths()) {
+                code[offset] = switch (width) {
+                    case 1 -> instructionAt(offset) & 0xFF;
+                    case 2 -> readShort(offset) & 0xFFFF;
+                    default -> throw new IllegalStateException("unsupported operand width [%d]".formatted(width));
+                };
+                offset += width;
+            }
+            i = offset;
+        }
+
+        return code;
+    }
+
     public short readShort(int start) {
-        return (short) (instructions[start] << 8 | (instructions[start + 1] & 0xFF));
+        return (short) (instructionAt(start) << 8 | (instructionAt(start + 1) & 0xFF));
+    }
+
+    // frozen instructions over a region hand out a copy every time, they are shared and never change
+    private byte[] bytes() {
+        if (instructions == null) {
+            final var bytes = new byte[length];
+            region.get(0, bytes);
+            if (frozen) {
+                return bytes;
+            }
+            instructions = bytes;
+        }
+        return instructions;
     }
 
     @Override
     public String toString() {
+        final var instructions = bytes();
         final var string = new StringBuilder();
 
         var i = 0;
-        while (i < instructions.length) {
+        while (i < length) {
             final var definition = OpCode.definition(instructions[i]);
-            final var operands = readOperands(definition, instructions(slice(i + 1, this.instructions.length)));
+            final var end = Math.min(length, i + 1 + stream(definition.operandWidths()).sum());
+            final var operands = readOperands(definition, instructions(slice(i + 1, end)));
 
             string.append("%04d %s\n".formatted(i, fmtInstruction(definition, operands.operands())));
 
@@ -162,6 +300,7 @@ public final class Instructions {
             case 0 -> definition.name();
             case 1 -> "%s %d".formatted(definition.name(), operands[0]);
             case 2 -> "%s %d %d".formatted(definition.name(), operands[0], operands[1]);
+            case 3 -> "%s %d %d %d".formatted(definition.name(), operands[0], operands[1], operands[2]);
             default -> "ERROR: unhandled operandCount for %s\n".formatted(definition.name());
         };
     }
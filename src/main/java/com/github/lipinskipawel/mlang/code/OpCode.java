@@ -34,7 +34,21 @@ public enum OpCode {
     OP_GET_BUILTIN((byte) 27),
     OP_CLOSURE((byte) 28),
     OP_GET_FREE((byte) 29),
-    OP_CURRENT_CLOSURE((byte) 30);
+    OP_CURRENT_CLOSURE((byte) 30),
+
+    OP_ADD_LOCAL_CONSTANT((byte) 31),
+    OP_SUB_LOCAL_CONSTANT((byte) 32),
+    OP_JUMP_NOT_EQUAL((byte) 33),
+    OP_JUMP_NOT_GREATER_THAN((byte) 34),
+    OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL((byte) 35),
+    OP_GET_LOCAL_CALL((byte) 36),
+
+    OP_TAIL_CALL((byte) 37),
+
+    OP_DUP((byte) 38),
+
+    OP_SELF_CALL_SUB_LOCAL_CONSTANT((byte) 39),
+    OP_ADD_RETURN_VALUE((byte) 40);
 
     final byte opCode;
 
@@ -75,13 +89,32 @@ public enum OpCode {
             entry(OP_GET_BUILTIN, new Definition("OpGetBuiltin", new int[]{1})),
             entry(OP_CLOSURE, new Definition("OpClosure", new int[]{2, 1})), // index of compiledFunction, num of free variables
             entry(OP_GET_FREE, new Definition("OpGetFree", new int[]{1})),
-            entry(OP_CURRENT_CLOSURE, new Definition("OpCurrentClosure", new int[0]))
+            entry(OP_CURRENT_CLOSURE, new Definition("OpCurrentClosure", new int[0])),
+            entry(OP_ADD_LOCAL_CONSTANT, new Definition("OpAddLocalConstant", new int[]{1, 2})), // local index, constant index
+            entry(OP_SUB_LOCAL_CONSTANT, new Definition("OpSubLocalConstant", new int[]{1, 2})), // local index, constant index
+            entry(OP_JUMP_NOT_EQUAL, new Definition("OpJumpNotEqual", new int[]{2})),
+            entry(OP_JUMP_NOT_GREATER_THAN, new Definition("OpJumpNotGreaterThan", new int[]{2})),
+            entry(OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL, new Definition("OpJumpLocalConstantNotEqual", new int[]{1, 2, 2})), // local index, constant index, jump position
+            entry(OP_GET_LOCAL_CALL, new Definition("OpGetLocalCall", new int[]{1, 1})), // local index, num of arguments
+            entry(OP_TAIL_CALL, new Definition("OpTailCall", new int[]{1})),
+            entry(OP_DUP, new Definition("OpDup", new int[0])),
+            entry(OP_SELF_CALL_SUB_LOCAL_CONSTANT, new Definition("OpSelfCallSubLocalConstant", new int[]{1, 2})), // local index, constant index of the one argument
+            entry(OP_ADD_RETURN_VALUE, new Definition("OpAddReturnValue", new int[0]))
     );
 
     public Definition definition() {
         return DEFINITIONS.get(this);
     }
 
+    // index of the operand holding the jump position, -1 when the instruction does not jump
+    public int jumpOperandIndex() {
+        return switch (this) {
+            case OP_JUMP, OP_JUMP_NOT_TRUTHY, OP_JUMP_NOT_EQUAL, OP_JUMP_NOT_GREATER_THAN -> 0;
+            case OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL -> 2;
+            default -> -1;
+        };
+    }
+
     public static OpCode opCode(byte oneByte) {
         return switch (oneByte) {
             case 1 -> OP_CONSTANT;
@@ -114,6 +147,16 @@ public enum OpCode {
             case 28 -> OP_CLOSURE;
             case 29 -> OP_GET_FREE;
             case 30 -> OP_CURRENT_CLOSURE;
+            case 31 -> OP_ADD_LOCAL_CONSTANT;
+            case 32 -> OP_SUB_LOCAL_CONSTANT;
+            case 33 -> OP_JUMP_NOT_EQUAL;
+            case 34 -> OP_JUMP_NOT_GREATER_THAN;
+            case 35 -> OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL;
+            case 36 -> OP_GET_LOCAL_CALL;
+            case 37 -> OP_TAIL_CALL;
+            case 38 -> OP_DUP;
+            case 39 -> OP_SELF_CALL_SUB_LOCAL_CONSTANT;
+            case 40 -> OP_ADD_RETURN_VALUE;
             default -> throw new IllegalArgumentException("No opcode defined for [%s]".formatted(oneByte));
         };
     }
@@ -150,6 +193,16 @@ public enum OpCode {
             case 28 -> DEFINITIONS.get(OP_CLOSURE);
             case 29 -> DEFINITIONS.get(OP_GET_FREE);
             case 30 -> DEFINITIONS.get(OP_CURRENT_CLOSURE);
+            case 31 -> DEFINITIONS.get(OP_ADD_LOCAL_CONSTANT);
+            case 32 -> DEFINITIONS.get(OP_SUB_LOCAL_CONSTANT);
+            case 33 -> DEFINITIONS.get(OP_JUMP_NOT_EQUAL);
+            case 34 -> DEFINITIONS.get(OP_JUMP_NOT_GREATER_THAN);
+            case 35 -> DEFINITIONS.get(OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL);
+            case 36 -> DEFINITIONS.get(OP_GET_LOCAL_CALL);
+            case 37 -> DEFINITIONS.get(OP_TAIL_CALL);
+            case 38 -> DEFINITIONS.get(OP_DUP);
+            case 39 -> DEFINITIONS.get(OP_SELF_CALL_SUB_LOCAL_CONSTANT);
+            case 40 -> DEFINITIONS.get(OP_ADD_RETURN_VALUE);
             default -> throw new IllegalStateException("Unexpected value: " + op);
         };
     }
@@ -0,0 +1,38 @@
+package com.github.lipinskipawel.mlang.code;
+
+// three-address instructions of the register virtual machine.
+// Every instruction takes INSTRUCTION_WIDTH ints: opcode followed by operands a, b, c.
+// Registers are relative to the base of the current frame.
+public interface RegisterOpCodes {
+
+    int INSTRUCTION_WIDTH = 4;
+
+    int R_LOAD_CONSTANT = 1; // a = constants[b]
+    int R_LOAD_TRUE = 2; // a = true
+    int R_LOAD_FALSE = 3; // a = false
+    int R_LOAD_NULL = 4; // a = null
+    int R_MOVE = 5; // a = b
+    int R_ADD = 6; // a = b + c
+    int R_SUB = 7; // a = b - c
+    int R_MUL = 8; // a = b * c
+    int R_DIV = 9; // a = b / c
+    int R_EQUAL = 10; // a = b == c
+    int R_NOT_EQUAL = 11; // a = b != c
+    int R_GREATER_THAN = 12; // a = b > c
+    int R_MINUS = 13; // a = -b
+    int R_BANG = 14; // a = !b
+    int R_JUMP = 15; // jump to a
+    int R_JUMP_NOT_TRUTHY = 16; // if !a jump to b
+    int R_GET_GLOBAL = 17; // a = globals[b]
+    int R_SET_GLOBAL = 18; // globals[a] = b
+    int R_GET_BUILTIN = 19; // a = builtins[b]
+    int R_GET_FREE = 20; // a = free[b]
+    int R_CURRENT_CLOSURE = 21; // a = current closure
+    int R_ARRAY = 22; // a = [b, b + 1, ..., b + c - 1]
+    int R_HASH = 23; // a = {b: b + 1, ..., b + c - 2: b + c - 1}
+    int R_INDEX = 24; // a = b[c]
+    int R_CALL = 25; // a = b(b + 1, ..., b + c)
+    int R_RETURN = 26; // return a
+    int R_CLOSURE = 27; // a = closure(constants[b]) capturing free variables from registers c, c + 1, ...
+    int R_POP = 28; // a is the value of a top level expression statement
+}
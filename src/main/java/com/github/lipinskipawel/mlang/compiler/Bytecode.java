@@ -1,9 +1,31 @@
 package com.github.lipinskipawel.mlang.compiler;
 
 import com.github.lipinskipawel.mlang.code.Instructions;
+import com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
 
 import java.util.List;
 
+import static com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction.compilerFunction;
+
 public record Bytecode(Instructions instructions, List<MonkeyObject> constants) {
+
+    // read-only copy with frozen instructions in the program and in every function, see Instructions.freeze().
+    // Integer and string constants are immutable, so the frozen Bytecode can be run by many virtual machines at once
+    public Bytecode freeze() {
+        if (isFrozen()) {
+            return this;
+        }
+        final var frozenConstants = constants.stream()
+                .map(it -> it instanceof CompilerFunction function
+                        ? compilerFunction(function.instructions().freeze(), function.numberOfLocals(), function.numberOfParameters())
+                        : it)
+                .toList();
+        return new Bytecode(instructions.freeze(), frozenConstants);
+    }
+
+    public boolean isFrozen() {
+        return instructions.isFrozen() && constants.stream()
+                .allMatch(it -> !(it instanceof CompilerFunction function) || function.instructions().isFrozen());
+    }
 }
@@ -0,0 +1,187 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.code.Instructions;
+import com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static com.github.lipinskipawel.mlang.code.Instructions.mapped;
+import static com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction.compilerFunction;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
+import static com.github.lipinskipawel.mlang.object.Builtins.builtins;
+import static com.github.lipinskipawel.mlang.object.StringTable.constant;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+// binary format of Bytecode, big endian:
+//   magic         int    "MONK"
+//   version       short  VERSION, bumped whenever the layout or the op codes change
+//   builtins      short  number of builtins the instructions were compiled against
+//   constants     int    count, then every constant as a tag byte followed by
+//                          INTEGER   int value
+//                          STRING    int length, UTF-8 bytes
+//                          FUNCTION  int locals, int parameters, int length, instructions
+//   instructions  int    length, then the instructions of the main program
+// Instructions are not copied when the file is loaded, they are read lazily from the mapped file, see
+// Instructions.mapped()
+public final class BytecodeFile {
+    static final int MAGIC = 0x4D4F4E4B;
+    static final short VERSION = 1;
+
+    private static final byte INTEGER = 1;
+    private static final byte STRING = 2;
+    private static final byte FUNCTION = 3;
+
+    private BytecodeFile() {
+    }
+
+    public static void write(Bytecode bytecode, Path path) {
+        final var buffer = encode(bytecode);
+        try {
+            Files.write(path, buffer.array());
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not write bytecode to [%s]".formatted(path), e);
+        }
+    }
+
+    public static Bytecode load(Path path) {
+        try (var channel = FileChannel.open(path, READ)) {
+            // the mapping stays valid after the channel is closed
+            return decode(channel.map(READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not load bytecode from [%s]".formatted(path), e);
+        }
+    }
+
+    public static ByteBuffer encode(Bytecode bytecode) {
+        final var constants = bytecode.constants();
+        final var encodedStrings = new ArrayList<byte[]>();
+
+        var size = 4 + 2 + 2 + 4 + 4 + bytecode.instructions().length();
+        for (var constant : constants) {
+            size += 1 + switch (constant) {
+                case MonkeyInteger __ -> 4;
+                case MonkeyString string -> {
+                    final var bytes = string.value().getBytes(UTF_8);
+                    encodedStrings.add(bytes);
+                    yield 4 + bytes.length;
+                }
+                case CompilerFunction function -> 4 + 4 + 4 + function.instructions().length();
+                default -> throw new IllegalArgumentException("unsupported constant [%s]".formatted(constant.type()));
+            };
+        }
+
+        final var buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) builtins().size());
+
+        buffer.putInt(constants.size());
+        var strings = 0;
+        for (var constant : constants) {
+            switch (constant) {
+                case MonkeyInteger integer -> buffer.put(INTEGER).putInt(integer.value());
+                case MonkeyString __ -> {
+                    final var bytes = encodedStrings.get(strings++);
+                    buffer.put(STRING).putInt(bytes.length).put(bytes);
+                }
+                case CompilerFunction function -> {
+                    buffer.put(FUNCTION)
+                            .putInt(function.numberOfLocals())
+                            .putInt(function.numberOfParameters());
+                    putInstructions(buffer, function.instructions());
+                }
+                default -> throw new IllegalArgumentException("unsupported constant [%s]".formatted(constant.type()));
+            }
+        }
+        putInstructions(buffer, bytecode.instructions());
+
+        return buffer.flip();
+    }
+
+    // the instructions keep reading from the buffer, so it must not change afterwards
+    public static Bytecode decode(ByteBuffer buffer) {
+        final var input = buffer.duplicate();
+        if (input.remaining() < 8 || input.getInt() != MAGIC) {
+            throw new IllegalArgumentException("not a bytecode file");
+        }
+        final var version = input.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported bytecode version [%d], expected [%d]".formatted(version, VERSION));
+        }
+        final var builtins = input.getShort();
+        if (builtins != builtins().size()) {
+            throw new IllegalArgumentException("bytecode compiled against [%d] builtins, there are [%d]".formatted(builtins, builtins().size()));
+        }
+
+        // every constant takes at least one byte, so the count of a truncated file is bounded by what is left
+        final var count = length(input);
+        final var constants = new ArrayList<MonkeyObject>(count);
+        for (var i = 0; i < count; i++) {
+            require(input, 1);
+            final var tag = input.get();
+            constants.add(switch (tag) {
+                case INTEGER -> {
+                    require(input, 4);
+                    yield monkeyInteger(input.getInt());
+                }
+                case STRING -> {
+                    final var bytes = new byte[length(input)];
+                    input.get(bytes);
+                    yield constant(new String(bytes, UTF_8));
+                }
+                case FUNCTION -> {
+                    require(input, 8);
+                    final var locals = input.getInt();
+                    final var parameters = input.getInt();
+                    yield compilerFunction(instructions(input), locals, parameters);
+                }
+                default -> throw new IllegalArgumentException("unknown constant tag [%d]".formatted(tag));
+            });
+        }
+        final var instructions = instructions(input);
+        if (input.hasRemaining()) {
+            throw new IllegalArgumentException("trailing bytes in bytecode file");
+        }
+        return new Bytecode(instructions, constants);
+    }
+
+    // a length or count which fits into the rest of the input
+    private static int length(ByteBuffer input) {
+        require(input, 4);
+        final var length = input.getInt();
+        if (length < 0) {
+            throw new IllegalArgumentException("negative length [%d] in bytecode file".formatted(length));
+        }
+        require(input, length);
+        return length;
+    }
+
+    private static void require(ByteBuffer input, int bytes) {
+        if (input.remaining() < bytes) {
+            throw new IllegalArgumentException("truncated bytecode file");
+        }
+    }
+
+    private static void putInstructions(ByteBuffer buffer, Instructions instructions) {
+        buffer.putInt(instructions.length());
+        buffer.put(instructions.slice(0, instructions.length()));
+    }
+
+    private static Instructions instructions(ByteBuffer input) {
+        final var length = length(input);
+        final var instructions = mapped(input.slice(input.position(), length));
+        input.position(input.position() + length);
+        return instructions;
+    }
+}
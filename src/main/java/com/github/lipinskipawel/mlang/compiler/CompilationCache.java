@@ -0,0 +1,185 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.parser.Parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static com.github.lipinskipawel.mlang.object.Builtins.builtins;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+// compiles source through Lexer, Parser and Compiler once per distinct source. Bytecode is keyed by the SHA-256 of the
+// builtin table, the BytecodeFile version and the source, and is frozen before it is handed out, so every caller gets
+// the same read-only Bytecode. The memory tier keeps the most recently used entries. The optional disk tier keeps every entry as a
+// BytecodeFile named after its key, so it must not be shared by caches with differently configured compilers
+public final class CompilationCache {
+    private final int capacity;
+    private final Supplier<Compiler> compilers;
+    private final Map<String, Bytecode> entries;
+    private Path directory;
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+
+    public record Metrics(long hits, long diskHits, long misses, long evictions, int size) {
+    }
+
+    private CompilationCache(int capacity, Supplier<Compiler> compilers) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive, got %d".formatted(capacity));
+        }
+        this.capacity = capacity;
+        this.compilers = compilers;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Bytecode> eldest) {
+                if (size() > CompilationCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static CompilationCache compilationCache(int capacity) {
+        return new CompilationCache(capacity, Compiler::compiler);
+    }
+
+    // every compiler must be configured the same way, the configuration is not part of the key
+    public static CompilationCache compilationCache(int capacity, Supplier<Compiler> compilers) {
+        return new CompilationCache(capacity, compilers);
+    }
+
+    public CompilationCache withDiskTier(Path directory) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not create cache directory [%s]".formatted(directory), e);
+        }
+        this.directory = directory;
+        return this;
+    }
+
+    // the bytecode of the source. Parser and compiler errors are thrown as IllegalArgumentException and never cached
+    public Bytecode compile(String source) {
+        final var key = key(source);
+        synchronized (this) {
+            final var cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+        }
+
+        final var fromDisk = loadFromDisk(key);
+        final var bytecode = fromDisk != null ? fromDisk : compileSource(source);
+        if (fromDisk == null) {
+            storeOnDisk(key, bytecode);
+        }
+        synchronized (this) {
+            if (fromDisk != null) {
+                diskHits++;
+            } else {
+                misses++;
+            }
+            // another thread may have compiled the same source meanwhile, the first one wins
+            final var raced = entries.putIfAbsent(key, bytecode);
+            return raced != null ? raced : bytecode;
+        }
+    }
+
+    public synchronized Metrics metrics() {
+        return new Metrics(hits, diskHits, misses, evictions, entries.size());
+    }
+
+    private Bytecode compileSource(String source) {
+        final var parser = new Parser(lexer(source));
+        final var program = parser.parseProgram();
+        if (!parser.errors().isEmpty()) {
+            throw new IllegalArgumentException("parser errors: %s".formatted(parser.errors()));
+        }
+
+        final var compiler = compilers.get();
+        final var error = compiler.compile(program);
+        if (error.isPresent()) {
+            throw new IllegalArgumentException("compilation failed [%s]".formatted(error.get()));
+        }
+        return compiler.bytecode().freeze();
+    }
+
+    private Bytecode loadFromDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+        final var file = directory.resolve(key + ".mbc");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return BytecodeFile.load(file).freeze();
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            // written by another version or damaged, compiling again overwrites it
+            return null;
+        }
+    }
+
+    // the disk tier is best effort, bytecode which could not be stored is compiled again next time
+    private void storeOnDisk(String key, Bytecode bytecode) {
+        if (directory == null) {
+            return;
+        }
+        final var file = directory.resolve(key + ".mbc");
+        Path temporary = null;
+        try {
+            // readers in other processes never see a partially written file
+            temporary = Files.createTempFile(directory, "compilation", ".tmp");
+            BytecodeFile.write(bytecode, temporary);
+            Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            temporary = null;
+        } catch (IOException | UncheckedIOException e) {
+            // e.g. the disk is full, the compiled bytecode is still handed out
+        } finally {
+            deleteIfExists(temporary);
+        }
+    }
+
+    private static void deleteIfExists(Path temporary) {
+        if (temporary == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temporary);
+        } catch (IOException e) {
+            // nothing else to do, it is only a leftover temporary file
+        }
+    }
+
+    static String key(String source) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            for (var builtin : builtins()) {
+                digest.update(builtin.name().getBytes(UTF_8));
+                digest.update((byte) 0);
+            }
+            digest.update((byte) BytecodeFile.VERSION);
+            digest.update(source.getBytes(UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+}
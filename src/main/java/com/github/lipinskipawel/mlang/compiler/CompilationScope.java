@@ -4,6 +4,7 @@ import com.github.lipinskipawel.mlang.code.Instructions;
 
 import static com.github.lipinskipawel.mlang.code.Instructions.noInstructions;
 
+// the compiler emits into the instructions of the scope on top in place, so emitting is amortized O(1)
 public final class CompilationScope {
     private final Instructions instructions;
     private EmittedInstructions lastInstruction;
@@ -13,24 +14,6 @@ public final class CompilationScope {
         this.instructions = noInstructions();
     }
 
-    private CompilationScope(Instructions instructions, EmittedInstructions last, EmittedInstructions previous) {
-        this.instructions = instructions;
-        this.lastInstruction = last;
-        this.previousInstruction = previous;
-    }
-
-    public CompilationScope withInstructions(Instructions instructions) {
-        return new CompilationScope(instructions, lastInstruction, previousInstruction);
-    }
-
-    public CompilationScope withPreviousInstruction(EmittedInstructions previousInstruction) {
-        return new CompilationScope(instructions, lastInstruction, previousInstruction);
-    }
-
-    public CompilationScope withLastInstruction(EmittedInstructions lastInstruction) {
-        return new CompilationScope(instructions, lastInstruction, previousInstruction);
-    }
-
     public Instructions instructions() {
         return instructions;
     }
@@ -42,4 +25,13 @@ public final class CompilationScope {
     public EmittedInstructions previousInstruction() {
         return previousInstruction;
     }
+
+    void emitted(EmittedInstructions emitted) {
+        previousInstruction = lastInstruction;
+        lastInstruction = emitted;
+    }
+
+    void lastInstruction(EmittedInstructions lastInstruction) {
+        this.lastInstruction = lastInstruction;
+    }
 }
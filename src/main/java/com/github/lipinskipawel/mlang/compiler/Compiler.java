@@ -3,9 +3,7 @@ package com.github.lipinskipawel.mlang.compiler;
 import com.github.lipinskipawel.mlang.code.Instructions;
 import com.github.lipinskipawel.mlang.code.OpCode;
 import com.github.lipinskipawel.mlang.compiler.SymbolTable.Symbol;
-import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
-import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
 import com.github.lipinskipawel.mlang.parser.ast.Node;
 import com.github.lipinskipawel.mlang.parser.ast.Program;
 import com.github.lipinskipawel.mlang.parser.ast.expression.ArrayLiteral;
@@ -29,7 +27,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
-import static com.github.lipinskipawel.mlang.code.Instructions.instructions;
 import static com.github.lipinskipawel.mlang.code.Instructions.make;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_ADD;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_ARRAY;
@@ -62,25 +59,33 @@ import static com.github.lipinskipawel.mlang.code.OpCode.OP_SET_LOCAL;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_SUB;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_TRUE;
 import static com.github.lipinskipawel.mlang.code.OpCode.opCode;
+import static com.github.lipinskipawel.mlang.compiler.ConstantFolding.foldableCondition;
+import static com.github.lipinskipawel.mlang.compiler.PeepholeOptimizer.peepholeOptimizer;
 import static com.github.lipinskipawel.mlang.compiler.SymbolTable.SymbolScope.GLOBAL_SCOPE;
 import static com.github.lipinskipawel.mlang.compiler.SymbolTable.enclosedSymbolTable;
 import static com.github.lipinskipawel.mlang.compiler.SymbolTable.symbolTable;
 import static com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction.compilerFunction;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
 import static com.github.lipinskipawel.mlang.object.Builtins.builtins;
+import static com.github.lipinskipawel.mlang.object.StringTable.constant;
 import static java.util.Comparator.comparing;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 
 public final class Compiler {
-    private final List<MonkeyObject> constants;
+    private final Constants constants;
     SymbolTable symbolTable;
     final List<CompilationScope> compilationScopes;
     int scopeIndex;
+    private boolean superinstructions;
+    private boolean constantFolding;
+    private PeepholeOptimizer peepholeOptimizer;
 
     private Compiler(List<MonkeyObject> constants, SymbolTable symbolTable) {
-        this.constants = requireNonNull(constants);
+        this.constants = new Constants(constants);
         this.symbolTable = requireNonNull(symbolTable);
+        this.superinstructions = false;
         this.compilationScopes = new ArrayList<>();
         this.compilationScopes.add(new CompilationScope());
         this.scopeIndex = 0;
@@ -101,9 +106,35 @@ public final class Compiler {
         return new Compiler(constants, symbolTable);
     }
 
+    // fuse common instruction sequences, see Superinstructions
+    public Compiler withSuperinstructions() {
+        this.superinstructions = true;
+        return this;
+    }
+
+    // fold constant expressions and drop dead if branches before compiling, see ConstantFolding.
+    // The AST of the program is rewritten in place
+    public Compiler withConstantFolding() {
+        this.constantFolding = true;
+        return this;
+    }
+
+    // rewrite the instructions of every function with the default passes, see PeepholeOptimizer
+    public Compiler withPeepholeOptimizer() {
+        return withPeepholeOptimizer(peepholeOptimizer());
+    }
+
+    public Compiler withPeepholeOptimizer(PeepholeOptimizer peepholeOptimizer) {
+        this.peepholeOptimizer = peepholeOptimizer;
+        return this;
+    }
+
     public Optional<Object> compile(Node ast) {
         switch (ast) {
             case Program program -> {
+                if (constantFolding) {
+                    ConstantFolding.fold(program);
+                }
                 for (var statement : program.programStatements()) {
                     final var result = compile(statement);
                     if (result.isPresent()) {
@@ -186,11 +217,11 @@ public final class Compiler {
                 }
             }
             case IntegerLiteral integer -> {
-                final var monkeyInteger = new MonkeyInteger(integer.value());
+                final var monkeyInteger = monkeyInteger(integer.value());
                 emit(OP_CONSTANT, addConstant(monkeyInteger));
             }
             case StringLiteral string -> {
-                final var monkeyString = new MonkeyString(string.value());
+                final var monkeyString = constant(string.value());
                 emit(OP_CONSTANT, addConstant(monkeyString));
             }
             case BooleanExpression booleanExpression -> {
@@ -200,6 +231,24 @@ public final class Compiler {
                     emit(OP_FALSE);
                 }
             }
+            case IfExpression ifExpression when constantFolding && foldableCondition(ifExpression).isPresent() -> {
+                final var live = foldableCondition(ifExpression).get()
+                        ? ifExpression.consequence()
+                        : ifExpression.alternative();
+                final var start = currentInstructions().length();
+                if (live != null) {
+                    final var error = compile(live);
+                    if (error.isPresent()) {
+                        return error;
+                    }
+                }
+
+                if (currentInstructions().length() == start) {
+                    emit(OP_NULL);
+                } else if (lastInstructionIs(OP_POP)) {
+                    removeLastPop();
+                }
+            }
             case IfExpression ifExpression -> {
                 var error = compile(ifExpression.condition());
                 if (error.isPresent()) {
@@ -308,7 +357,7 @@ public final class Compiler {
 
                 final var freeSymbols = symbolTable.freeSymbols;
                 final var numberOfLocals = symbolTable.numDefinitions();
-                final var instructions = leaveScope();
+                final var instructions = finish(TailCalls.mark(leaveScope()));
 
                 freeSymbols.forEach(this::loadSymbol);
 
@@ -343,37 +392,34 @@ public final class Compiler {
         return empty();
     }
 
+    private CompilationScope currentScope() {
+        return compilationScopes.get(scopeIndex);
+    }
+
     private Instructions currentInstructions() {
-        return compilationScopes.get(scopeIndex).instructions();
+        return currentScope().instructions();
     }
 
     private boolean lastInstructionIs(OpCode opCode) {
         if (currentInstructions().length() == 0) {
             return false;
         }
-        return compilationScopes.get(scopeIndex).lastInstruction().opCode() == opCode;
+        return currentScope().lastInstruction().opCode() == opCode;
     }
 
     private void replaceLastPopWithReturn() {
-        final var lastPosition = compilationScopes.get(scopeIndex).lastInstruction().position();
+        final var onTop = currentScope();
+        final var lastPosition = onTop.lastInstruction().position();
         currentInstructions().replaceInstructions(lastPosition, make(OP_RETURN_VALUE, new int[0]));
 
-        final var onTop = compilationScopes.get(scopeIndex);
-        putCompilationScopeAt(onTop.withLastInstruction(onTop.lastInstruction().withOpCode(OP_RETURN_VALUE)), scopeIndex);
+        onTop.lastInstruction(onTop.lastInstruction().withOpCode(OP_RETURN_VALUE));
     }
 
     private void removeLastPop() {
-        final var onTop = compilationScopes.get(scopeIndex);
+        final var onTop = currentScope();
 
-        final var last = onTop.lastInstruction();
-        final var previous = onTop.previousInstruction();
-
-        final var newInstructions = instructions(currentInstructions().slice(0, last.position()));
-
-        putCompilationScopeAt(
-                onTop.withInstructions(newInstructions).withLastInstruction(previous),
-                scopeIndex
-        );
+        currentInstructions().truncate(onTop.lastInstruction().position());
+        onTop.lastInstruction(onTop.previousInstruction());
     }
 
     private void changeOperand(int opPosition, int... operand) {
@@ -413,44 +459,26 @@ public final class Compiler {
 
     // here we can write to file or to collections
     int emit(OpCode op, int... operands) {
-        final var instruction = make(op, operands);
-        final var position = addInstructions(instruction);
+        final var position = currentInstructions().append(op, operands);
 
-        setLastInstruction(op, position);
+        currentScope().emitted(new EmittedInstructions(op, position));
 
         return position;
     }
 
-    private int addInstructions(byte[] instruction) {
-        final var newPositionInstruction = currentInstructions().length();
-        currentInstructions().append(instructions(instruction));
-
-        final var newCompilationScope = compilationScopes.get(scopeIndex).withInstructions(currentInstructions());
-        putCompilationScopeAt(newCompilationScope, scopeIndex);
-        return newPositionInstruction;
-    }
-
-    private void setLastInstruction(OpCode op, int pos) {
-        final var previous = compilationScopes.get(scopeIndex).lastInstruction();
-        final var last = new EmittedInstructions(op, pos);
-
-        putCompilationScopeAt(compilationScopes.get(scopeIndex)
-                .withPreviousInstruction(previous)
-                .withLastInstruction(last), scopeIndex
-        );
-    }
-
-    private void putCompilationScopeAt(CompilationScope compilationScope, int position) {
-        compilationScopes.add(position, compilationScope);
-        compilationScopes.remove(++position);
+    private int addConstant(MonkeyObject constant) {
+        return constants.add(constant);
     }
 
-    private int addConstant(MonkeyObject constant) {
-        constants.add(constant);
-        return constants.size() - 1;
+    private Instructions finish(Instructions instructions) {
+        final var optimized = peepholeOptimizer == null ? instructions : peepholeOptimizer.optimize(instructions);
+        if (superinstructions) {
+            return Superinstructions.fuse(optimized);
+        }
+        return optimized;
     }
 
     public Bytecode bytecode() {
-        return new Bytecode(currentInstructions(), constants);
+        return new Bytecode(finish(currentInstructions()), constants.list());
     }
 }
@@ -0,0 +1,221 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.lexer.token.Token;
+import com.github.lipinskipawel.mlang.parser.ast.Node;
+import com.github.lipinskipawel.mlang.parser.ast.Program;
+import com.github.lipinskipawel.mlang.parser.ast.expression.ArrayLiteral;
+import com.github.lipinskipawel.mlang.parser.ast.expression.BooleanExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.CallExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.Expression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.FunctionLiteral;
+import com.github.lipinskipawel.mlang.parser.ast.expression.HashLiteral;
+import com.github.lipinskipawel.mlang.parser.ast.expression.IfExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.IndexExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.InfixExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.IntegerLiteral;
+import com.github.lipinskipawel.mlang.parser.ast.expression.PrefixExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.StringLiteral;
+import com.github.lipinskipawel.mlang.parser.ast.statement.BlockStatement;
+import com.github.lipinskipawel.mlang.parser.ast.statement.ExpressionStatement;
+import com.github.lipinskipawel.mlang.parser.ast.statement.LetStatement;
+import com.github.lipinskipawel.mlang.parser.ast.statement.ReturnStatement;
+import com.github.lipinskipawel.mlang.parser.ast.statement.Statement;
+
+import java.util.LinkedHashMap;
+import java.util.Optional;
+
+import static com.github.lipinskipawel.mlang.lexer.token.TokenType.FALSE;
+import static com.github.lipinskipawel.mlang.lexer.token.TokenType.INT;
+import static com.github.lipinskipawel.mlang.lexer.token.TokenType.STRING;
+import static com.github.lipinskipawel.mlang.lexer.token.TokenType.TRUE;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+
+// rewrites the AST in place, replacing operations on literals by the literal the virtual machine would compute.
+// Operations the virtual machine rejects at runtime, like division by zero or "-" on a string, are left alone so they
+// still fail at runtime. An if expression with a literal condition is replaced by its live branch when that branch is
+// a single expression, otherwise the compiler drops the dead branch, see foldableCondition()
+final class ConstantFolding {
+
+    private ConstantFolding() {
+    }
+
+    static Program fold(Program program) {
+        program.programStatements().forEach(ConstantFolding::fold);
+        return program;
+    }
+
+    private static void fold(Statement statement) {
+        switch (statement) {
+            case ExpressionStatement expressionStatement ->
+                    expressionStatement.expression(fold(expressionStatement.expression()));
+            case LetStatement letStatement -> letStatement.value(fold(letStatement.value()));
+            case ReturnStatement returnStatement -> returnStatement.returnValue(fold(returnStatement.returnValue()));
+            case BlockStatement blockStatement -> blockStatement.statements().forEach(ConstantFolding::fold);
+            default -> {
+            }
+        }
+    }
+
+    private static Expression fold(Expression expression) {
+        return switch (expression) {
+            case null -> null;
+            case PrefixExpression prefix -> {
+                prefix.right(fold(prefix.right()));
+                yield foldPrefix(prefix);
+            }
+            case InfixExpression infix -> {
+                infix.left(fold(infix.left()));
+                infix.right(fold(infix.right()));
+                yield foldInfix(infix);
+            }
+            case IfExpression ifExpression -> {
+                ifExpression.condition(fold(ifExpression.condition()));
+                fold(ifExpression.consequence());
+                if (ifExpression.alternative() != null) {
+                    fold(ifExpression.alternative());
+                }
+                yield foldIf(ifExpression);
+            }
+            case FunctionLiteral function -> {
+                fold(function.body());
+                yield function;
+            }
+            case CallExpression call -> {
+                fold(call.function());
+                call.arguments(call.arguments().stream().map(ConstantFolding::fold).toList());
+                yield call;
+            }
+            case ArrayLiteral array -> {
+                array.elements(array.elements().stream().map(ConstantFolding::fold).toList());
+                yield array;
+            }
+            case IndexExpression index -> {
+                index.left(fold(index.left()));
+                index.index(fold(index.index()));
+                yield index;
+            }
+            case HashLiteral hash -> {
+                final var pairs = new LinkedHashMap<>(hash.pairs());
+                hash.pairs().clear();
+                pairs.forEach((key, value) -> hash.addPair(fold(key), fold(value)));
+                yield hash;
+            }
+            default -> expression;
+        };
+    }
+
+    private static Expression foldPrefix(PrefixExpression prefix) {
+        return switch (prefix.operator()) {
+            case "!" -> switch (prefix.right()) {
+                case BooleanExpression bool -> bool(!bool.value());
+                case IntegerLiteral __ -> bool(false);
+                case StringLiteral __ -> bool(false);
+                default -> prefix;
+            };
+            case "-" -> prefix.right() instanceof IntegerLiteral integer ? integer(-integer.value()) : prefix;
+            default -> prefix;
+        };
+    }
+
+    private static Expression foldInfix(InfixExpression infix) {
+        if (infix.left() instanceof IntegerLiteral left && infix.right() instanceof IntegerLiteral right) {
+            final var l = left.value();
+            final var r = right.value();
+            return switch (infix.operator()) {
+                case "+" -> integer(l + r);
+                case "-" -> integer(l - r);
+                case "*" -> integer(l * r);
+                case "/" -> r == 0 ? infix : integer(l / r);
+                case "<" -> bool(l < r);
+                case ">" -> bool(l > r);
+                case "==" -> bool(l == r);
+                case "!=" -> bool(l != r);
+                default -> infix;
+            };
+        }
+        if (infix.left() instanceof StringLiteral left && infix.right() instanceof StringLiteral right) {
+            return infix.operator().equals("+") ? string(left.value() + right.value()) : infix;
+        }
+        if (infix.left() instanceof BooleanExpression left && infix.right() instanceof BooleanExpression right) {
+            return switch (infix.operator()) {
+                case "==" -> bool(left.value() == right.value());
+                case "!=" -> bool(left.value() != right.value());
+                default -> infix;
+            };
+        }
+        return infix;
+    }
+
+    private static Expression foldIf(IfExpression ifExpression) {
+        final var condition = foldableCondition(ifExpression);
+        if (condition.isEmpty()) {
+            return ifExpression;
+        }
+        final var live = condition.get() ? ifExpression.consequence() : ifExpression.alternative();
+        if (live == null) {
+            return ifExpression;
+        }
+        final var statements = live.statements();
+        if (statements.size() == 1 && statements.getFirst() instanceof ExpressionStatement statement && statement.expression() != null) {
+            return statement.expression();
+        }
+        return ifExpression;
+    }
+
+    // the literal truthiness of the condition, following VirtualMachine.isTruthy
+    private static Optional<Boolean> constantCondition(IfExpression ifExpression) {
+        return switch (ifExpression.condition()) {
+            case BooleanExpression bool -> of(bool.value());
+            case IntegerLiteral __ -> of(true);
+            case StringLiteral __ -> of(true);
+            default -> empty();
+        };
+    }
+
+    // the truthiness of a literal condition when the branch that can never run may be dropped. A let inside a block
+    // defines a name in the enclosing scope, so a dead branch with lets is kept to keep those names defined
+    static Optional<Boolean> foldableCondition(IfExpression ifExpression) {
+        return constantCondition(ifExpression)
+                .filter(truthy -> {
+                    final var dead = truthy ? ifExpression.alternative() : ifExpression.consequence();
+                    return dead == null || !declaresNames(dead);
+                });
+    }
+
+    private static boolean declaresNames(Node node) {
+        return switch (node) {
+            case null -> false;
+            case LetStatement __ -> true;
+            case BlockStatement block -> block.statements().stream().anyMatch(ConstantFolding::declaresNames);
+            case ExpressionStatement statement -> declaresNames(statement.expression());
+            case ReturnStatement statement -> declaresNames(statement.returnValue());
+            case IfExpression ifExpression -> declaresNames(ifExpression.condition())
+                    || declaresNames(ifExpression.consequence())
+                    || declaresNames(ifExpression.alternative());
+            case PrefixExpression prefix -> declaresNames(prefix.right());
+            case InfixExpression infix -> declaresNames(infix.left()) || declaresNames(infix.right());
+            case CallExpression call -> declaresNames(call.function())
+                    || call.arguments().stream().anyMatch(ConstantFolding::declaresNames);
+            case ArrayLiteral array -> array.elements().stream().anyMatch(ConstantFolding::declaresNames);
+            case IndexExpression index -> declaresNames(index.left()) || declaresNames(index.index());
+            case HashLiteral hash -> hash.pairs().entrySet().stream()
+                    .anyMatch(it -> declaresNames(it.getKey()) || declaresNames(it.getValue()));
+            default -> false; // literals, identifiers and function literals, which have their own scope
+        };
+    }
+
+    private static IntegerLiteral integer(int value) {
+        final var literal = new IntegerLiteral(new Token(INT, String.valueOf(value)));
+        literal.value(value);
+        return literal;
+    }
+
+    private static StringLiteral string(String value) {
+        return new StringLiteral(new Token(STRING, value), value);
+    }
+
+    private static BooleanExpression bool(boolean value) {
+        return new BooleanExpression(new Token(value ? TRUE : FALSE, String.valueOf(value)), value);
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+// constant pool shared by the compilers. Equal integer and string constants are stored once, so repeated literals do
+// not use up the 2-byte operand of OP_CONSTANT
+final class Constants {
+    private final List<MonkeyObject> constants;
+    private final Map<Object, Integer> indexes;
+
+    Constants(List<MonkeyObject> constants) {
+        this.constants = requireNonNull(constants);
+        this.indexes = new HashMap<>();
+        // the list may come from a previous compilation, e.g. in the repl
+        for (var i = 0; i < constants.size(); i++) {
+            final var key = key(constants.get(i));
+            if (key != null) {
+                indexes.putIfAbsent(key, i);
+            }
+        }
+    }
+
+    int add(MonkeyObject constant) {
+        final var key = key(constant);
+        if (key != null) {
+            final var index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            indexes.put(key, constants.size());
+        }
+        constants.add(constant);
+        return constants.size() - 1;
+    }
+
+    List<MonkeyObject> list() {
+        return constants;
+    }
+
+    private static Object key(MonkeyObject constant) {
+        return switch (constant) {
+            case MonkeyInteger integer -> integer.value();
+            case MonkeyString string -> string.value();
+            default -> null;
+        };
+    }
+}
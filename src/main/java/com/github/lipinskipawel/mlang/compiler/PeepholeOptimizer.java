@@ -0,0 +1,393 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.code.Instructions;
+import com.github.lipinskipawel.mlang.code.OpCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.github.lipinskipawel.mlang.code.Instructions.noInstructions;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_DUP;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_FALSE;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_GET_GLOBAL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP_NOT_TRUTHY;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_RETURN;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_RETURN_VALUE;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_SET_GLOBAL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_TRUE;
+import static com.github.lipinskipawel.mlang.code.OpCode.opCode;
+import static java.util.Arrays.stream;
+
+// rewrites the final instructions of a function with small local rules, see Pass. The instructions are decoded into a
+// list where a jump points to the instruction it lands on instead of a position, so a pass only marks instructions as
+// removed and the jumps into removed instructions move to the next instruction left. Positions are computed again
+// when the list is encoded. Passes run in order until none of them rewrites anything.
+public final class PeepholeOptimizer {
+    private static final int MAX_ROUNDS = 8;
+
+    private final List<Pass> passes;
+    private final Map<String, PassStatistics> statistics;
+
+    // one rule of the optimizer. A pass rewrites the instructions in place and returns how many rewrites it made
+    public interface Pass {
+        String name();
+
+        int apply(List<Instruction> instructions);
+    }
+
+    public record PassStatistics(String pass, int rewrites, int bytesSaved) {
+        PassStatistics add(int rewrites, int bytesSaved) {
+            return new PassStatistics(pass, this.rewrites + rewrites, this.bytesSaved + bytesSaved);
+        }
+    }
+
+    public static final class Instruction {
+        // the end of the instructions, a jump over the last instruction lands here
+        static final Instruction END = new Instruction(null, new int[0]);
+
+        private OpCode op;
+        private int[] operands;
+        private Instruction target;
+        private boolean removed;
+
+        private Instruction(OpCode op, int[] operands) {
+            this.op = op;
+            this.operands = operands;
+        }
+
+        public OpCode op() {
+            return op;
+        }
+
+        public int[] operands() {
+            return operands;
+        }
+
+        // the instruction a jump lands on, null for other instructions
+        public Instruction target() {
+            return target;
+        }
+
+        public void target(Instruction target) {
+            this.target = target;
+        }
+
+        public boolean isRemoved() {
+            return removed;
+        }
+
+        public void remove() {
+            this.removed = true;
+        }
+
+        // replaces the instruction keeping the jump target, so jumps into it still land here
+        public void rewrite(OpCode op, int... operands) {
+            this.op = op;
+            this.operands = operands;
+            if (op.jumpOperandIndex() < 0) {
+                this.target = null;
+            }
+        }
+
+        public boolean isEnd() {
+            return this == END;
+        }
+
+        int width() {
+            return op == null ? 0 : PeepholeOptimizer.width(op);
+        }
+    }
+
+    private PeepholeOptimizer(List<Pass> passes) {
+        this.passes = List.copyOf(passes);
+        this.statistics = new LinkedHashMap<>();
+        passes.forEach(pass -> statistics.put(pass.name(), new PassStatistics(pass.name(), 0, 0)));
+    }
+
+    public static PeepholeOptimizer peepholeOptimizer() {
+        return peepholeOptimizer(List.of(
+                new JumpToNext(),
+                new JumpThreading(),
+                new ConstantJumpNotTruthy(),
+                new UnreachableCode(),
+                new GlobalRoundTrip()
+        ));
+    }
+
+    public static PeepholeOptimizer peepholeOptimizer(List<Pass> passes) {
+        return new PeepholeOptimizer(passes);
+    }
+
+    // statistics of every pass summed over all instructions optimized so far, in the order the passes run
+    public List<PassStatistics> statistics() {
+        return List.copyOf(statistics.values());
+    }
+
+    // returns new instructions, the given ones are left untouched
+    public Instructions optimize(Instructions instructions) {
+        final var code = decode(instructions);
+
+        for (var round = 0; round < MAX_ROUNDS; round++) {
+            var rewrites = 0;
+            for (var pass : passes) {
+                final var before = width(code);
+                final var passRewrites = pass.apply(Collections.unmodifiableList(code));
+                compact(code);
+                statistics.computeIfPresent(pass.name(), (name, it) -> it.add(passRewrites, before - width(code)));
+                rewrites += passRewrites;
+            }
+            if (rewrites == 0) {
+                break;
+            }
+        }
+        return encode(code);
+    }
+
+    // drops removed instructions and moves every jump into a removed instruction to the next instruction left
+    private static void compact(List<Instruction> code) {
+        final var replacements = new IdentityHashMap<Instruction, Instruction>();
+        var next = Instruction.END;
+        for (var i = code.size() - 1; i >= 0; i--) {
+            final var instruction = code.get(i);
+            if (instruction.removed) {
+                replacements.put(instruction, next);
+            } else {
+                next = instruction;
+            }
+        }
+        if (replacements.isEmpty()) {
+            return;
+        }
+
+        code.removeIf(it -> it.removed);
+        for (var instruction : code) {
+            if (instruction.target != null) {
+                instruction.target = replacements.getOrDefault(instruction.target, instruction.target);
+            }
+        }
+    }
+
+    private static List<Instruction> decode(Instructions instructions) {
+        final var code = instructions.decoded();
+        final var result = new ArrayList<Instruction>();
+        final var byPosition = new Instruction[code.length + 1];
+        byPosition[code.length] = Instruction.END;
+
+        var position = 0;
+        while (position < code.length) {
+            final var op = opCode((byte) code[position]);
+            final var operandWidths = op.definition().operandWidths();
+            final var operands = new int[operandWidths.length];
+
+            var offset = position + 1;
+            for (var i = 0; i < operands.length; i++) {
+                operands[i] = code[offset];
+                offset += operandWidths[i];
+            }
+
+            final var instruction = new Instruction(op, operands);
+            byPosition[position] = instruction;
+            result.add(instruction);
+            position = offset;
+        }
+
+        for (var instruction : result) {
+            final var index = instruction.op.jumpOperandIndex();
+            if (index >= 0) {
+                instruction.target = byPosition[instruction.operands[index]];
+            }
+        }
+        return result;
+    }
+
+    private static Instructions encode(List<Instruction> code) {
+        final var positions = new IdentityHashMap<Instruction, Integer>();
+        var position = 0;
+        for (var instruction : code) {
+            positions.put(instruction, position);
+            position += instruction.width();
+        }
+        positions.put(Instruction.END, position);
+
+        final var instructions = noInstructions();
+        for (var instruction : code) {
+            final var operands = instruction.operands.clone();
+            final var index = instruction.op.jumpOperandIndex();
+            if (index >= 0) {
+                operands[index] = positions.get(instruction.target);
+            }
+            instructions.append(instruction.op, operands);
+        }
+        return instructions;
+    }
+
+    private static int width(List<Instruction> code) {
+        return code.stream().mapToInt(Instruction::width).sum();
+    }
+
+    static int width(OpCode op) {
+        return 1 + stream(op.definition().operandWidths()).sum();
+    }
+
+    // instructions some jump lands on
+    static Set<Instruction> jumpTargets(List<Instruction> code) {
+        final var targets = Collections.<Instruction>newSetFromMap(new IdentityHashMap<>());
+        for (var instruction : code) {
+            if (!instruction.removed && instruction.target != null) {
+                targets.add(instruction.target);
+            }
+        }
+        return targets;
+    }
+
+    // the first instruction after index which is not removed
+    static Instruction next(List<Instruction> code, int index) {
+        for (var i = index + 1; i < code.size(); i++) {
+            if (!code.get(i).removed) {
+                return code.get(i);
+            }
+        }
+        return Instruction.END;
+    }
+
+    // OP_JUMP to the instruction right after it
+    static final class JumpToNext implements Pass {
+        @Override
+        public String name() {
+            return "jump-to-next";
+        }
+
+        @Override
+        public int apply(List<Instruction> instructions) {
+            var rewrites = 0;
+            for (var i = 0; i < instructions.size(); i++) {
+                final var instruction = instructions.get(i);
+                if (instruction.op == OP_JUMP && instruction.target == next(instructions, i)) {
+                    instruction.remove();
+                    rewrites++;
+                }
+            }
+            return rewrites;
+        }
+    }
+
+    // a jump which lands on OP_JUMP lands on the target of that OP_JUMP instead
+    static final class JumpThreading implements Pass {
+        @Override
+        public String name() {
+            return "jump-threading";
+        }
+
+        @Override
+        public int apply(List<Instruction> instructions) {
+            var rewrites = 0;
+            for (var instruction : instructions) {
+                if (instruction.target == null) {
+                    continue;
+                }
+                // jumps only go forward, the bound is there for hand written instructions
+                var target = instruction.target;
+                for (var hops = 0; target.op == OP_JUMP && target != instruction && hops < instructions.size(); hops++) {
+                    target = target.target;
+                }
+                if (target != instruction.target) {
+                    instruction.target = target;
+                    rewrites++;
+                }
+            }
+            return rewrites;
+        }
+    }
+
+    // OP_TRUE; OP_JUMP_NOT_TRUTHY never jumps and OP_FALSE; OP_JUMP_NOT_TRUTHY always does
+    static final class ConstantJumpNotTruthy implements Pass {
+        @Override
+        public String name() {
+            return "constant-jump-not-truthy";
+        }
+
+        @Override
+        public int apply(List<Instruction> instructions) {
+            final var targets = jumpTargets(instructions);
+            var rewrites = 0;
+            for (var i = 0; i + 1 < instructions.size(); i++) {
+                final var constant = instructions.get(i);
+                final var jump = instructions.get(i + 1);
+                if (constant.removed || jump.op != OP_JUMP_NOT_TRUTHY || targets.contains(jump)) {
+                    continue;
+                }
+                if (constant.op == OP_TRUE) {
+                    constant.remove();
+                    jump.remove();
+                    rewrites++;
+                } else if (constant.op == OP_FALSE) {
+                    constant.remove();
+                    jump.rewrite(OP_JUMP, jump.operands);
+                    rewrites++;
+                }
+            }
+            return rewrites;
+        }
+    }
+
+    // instructions after a return or an OP_JUMP up to the next instruction some jump lands on
+    static final class UnreachableCode implements Pass {
+        @Override
+        public String name() {
+            return "unreachable-code";
+        }
+
+        @Override
+        public int apply(List<Instruction> instructions) {
+            final var targets = jumpTargets(instructions);
+            var rewrites = 0;
+            var reachable = true;
+            for (var instruction : instructions) {
+                if (targets.contains(instruction)) {
+                    reachable = true;
+                }
+                if (!reachable) {
+                    instruction.remove();
+                    rewrites++;
+                    continue;
+                }
+                if (instruction.op == OP_RETURN_VALUE || instruction.op == OP_RETURN || instruction.op == OP_JUMP) {
+                    reachable = false;
+                }
+            }
+            return rewrites;
+        }
+    }
+
+    // OP_SET_GLOBAL x; OP_GET_GLOBAL x stores a value only to load it back, OP_DUP; OP_SET_GLOBAL x keeps it instead
+    static final class GlobalRoundTrip implements Pass {
+        @Override
+        public String name() {
+            return "global-round-trip";
+        }
+
+        @Override
+        public int apply(List<Instruction> instructions) {
+            final var targets = jumpTargets(instructions);
+            var rewrites = 0;
+            for (var i = 0; i + 1 < instructions.size(); i++) {
+                final var set = instructions.get(i);
+                final var get = instructions.get(i + 1);
+                if (set.op == OP_SET_GLOBAL && get.op == OP_GET_GLOBAL
+                        && set.operands[0] == get.operands[0] && !targets.contains(get)) {
+                    final var global = set.operands[0];
+                    set.rewrite(OP_DUP);
+                    get.rewrite(OP_SET_GLOBAL, global);
+                    rewrites++;
+                }
+            }
+            return rewrites;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.evaluator.objects.RegisterFunction;
+
+import java.util.List;
+
+public record RegisterBytecode(RegisterFunction main, List<MonkeyObject> constants) {
+}
@@ -0,0 +1,484 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.compiler.SymbolTable.Symbol;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.parser.ast.Node;
+import com.github.lipinskipawel.mlang.parser.ast.Program;
+import com.github.lipinskipawel.mlang.parser.ast.expression.ArrayLiteral;
+import com.github.lipinskipawel.mlang.parser.ast.expression.BooleanExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.CallExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.Expression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.FunctionLiteral;
+import com.github.lipinskipawel.mlang.parser.ast.expression.HashLiteral;
+import com.github.lipinskipawel.mlang.parser.ast.expression.Identifier;
+import com.github.lipinskipawel.mlang.parser.ast.expression.IfExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.IndexExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.InfixExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.IntegerLiteral;
+import com.github.lipinskipawel.mlang.parser.ast.expression.PrefixExpression;
+import com.github.lipinskipawel.mlang.parser.ast.expression.StringLiteral;
+import com.github.lipinskipawel.mlang.parser.ast.statement.BlockStatement;
+import com.github.lipinskipawel.mlang.parser.ast.statement.ExpressionStatement;
+import com.github.lipinskipawel.mlang.parser.ast.statement.LetStatement;
+import com.github.lipinskipawel.mlang.parser.ast.statement.ReturnStatement;
+import com.github.lipinskipawel.mlang.parser.ast.statement.Statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.INSTRUCTION_WIDTH;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_ADD;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_ARRAY;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_BANG;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_CALL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_CLOSURE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_CURRENT_CLOSURE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_DIV;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_EQUAL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_GET_BUILTIN;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_GET_FREE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_GET_GLOBAL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_GREATER_THAN;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_HASH;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_INDEX;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_JUMP;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_JUMP_NOT_TRUTHY;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_LOAD_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_LOAD_FALSE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_LOAD_NULL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_LOAD_TRUE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_MINUS;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_MOVE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_MUL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_NOT_EQUAL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_POP;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_RETURN;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_SET_GLOBAL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_SUB;
+import static com.github.lipinskipawel.mlang.compiler.SymbolTable.SymbolScope.GLOBAL_SCOPE;
+import static com.github.lipinskipawel.mlang.compiler.SymbolTable.SymbolScope.LOCAL_SCOPE;
+import static com.github.lipinskipawel.mlang.compiler.SymbolTable.enclosedSymbolTable;
+import static com.github.lipinskipawel.mlang.compiler.SymbolTable.symbolTable;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
+import static com.github.lipinskipawel.mlang.evaluator.objects.RegisterFunction.registerFunction;
+import static com.github.lipinskipawel.mlang.object.Builtins.builtins;
+import static com.github.lipinskipawel.mlang.object.StringTable.constant;
+import static java.util.Comparator.comparing;
+import static java.util.Objects.requireNonNull;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+
+// Compiles the AST into three-address code for the RegisterVirtualMachine.
+// Locals live in fixed registers (parameters first, then every let of the function body) and temporaries are
+// allocated above them. Temporaries are released at the end of every statement. Arguments of a call are placed
+// in consecutive registers right after the callee, so the callee frame starts at the first argument.
+public final class RegisterCompiler {
+    private final Constants constants;
+    private SymbolTable symbolTable;
+    private Scope scope;
+
+    private static final class Scope {
+        private final Scope outer;
+        private int[] code = new int[64];
+        private int length;
+        private int nextRegister;
+        private int numberOfRegisters;
+
+        private Scope(Scope outer, int firstTemporary) {
+            this.outer = outer;
+            this.nextRegister = firstTemporary;
+            this.numberOfRegisters = firstTemporary;
+        }
+    }
+
+    private RegisterCompiler(List<MonkeyObject> constants, SymbolTable symbolTable) {
+        this.constants = new Constants(constants);
+        this.symbolTable = requireNonNull(symbolTable);
+        this.scope = new Scope(null, 0);
+    }
+
+    public static RegisterCompiler registerCompiler() {
+        final var symbolTable = symbolTable();
+
+        final var builtins = builtins();
+        for (var i = 0; i < builtins.size(); i++) {
+            symbolTable.defineBuiltin(i, builtins.get(i).name());
+        }
+
+        return registerCompiler(new ArrayList<>(), symbolTable);
+    }
+
+    public static RegisterCompiler registerCompiler(List<MonkeyObject> constants, SymbolTable symbolTable) {
+        return new RegisterCompiler(constants, symbolTable);
+    }
+
+    public Optional<Object> compile(Program program) {
+        for (var statement : program.programStatements()) {
+            final var mark = scope.nextRegister;
+            if (statement instanceof ExpressionStatement expressionStatement) {
+                final var register = operand(expressionStatement.expression());
+                final var error = expression(expressionStatement.expression(), register);
+                if (error.isPresent()) {
+                    return error;
+                }
+                emit(R_POP, register);
+            } else {
+                final var error = statement(statement);
+                if (error.isPresent()) {
+                    return error;
+                }
+            }
+            scope.nextRegister = mark;
+        }
+        return empty();
+    }
+
+    public RegisterBytecode bytecode() {
+        return new RegisterBytecode(registerFunction(Arrays.copyOf(scope.code, scope.length), scope.numberOfRegisters), constants.list());
+    }
+
+    private Optional<Object> statement(Statement statement) {
+        final var mark = scope.nextRegister;
+        switch (statement) {
+            case LetStatement letStatement -> {
+                final var symbol = symbolTable.define(letStatement.name().value());
+                if (symbol.scope() == GLOBAL_SCOPE) {
+                    final var register = operand(letStatement.value());
+                    final var error = expression(letStatement.value(), register);
+                    if (error.isPresent()) {
+                        return error;
+                    }
+                    emit(R_SET_GLOBAL, symbol.index(), register);
+                } else {
+                    final var error = expression(letStatement.value(), symbol.index());
+                    if (error.isPresent()) {
+                        return error;
+                    }
+                }
+            }
+            case ReturnStatement returnStatement -> {
+                final var register = operand(returnStatement.returnValue());
+                final var error = expression(returnStatement.returnValue(), register);
+                if (error.isPresent()) {
+                    return error;
+                }
+                emit(R_RETURN, register);
+            }
+            case ExpressionStatement expressionStatement -> {
+                final var error = expression(expressionStatement.expression(), operand(expressionStatement.expression()));
+                if (error.isPresent()) {
+                    return error;
+                }
+            }
+            case BlockStatement blockStatement -> {
+                for (var inner : blockStatement.statements()) {
+                    final var error = statement(inner);
+                    if (error.isPresent()) {
+                        return error;
+                    }
+                }
+            }
+            default -> throw new IllegalStateException("Unexpected value: " + statement);
+        }
+        scope.nextRegister = mark;
+        return empty();
+    }
+
+    // compiles the block so that its value ends up in the target register
+    private Optional<Object> block(BlockStatement block, int target) {
+        final var statements = block.statements();
+        for (var i = 0; i < statements.size() - 1; i++) {
+            final var error = statement(statements.get(i));
+            if (error.isPresent()) {
+                return error;
+            }
+        }
+        if (!statements.isEmpty() && statements.getLast() instanceof ExpressionStatement last) {
+            final var mark = scope.nextRegister;
+            final var error = expression(last.expression(), target);
+            if (error.isPresent()) {
+                return error;
+            }
+            scope.nextRegister = mark;
+            return empty();
+        }
+        if (!statements.isEmpty()) {
+            final var error = statement(statements.getLast());
+            if (error.isPresent()) {
+                return error;
+            }
+        }
+        emit(R_LOAD_NULL, target);
+        return empty();
+    }
+
+    // the register to compile the expression into. A local is read from its own register, anything else gets a
+    // temporary
+    private int operand(Expression expression) {
+        if (expression instanceof Identifier identifier) {
+            final var symbol = symbolTable.resolve(identifier.value());
+            if (symbol.isPresent() && symbol.get().scope() == LOCAL_SCOPE) {
+                return symbol.get().index();
+            }
+        }
+        return temporary();
+    }
+
+    // compiles the expression so that its value ends up in the target register
+    private Optional<Object> expression(Expression expression, int target) {
+        switch (expression) {
+            case IntegerLiteral integer -> emit(R_LOAD_CONSTANT, target, addConstant(monkeyInteger(integer.value())));
+            case StringLiteral string -> emit(R_LOAD_CONSTANT, target, addConstant(constant(string.value())));
+            case BooleanExpression booleanExpression -> emit(booleanExpression.value() ? R_LOAD_TRUE : R_LOAD_FALSE, target);
+            case Identifier identifier -> {
+                final var symbol = symbolTable.resolve(identifier.value());
+                if (symbol.isEmpty()) {
+                    return of("undefined variable [%s]".formatted(identifier.value()));
+                }
+                loadSymbol(symbol.get(), target);
+            }
+            case PrefixExpression prefix -> {
+                final var right = operand(prefix.right());
+                final var error = expression(prefix.right(), right);
+                if (error.isPresent()) {
+                    return error;
+                }
+                switch (prefix.operator()) {
+                    case "!" -> emit(R_BANG, target, right);
+                    case "-" -> emit(R_MINUS, target, right);
+                    default -> throw new IllegalArgumentException("unknown operator [%s]".formatted(prefix.operator()));
+                }
+            }
+            case InfixExpression infix -> {
+                // a < b is compiled as b > a, the right operand is evaluated first
+                final var lessThan = infix.operator().equals("<");
+                final var first = lessThan ? infix.right() : infix.left();
+                final var second = lessThan ? infix.left() : infix.right();
+                final var firstRegister = operand(first);
+                var error = expression(first, firstRegister);
+                if (error.isPresent()) {
+                    return error;
+                }
+                final var secondRegister = operand(second);
+                error = expression(second, secondRegister);
+                if (error.isPresent()) {
+                    return error;
+                }
+                final var op = switch (infix.operator()) {
+                    case "+" -> R_ADD;
+                    case "-" -> R_SUB;
+                    case "*" -> R_MUL;
+                    case "/" -> R_DIV;
+                    case ">", "<" -> R_GREATER_THAN;
+                    case "==" -> R_EQUAL;
+                    case "!=" -> R_NOT_EQUAL;
+                    default -> throw new IllegalArgumentException("unknown operator [%s]".formatted(infix.operator()));
+                };
+                emit(op, target, firstRegister, secondRegister);
+            }
+            case IfExpression ifExpression -> {
+                final var condition = operand(ifExpression.condition());
+                var error = expression(ifExpression.condition(), condition);
+                if (error.isPresent()) {
+                    return error;
+                }
+                final var jumpNotTruthy = emit(R_JUMP_NOT_TRUTHY, condition, 9999);
+
+                error = block(ifExpression.consequence(), target);
+                if (error.isPresent()) {
+                    return error;
+                }
+                final var jump = emit(R_JUMP, 3333);
+
+                changeOperand(jumpNotTruthy, 2, scope.length);
+                if (ifExpression.alternative() == null) {
+                    emit(R_LOAD_NULL, target);
+                } else {
+                    error = block(ifExpression.alternative(), target);
+                    if (error.isPresent()) {
+                        return error;
+                    }
+                }
+                changeOperand(jump, 1, scope.length);
+            }
+            case ArrayLiteral arrayLiteral -> {
+                final var elements = arrayLiteral.elements();
+                final var first = consecutive(elements.size());
+                for (var i = 0; i < elements.size(); i++) {
+                    final var error = expression(elements.get(i), first + i);
+                    if (error.isPresent()) {
+                        return error;
+                    }
+                }
+                emit(R_ARRAY, target, first, elements.size());
+            }
+            case HashLiteral hashLiteral -> {
+                final var pairs = hashLiteral.pairs().entrySet()
+                        .stream()
+                        .sorted(comparing(it -> it.getKey().string()))
+                        .toList();
+                final var first = consecutive(pairs.size() * 2);
+                for (var i = 0; i < pairs.size(); i++) {
+                    var error = expression(pairs.get(i).getKey(), first + 2 * i);
+                    if (error.isPresent()) {
+                        return error;
+                    }
+                    error = expression(pairs.get(i).getValue(), first + 2 * i + 1);
+                    if (error.isPresent()) {
+                        return error;
+                    }
+                }
+                emit(R_HASH, target, first, pairs.size() * 2);
+            }
+            case IndexExpression indexExpression -> {
+                final var left = operand(indexExpression.left());
+                var error = expression(indexExpression.left(), left);
+                if (error.isPresent()) {
+                    return error;
+                }
+                final var index = operand(indexExpression.index());
+                error = expression(indexExpression.index(), index);
+                if (error.isPresent()) {
+                    return error;
+                }
+                emit(R_INDEX, target, left, index);
+            }
+            case CallExpression callExpression -> {
+                final var arguments = callExpression.arguments();
+                final var callee = consecutive(arguments.size() + 1);
+                var error = expression(callExpression.function(), callee);
+                if (error.isPresent()) {
+                    return error;
+                }
+                for (var i = 0; i < arguments.size(); i++) {
+                    error = expression(arguments.get(i), callee + 1 + i);
+                    if (error.isPresent()) {
+                        return error;
+                    }
+                }
+                emit(R_CALL, target, callee, arguments.size());
+            }
+            case FunctionLiteral functionLiteral -> {
+                return function(functionLiteral, target);
+            }
+            default -> throw new IllegalStateException("Unexpected value: " + expression);
+        }
+        return empty();
+    }
+
+    private Optional<Object> function(FunctionLiteral functionLiteral, int target) {
+        final var parameters = functionLiteral.parameters();
+        symbolTable = enclosedSymbolTable(symbolTable);
+        scope = new Scope(scope, parameters.size() + countLetStatements(functionLiteral.body()));
+
+        functionLiteral.name().ifPresent(symbolTable::defineFunctionName);
+        for (var param : parameters) {
+            symbolTable.define(param.value());
+        }
+
+        final var statements = functionLiteral.body().statements();
+        if (!statements.isEmpty() && statements.getLast() instanceof ExpressionStatement) {
+            final var result = temporary();
+            final var error = block(functionLiteral.body(), result);
+            if (error.isPresent()) {
+                return error;
+            }
+            emit(R_RETURN, result);
+        } else {
+            final var error = statement(functionLiteral.body());
+            if (error.isPresent()) {
+                return error;
+            }
+            final var result = temporary();
+            emit(R_LOAD_NULL, result);
+            emit(R_RETURN, result);
+        }
+
+        final var freeSymbols = symbolTable.freeSymbols;
+        final var fn = registerFunction(
+                Arrays.copyOf(scope.code, scope.length),
+                scope.numberOfRegisters,
+                parameters.size(),
+                freeSymbols.size()
+        );
+        scope = scope.outer;
+        symbolTable = symbolTable.outer;
+
+        final var first = consecutive(freeSymbols.size());
+        for (var i = 0; i < freeSymbols.size(); i++) {
+            loadSymbol(freeSymbols.get(i), first + i);
+        }
+        emit(R_CLOSURE, target, addConstant(fn), first);
+        return empty();
+    }
+
+    private void loadSymbol(Symbol symbol, int target) {
+        switch (symbol.scope()) {
+            case LOCAL_SCOPE -> {
+                if (target != symbol.index()) {
+                    emit(R_MOVE, target, symbol.index());
+                }
+            }
+            case GLOBAL_SCOPE -> emit(R_GET_GLOBAL, target, symbol.index());
+            case BUILTIN_SCOPE -> emit(R_GET_BUILTIN, target, symbol.index());
+            case FREE_SCOPE -> emit(R_GET_FREE, target, symbol.index());
+            case FUNCTION_SCOPE -> emit(R_CURRENT_CLOSURE, target);
+            default -> throw new IllegalStateException("Unexpected value: " + symbol.scope());
+        }
+    }
+
+    // lets of a function body are its locals, so they get registers before any temporary
+    private static int countLetStatements(Node node) {
+        return switch (node) {
+            case LetStatement let -> 1 + countLetStatements(let.value());
+            case ReturnStatement returnStatement -> countLetStatements(returnStatement.returnValue());
+            case ExpressionStatement statement -> countLetStatements(statement.expression());
+            case BlockStatement block -> block.statements().stream().mapToInt(RegisterCompiler::countLetStatements).sum();
+            case IfExpression ifExpression -> countLetStatements(ifExpression.condition())
+                    + countLetStatements(ifExpression.consequence())
+                    + (ifExpression.alternative() == null ? 0 : countLetStatements(ifExpression.alternative()));
+            case PrefixExpression prefix -> countLetStatements(prefix.right());
+            case InfixExpression infix -> countLetStatements(infix.left()) + countLetStatements(infix.right());
+            case CallExpression call -> countLetStatements(call.function())
+                    + call.arguments().stream().mapToInt(RegisterCompiler::countLetStatements).sum();
+            case ArrayLiteral array -> array.elements().stream().mapToInt(RegisterCompiler::countLetStatements).sum();
+            case HashLiteral hash -> hash.pairs().entrySet().stream()
+                    .mapToInt(it -> countLetStatements(it.getKey()) + countLetStatements(it.getValue()))
+                    .sum();
+            case IndexExpression index -> countLetStatements(index.left()) + countLetStatements(index.index());
+            default -> 0; // literals, identifiers and nested functions which have their own registers
+        };
+    }
+
+    private int temporary() {
+        return consecutive(1);
+    }
+
+    private int consecutive(int count) {
+        final var first = scope.nextRegister;
+        scope.nextRegister += count;
+        scope.numberOfRegisters = Math.max(scope.numberOfRegisters, scope.nextRegister);
+        return first;
+    }
+
+    private int emit(int op, int... operands) {
+        if (scope.length + INSTRUCTION_WIDTH > scope.code.length) {
+            scope.code = Arrays.copyOf(scope.code, scope.code.length * 2);
+        }
+        final var position = scope.length;
+        scope.code[position] = op;
+        System.arraycopy(operands, 0, scope.code, position + 1, operands.length);
+        scope.length += INSTRUCTION_WIDTH;
+        return position;
+    }
+
+    private void changeOperand(int position, int operand, int value) {
+        scope.code[position + operand] = value;
+    }
+
+    private int addConstant(MonkeyObject constant) {
+        return constants.add(constant);
+    }
+}
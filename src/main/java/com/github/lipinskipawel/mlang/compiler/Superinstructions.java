@@ -0,0 +1,200 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.code.Instructions;
+import com.github.lipinskipawel.mlang.code.OpCode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static com.github.lipinskipawel.mlang.code.Instructions.instructions;
+import static com.github.lipinskipawel.mlang.code.Instructions.make;
+import static com.github.lipinskipawel.mlang.code.Instructions.merge;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_ADD;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_ADD_LOCAL_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_ADD_RETURN_VALUE;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_CALL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_CURRENT_CLOSURE;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_EQUAL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_GET_LOCAL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_GET_LOCAL_CALL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_GREATER_THAN;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP_NOT_EQUAL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP_NOT_GREATER_THAN;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP_NOT_TRUTHY;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_RETURN_VALUE;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_SELF_CALL_SUB_LOCAL_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_SUB;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_SUB_LOCAL_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.OpCode.opCode;
+import static java.util.Arrays.stream;
+
+// rewrites windows of instructions that the compiler emits over and over again into one fused instruction.
+// Operands of the fused instruction are the leading operands of the window in order. Jump positions are relocated after
+// the rewrite, and a window is fused only when nothing jumps into the middle of it. A jump to OP_RETURN_VALUE returns
+// right away instead, so the last expression of a function fuses with the return.
+final class Superinstructions {
+
+    // applies tells whether the matched window really is what the fused instruction does. Operands of the window which
+    // the fused instruction does not have are dropped from the end
+    private record Pattern(List<OpCode> window, OpCode fused, Predicate<List<Instruction>> applies) {
+        private Pattern(List<OpCode> window, OpCode fused) {
+            this(window, fused, it -> true);
+        }
+    }
+
+    private record Instruction(OpCode op, int[] operands, int position) {
+    }
+
+    // longest windows first, so the more specific instruction wins
+    private static final List<Pattern> PATTERNS = List.of(
+            // the current closure is the callee only when it is called with the one argument
+            new Pattern(List.of(OP_CURRENT_CLOSURE, OP_GET_LOCAL, OP_CONSTANT, OP_SUB, OP_CALL), OP_SELF_CALL_SUB_LOCAL_CONSTANT,
+                    window -> window.getLast().operands()[0] == 1),
+            new Pattern(List.of(OP_GET_LOCAL, OP_CONSTANT, OP_EQUAL, OP_JUMP_NOT_TRUTHY), OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL),
+            new Pattern(List.of(OP_GET_LOCAL, OP_CONSTANT, OP_ADD), OP_ADD_LOCAL_CONSTANT),
+            new Pattern(List.of(OP_GET_LOCAL, OP_CONSTANT, OP_SUB), OP_SUB_LOCAL_CONSTANT),
+            new Pattern(List.of(OP_EQUAL, OP_JUMP_NOT_TRUTHY), OP_JUMP_NOT_EQUAL),
+            new Pattern(List.of(OP_GREATER_THAN, OP_JUMP_NOT_TRUTHY), OP_JUMP_NOT_GREATER_THAN),
+            new Pattern(List.of(OP_GET_LOCAL, OP_CALL), OP_GET_LOCAL_CALL),
+            new Pattern(List.of(OP_ADD, OP_RETURN_VALUE), OP_ADD_RETURN_VALUE)
+    );
+
+    private Superinstructions() {
+    }
+
+    static Instructions fuse(Instructions instructions) {
+        final var original = returnsInsteadOfJumps(instructionsOf(instructions));
+        final var jumpTargets = jumpTargets(original);
+
+        final var fused = new ArrayList<Instruction>();
+        final var newPositions = new int[instructions.length() + 1];
+        var newPosition = 0;
+
+        var i = 0;
+        while (i < original.size()) {
+            final var pattern = matchingPattern(original, i, jumpTargets);
+            final var windowSize = pattern == null ? 1 : pattern.window().size();
+            final var window = original.subList(i, i + windowSize);
+
+            for (var instruction : window) {
+                newPositions[instruction.position()] = newPosition;
+            }
+
+            final var instruction = pattern == null
+                    ? window.getFirst()
+                    : new Instruction(pattern.fused(), operands(pattern, window), window.getFirst().position());
+            fused.add(instruction);
+
+            newPosition += width(instruction.op());
+            i += windowSize;
+        }
+        newPositions[instructions.length()] = newPosition;
+
+        return merge(fused.stream()
+                .map(it -> instructions(make(it.op(), relocate(it, newPositions))))
+                .toList());
+    }
+
+    private static List<Instruction> instructionsOf(Instructions instructions) {
+        final var code = instructions.decoded();
+        final var result = new ArrayList<Instruction>();
+
+        var position = 0;
+        while (position < code.length) {
+            final var op = opCode((byte) code[position]);
+            final var operandCount = op.definition().operandWidths().length;
+            final var operands = new int[operandCount];
+
+            var offset = position + 1;
+            for (var i = 0; i < operandCount; i++) {
+                operands[i] = code[offset];
+                offset += op.definition().operandWidths()[i];
+            }
+
+            result.add(new Instruction(op, operands, position));
+            position = offset;
+        }
+        return result;
+    }
+
+    private static List<Instruction> returnsInsteadOfJumps(List<Instruction> instructions) {
+        final var byPosition = new HashMap<Integer, Instruction>();
+        for (var instruction : instructions) {
+            byPosition.put(instruction.position(), instruction);
+        }
+        return instructions.stream()
+                .map(it -> {
+                    if (it.op() != OP_JUMP) {
+                        return it;
+                    }
+                    final var target = byPosition.get(it.operands()[0]);
+                    return target != null && target.op() == OP_RETURN_VALUE
+                            ? new Instruction(OP_RETURN_VALUE, new int[0], it.position())
+                            : it;
+                })
+                .toList();
+    }
+
+    private static Set<Integer> jumpTargets(List<Instruction> instructions) {
+        final var targets = new HashSet<Integer>();
+        for (var instruction : instructions) {
+            final var index = instruction.op().jumpOperandIndex();
+            if (index >= 0) {
+                targets.add(instruction.operands()[index]);
+            }
+        }
+        return targets;
+    }
+
+    private static Pattern matchingPattern(List<Instruction> instructions, int start, Set<Integer> jumpTargets) {
+        for (var pattern : PATTERNS) {
+            if (matches(pattern, instructions, start, jumpTargets)) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(Pattern pattern, List<Instruction> instructions, int start, Set<Integer> jumpTargets) {
+        if (start + pattern.window().size() > instructions.size()) {
+            return false;
+        }
+        for (var i = 0; i < pattern.window().size(); i++) {
+            final var instruction = instructions.get(start + i);
+            if (instruction.op() != pattern.window().get(i)) {
+                return false;
+            }
+            if (i > 0 && jumpTargets.contains(instruction.position())) {
+                return false;
+            }
+        }
+        return pattern.applies().test(instructions.subList(start, start + pattern.window().size()));
+    }
+
+    private static int[] operands(Pattern pattern, List<Instruction> window) {
+        return window.stream()
+                .flatMapToInt(it -> stream(it.operands()))
+                .limit(pattern.fused().definition().operandWidths().length)
+                .toArray();
+    }
+
+    private static int[] relocate(Instruction instruction, int[] newPositions) {
+        final var operands = instruction.operands().clone();
+        final var index = instruction.op().jumpOperandIndex();
+        if (index >= 0) {
+            operands[index] = newPositions[operands[index]];
+        }
+        return operands;
+    }
+
+    private static int width(OpCode op) {
+        return 1 + stream(op.definition().operandWidths()).sum();
+    }
+}
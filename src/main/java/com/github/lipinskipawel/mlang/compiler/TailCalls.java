@@ -0,0 +1,55 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.code.Instructions;
+
+import static com.github.lipinskipawel.mlang.code.Instructions.make;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_CALL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_RETURN_VALUE;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_TAIL_CALL;
+import static com.github.lipinskipawel.mlang.code.OpCode.opCode;
+import static java.util.Arrays.stream;
+
+// rewrites OP_CALL in tail position of a function body into OP_TAIL_CALL. A call is in tail position when the next
+// instruction returns its result, either directly or through jumps which end in OP_RETURN_VALUE, which covers
+// `return f(x);`, a call as the last expression and calls in the branches of a trailing if expression.
+// The instruction keeps its width and the OP_RETURN_VALUE after it, so nothing has to be relocated.
+final class TailCalls {
+
+    private TailCalls() {
+    }
+
+    static Instructions mark(Instructions instructions) {
+        final var code = instructions.decoded();
+
+        var position = 0;
+        while (position < code.length) {
+            final var op = opCode((byte) code[position]);
+            final var next = position + width(op.definition().operandWidths());
+            if (op == OP_CALL && returns(code, next)) {
+                instructions.replaceInstructions(position, make(OP_TAIL_CALL, new int[]{code[position + 1]}));
+            }
+            position = next;
+        }
+        return instructions;
+    }
+
+    private static boolean returns(int[] code, int position) {
+        // jumps only go forward, so following them always ends
+        while (position < code.length) {
+            final var op = opCode((byte) code[position]);
+            if (op == OP_RETURN_VALUE) {
+                return true;
+            }
+            if (op != OP_JUMP) {
+                return false;
+            }
+            position = code[position + 1];
+        }
+        return false;
+    }
+
+    private static int width(int[] operandWidths) {
+        return 1 + stream(operandWidths).sum();
+    }
+}
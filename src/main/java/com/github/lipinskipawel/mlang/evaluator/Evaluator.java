@@ -38,6 +38,8 @@ import java.util.List;
 
 import static com.github.lipinskipawel.mlang.evaluator.Environment.newEnclosedEnvironment;
 import static com.github.lipinskipawel.mlang.evaluator.builtin.Builtin.findBuiltIn;
+import static com.github.lipinskipawel.mlang.evaluator.objects.Arguments.arguments;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.ARRAY_OBJ;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.ERROR_OBJ;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.HASH_OBJ;
@@ -81,7 +83,7 @@ public final class Evaluator {
             }
 
             // expressions
-            case IntegerLiteral integer -> new MonkeyInteger(integer.value());
+            case IntegerLiteral integer -> monkeyInteger(integer.value());
             case StringLiteral string -> new MonkeyString(string.value());
             case BooleanExpression bool -> nativeBoolToMonkeyBoolean(bool.value());
             case PrefixExpression prefix -> {
@@ -230,7 +232,7 @@ public final class Evaluator {
                 yield unwrapReturnValue(evaluated);
             }
             case BUILTIN_OBJ -> {
-                final var result = ((MonkeyBuiltin) fn).builtin(arguments);
+                final var result = ((MonkeyBuiltin) fn).builtin(arguments(arguments));
                 if (result != null) {
                     yield result;
                 }
@@ -266,14 +268,14 @@ public final class Evaluator {
     }
 
     private MonkeyObject evalArrayIndexExpression(MonkeyArray left, MonkeyInteger index) {
-        final var max = left.elements().size() - 1;
+        final var max = left.size() - 1;
         final var idx = index.value();
 
         if (idx < 0 || idx > max) {
             return NULL;
         }
 
-        return left.elements().get(idx);
+        return left.get(idx);
     }
 
     private MonkeyObject evalHashExpression(MonkeyHash left, MonkeyObject key) {
@@ -281,7 +283,7 @@ public final class Evaluator {
             return newError("unusable as hash key: %s", key.type());
         }
 
-        final var value = left.getHashPair(((Hashable) key).hashKey());
+        final var value = left.get(key);
         if (value == null) {
             return NULL;
         }
@@ -290,7 +292,7 @@ public final class Evaluator {
     }
 
     private MonkeyObject evalHashLiterals(HashLiteral hashLiteral, Environment environment) {
-        final var monkeyHash1 = new MonkeyHash();
+        final var monkeyHash1 = MonkeyHash.builder();
 
         for (var entry : hashLiteral.pairs().entrySet()) {
             final var key = eval(entry.getKey(), environment);
@@ -309,7 +311,7 @@ public final class Evaluator {
             monkeyHash1.put(key, value);
         }
 
-        return monkeyHash1;
+        return monkeyHash1.build();
     }
 
     private boolean isTruthy(MonkeyObject object) {
@@ -345,7 +347,7 @@ public final class Evaluator {
         if (right.type() != INTEGER_OBJ) {
             return newError("unknown operator: -%s", right.type());
         }
-        return new MonkeyInteger(-((MonkeyInteger) (right)).value());
+        return monkeyInteger(-((MonkeyInteger) (right)).value());
     }
 
     private MonkeyObject evalInfixExpression(String operator, MonkeyObject left, MonkeyObject right) {
@@ -367,10 +369,10 @@ public final class Evaluator {
 
     private MonkeyObject evalIntegerInfixExpression(String operator, MonkeyInteger left, MonkeyInteger right) {
         return switch (operator) {
-            case "+" -> new MonkeyInteger(left.value() + right.value());
-            case "-" -> new MonkeyInteger(left.value() - right.value());
-            case "*" -> new MonkeyInteger(left.value() * right.value());
-            case "/" -> new MonkeyInteger(left.value() / right.value());
+            case "+" -> monkeyInteger(left.value() + right.value());
+            case "-" -> monkeyInteger(left.value() - right.value());
+            case "*" -> monkeyInteger(left.value() * right.value());
+            case "/" -> monkeyInteger(left.value() / right.value());
 
             case "<" -> nativeBoolToMonkeyBoolean(left.value() < right.value());
             case ">" -> nativeBoolToMonkeyBoolean(left.value() > right.value());
@@ -384,7 +386,7 @@ public final class Evaluator {
         if (!operator.equals("+")) {
             return newError("unknown operator: " + left.type() + " - " + right.type());
         }
-        return new MonkeyString(left.value() + right.value());
+        return left.concat(right);
     }
 
     private MonkeyBoolean nativeBoolToMonkeyBoolean(boolean bool) {
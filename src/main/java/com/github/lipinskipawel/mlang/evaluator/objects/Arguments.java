@@ -0,0 +1,46 @@
+package com.github.lipinskipawel.mlang.evaluator.objects;
+
+import java.util.List;
+
+// a window over the slots holding the arguments of a builtin call. The virtual machines keep one instance and move
+// it over their stack or registers on every call, so calling a builtin does not allocate. Builtins must not keep a
+// reference to it after they return
+public final class Arguments {
+    private static final MonkeyObject[] EMPTY = new MonkeyObject[0];
+
+    private MonkeyObject[] slots;
+    private int start;
+    private int size;
+
+    private Arguments(MonkeyObject[] slots, int start, int size) {
+        this.slots = slots;
+        this.start = start;
+        this.size = size;
+    }
+
+    public static Arguments arguments() {
+        return new Arguments(EMPTY, 0, 0);
+    }
+
+    public static Arguments arguments(List<MonkeyObject> objects) {
+        return arguments().window(objects.toArray(EMPTY), 0, objects.size());
+    }
+
+    public Arguments window(MonkeyObject[] slots, int start, int end) {
+        this.slots = slots;
+        this.start = start;
+        this.size = end - start;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public MonkeyObject get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index %d out of bounds for length %d".formatted(index, size));
+        }
+        return slots[start + index];
+    }
+}
@@ -5,12 +5,15 @@ import java.util.Arrays;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.CLOSURE_OBJ;
 import static java.util.Objects.requireNonNull;
 
+// created by a virtual machine while running, so it is never shared between virtual machines
 public final class Closure extends MonkeyObject {
+    private static final MonkeyObject[] NO_FREE_VARIABLES = new MonkeyObject[0];
+
     public final CompilerFunction fn;
-    public MonkeyObject[] freeVariables;
+    private final MonkeyObject[] freeVariables; // owned by the closure, callers pass a new array
 
     public Closure(CompilerFunction fn) {
-        this.fn = requireNonNull(fn);
+        this(fn, NO_FREE_VARIABLES);
     }
 
     public Closure(CompilerFunction fn, MonkeyObject[] freeVariables) {
@@ -18,6 +21,10 @@ public final class Closure extends MonkeyObject {
         this.freeVariables = requireNonNull(freeVariables);
     }
 
+    public MonkeyObject freeVariable(int index) {
+        return freeVariables[index];
+    }
+
     @Override
     public ObjectType type() {
         return CLOSURE_OBJ;
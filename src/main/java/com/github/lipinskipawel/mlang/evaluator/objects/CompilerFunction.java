@@ -2,12 +2,25 @@ package com.github.lipinskipawel.mlang.evaluator.objects;
 
 import com.github.lipinskipawel.mlang.code.Instructions;
 
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.COMPILED_FUNCTION_OBJ;
 
+// a constant of Bytecode, so one function is shared by every virtual machine running the same frozen Bytecode, also
+// on different threads. The bookkeeping below is the only state written while running and is safe to share
 public final class CompilerFunction extends MonkeyObject {
     private final Instructions instructions;
     private final int numberOfLocals;
     private final int numberOfParameters;
+    // bookkeeping of the virtual machine's JIT, the function is shared by every closure created from it
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final AtomicBoolean translationClaimed = new AtomicBoolean();
+    private volatile MethodHandle jitted;
+    // inline caches of the virtual machine, the callee last seen by the call instruction at each offset. Racing
+    // writes only cost a cache miss, the cached function is compared by identity and never called through
+    private CompilerFunction[] callSites;
 
     private CompilerFunction(Instructions instructions, int numberOfLocals, int numberOfParameters) {
         this.instructions = instructions;
@@ -35,6 +48,38 @@ public final class CompilerFunction extends MonkeyObject {
         return numberOfParameters;
     }
 
+    public int invocations() {
+        return invocations.get();
+    }
+
+    public int incrementInvocations() {
+        return invocations.incrementAndGet();
+    }
+
+    // true for exactly one caller, the one which translates the function
+    public boolean claimTranslation() {
+        return !translationClaimed.get() && translationClaimed.compareAndSet(false, true);
+    }
+
+    public boolean isTranslationClaimed() {
+        return translationClaimed.get();
+    }
+
+    public MethodHandle jitted() {
+        return jitted;
+    }
+
+    public void jitted(MethodHandle jitted) {
+        this.jitted = jitted;
+    }
+
+    public CompilerFunction[] callSites() {
+        if (callSites == null) {
+            callSites = new CompilerFunction[instructions.length()];
+        }
+        return callSites;
+    }
+
     @Override
     public ObjectType type() {
         return COMPILED_FUNCTION_OBJ;
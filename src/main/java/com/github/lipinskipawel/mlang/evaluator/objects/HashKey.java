@@ -1,14 +1,32 @@
 package com.github.lipinskipawel.mlang.evaluator.objects;
 
-import java.util.Objects;
-
+// the value is the hash of the key. String keys carry their content as well, different strings with the same hash are
+// different keys
 public final class HashKey {
     private final ObjectType type;
     private final int value;
+    private final String content;
 
     public HashKey(ObjectType type, int value) {
+        this(type, value, null);
+    }
+
+    HashKey(ObjectType type, int value, String content) {
         this.type = type;
         this.value = value;
+        this.content = content;
+    }
+
+    ObjectType type() {
+        return type;
+    }
+
+    int value() {
+        return value;
+    }
+
+    String content() {
+        return content;
     }
 
     @Override
@@ -16,11 +34,13 @@ public final class HashKey {
         if (this == object) return true;
         if (object == null || getClass() != object.getClass()) return false;
         HashKey hashKey = (HashKey) object;
-        return value == hashKey.value && type == hashKey.type;
+        return value == hashKey.value && type == hashKey.type && (content == null
+                ? hashKey.content == null
+                : content.equals(hashKey.content));
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(type, value);
+        return 31 * type.ordinal() + value;
     }
 }
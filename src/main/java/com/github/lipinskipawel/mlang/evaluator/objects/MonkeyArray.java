@@ -5,13 +5,27 @@ import java.util.List;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.ARRAY_OBJ;
 import static java.util.stream.Collectors.joining;
 
+// immutable, push and rest return a new array which shares the elements with this one. Indexing, push and last are
+// O(log32 n), rest is O(1)
 public final class MonkeyArray extends MonkeyObject {
-    private final List<MonkeyObject> elements;
+    private final PersistentVector<MonkeyObject> elements;
 
     public MonkeyArray(List<MonkeyObject> elements) {
+        final var builder = PersistentVector.<MonkeyObject>builder();
+        for (var element : elements) {
+            builder.add(element);
+        }
+        this.elements = builder.build();
+    }
+
+    private MonkeyArray(PersistentVector<MonkeyObject> elements) {
         this.elements = elements;
     }
 
+    public static Builder builder() {
+        return new Builder();
+    }
+
     @Override
     public ObjectType type() {
         return ARRAY_OBJ;
@@ -26,7 +40,41 @@ public final class MonkeyArray extends MonkeyObject {
                 + "]";
     }
 
+    // unmodifiable view of the elements
     public List<MonkeyObject> elements() {
         return elements;
     }
+
+    public int size() {
+        return elements.size();
+    }
+
+    public MonkeyObject get(int index) {
+        return elements.get(index);
+    }
+
+    public MonkeyArray push(MonkeyObject element) {
+        return new MonkeyArray(elements.push(element));
+    }
+
+    // the array without its first element, the array must not be empty
+    public MonkeyArray rest() {
+        return new MonkeyArray(elements.rest());
+    }
+
+    public static final class Builder {
+        private final PersistentVector.Builder<MonkeyObject> elements = PersistentVector.builder();
+
+        private Builder() {
+        }
+
+        public Builder add(MonkeyObject element) {
+            elements.add(element);
+            return this;
+        }
+
+        public MonkeyArray build() {
+            return new MonkeyArray(elements.build());
+        }
+    }
 }
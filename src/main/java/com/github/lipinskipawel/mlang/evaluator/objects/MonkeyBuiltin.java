@@ -1,12 +1,10 @@
 package com.github.lipinskipawel.mlang.evaluator.objects;
 
-import java.util.List;
-
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.BUILTIN_OBJ;
 
 public abstract class MonkeyBuiltin extends MonkeyObject {
 
-    public abstract MonkeyObject builtin(List<MonkeyObject> objects);
+    public abstract MonkeyObject builtin(Arguments objects);
 
     @Override
     public ObjectType type() {
@@ -1,23 +1,57 @@
 package com.github.lipinskipawel.mlang.evaluator.objects;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.HASH_OBJ;
+import static java.lang.System.arraycopy;
 import static java.util.stream.Collectors.joining;
 
+// immutable hash array mapped trie keyed on the Monkey values. put returns a new hash which shares every node but the
+// ones on the path to the key. The hash of a key is the value of its HashKey, lookups compare the keys themselves and
+// do not allocate
 public final class MonkeyHash
         extends MonkeyObject
         implements Iterable<Map.Entry<HashKey, MonkeyHash.HashPair>> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final MonkeyHash EMPTY = new MonkeyHash(new Node(0, new Object[0]), 0);
 
     public record HashPair(MonkeyObject key, MonkeyObject value) {
     }
 
-    private final Map<HashKey, HashPair> pairs;
+    // holds a HashPair, a Node or a Collision for every bit set in the bitmap. Nodes are changed in place only by the
+    // builder which created them
+    private static final class Node {
+        private int bitmap;
+        private Object[] array;
 
-    public MonkeyHash() {
-        this.pairs = new HashMap<>();
+        private Node(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    // pairs whose keys have the same hash
+    private record Collision(int hash, HashPair[] pairs) {
+    }
+
+    private final Node root;
+    private final int size;
+
+    private MonkeyHash(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static MonkeyHash monkeyHash() {
+        return EMPTY;
+    }
+
+    public static Builder builder() {
+        return new Builder();
     }
 
     @Override
@@ -28,7 +62,7 @@ public final class MonkeyHash
     @Override
     public String inspect() {
         return "{"
-                + pairs.values()
+                + pairs()
                 .stream()
                 .map(hashPair -> hashPair.key.inspect() + ": " + hashPair.value.inspect())
                 .collect(joining(", "))
@@ -37,19 +71,252 @@ public final class MonkeyHash
 
     @Override
     public Iterator<Map.Entry<HashKey, HashPair>> iterator() {
-        return pairs.entrySet().iterator();
+        return pairs()
+                .stream()
+                .map(pair -> Map.entry(((Hashable) pair.key).hashKey(), pair))
+                .iterator();
     }
 
-    public void put(MonkeyObject key, MonkeyObject value) {
-        final var hash = ((Hashable) key).hashKey();
-        pairs.put(hash, new HashPair(key, value));
+    // the hash with the key mapped to the value, this hash does not change
+    public MonkeyHash put(MonkeyObject key, MonkeyObject value) {
+        final var hash = hash(key);
+        final var added = get(root, key) == null ? 1 : 0;
+        return new MonkeyHash(put(root, 0, hash, new HashPair(key, value), false), size + added);
     }
 
     public int size() {
-        return pairs.size();
+        return size;
+    }
+
+    // the pair of the key or null, keys which are not Hashable are never found
+    public HashPair get(MonkeyObject key) {
+        return get(root, key);
     }
 
     public HashPair getHashPair(HashKey key) {
-        return pairs.get(key);
+        return switch (leaf(root, key.value())) {
+            case HashPair pair when sameKey(pair, key) -> pair;
+            case Collision collision -> {
+                for (var pair : collision.pairs) {
+                    if (sameKey(pair, key)) {
+                        yield pair;
+                    }
+                }
+                yield null;
+            }
+            case null, default -> null;
+        };
+    }
+
+    private static HashPair get(Node root, MonkeyObject key) {
+        return switch (key) {
+            case MonkeyInteger integer -> getInteger(root, integer.value());
+            case MonkeyString string -> getString(root, string);
+            case MonkeyBoolean bool -> getBoolean(root, bool.value());
+            default -> null;
+        };
+    }
+
+    private static HashPair getInteger(Node root, int value) {
+        return switch (leaf(root, value)) {
+            case HashPair pair when pair.key instanceof MonkeyInteger integer && integer.value() == value -> pair;
+            case Collision collision -> {
+                for (var pair : collision.pairs) {
+                    if (pair.key instanceof MonkeyInteger integer && integer.value() == value) {
+                        yield pair;
+                    }
+                }
+                yield null;
+            }
+            case null, default -> null;
+        };
+    }
+
+    private static HashPair getString(Node root, MonkeyString key) {
+        final var value = key.value();
+        return switch (leaf(root, key.hash())) {
+            case HashPair pair when pair.key instanceof MonkeyString string && string.value().equals(value) -> pair;
+            case Collision collision -> {
+                for (var pair : collision.pairs) {
+                    if (pair.key instanceof MonkeyString string && string.value().equals(value)) {
+                        yield pair;
+                    }
+                }
+                yield null;
+            }
+            case null, default -> null;
+        };
+    }
+
+    private static HashPair getBoolean(Node root, boolean value) {
+        return switch (leaf(root, value ? 1 : 0)) {
+            case HashPair pair when pair.key instanceof MonkeyBoolean bool && bool.value() == value -> pair;
+            case Collision collision -> {
+                for (var pair : collision.pairs) {
+                    if (pair.key instanceof MonkeyBoolean bool && bool.value() == value) {
+                        yield pair;
+                    }
+                }
+                yield null;
+            }
+            case null, default -> null;
+        };
+    }
+
+    // the pair or collision on the path of the hash, its keys may have another hash
+    private static Object leaf(Node root, int hash) {
+        var node = root;
+        var shift = 0;
+        while (true) {
+            final var bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            final var child = node.array[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (!(child instanceof Node next)) {
+                return child;
+            }
+            node = next;
+            shift += BITS;
+        }
+    }
+
+    private List<HashPair> pairs() {
+        final var pairs = new ArrayList<HashPair>(size);
+        collect(root, pairs);
+        return pairs;
+    }
+
+    private static void collect(Node node, List<HashPair> pairs) {
+        for (var child : node.array) {
+            switch (child) {
+                case HashPair pair -> pairs.add(pair);
+                case Collision collision -> pairs.addAll(List.of(collision.pairs));
+                case Node next -> collect(next, pairs);
+                default -> throw new IllegalStateException("unexpected node [%s]".formatted(child));
+            }
+        }
+    }
+
+    // the same as the value of the HashKey of the key
+    private static int hash(MonkeyObject key) {
+        return switch (key) {
+            case MonkeyInteger integer -> integer.value();
+            case MonkeyString string -> string.hash();
+            case MonkeyBoolean bool -> bool.value() ? 1 : 0;
+            default -> throw new IllegalArgumentException("unusable as hash key: %s".formatted(key.type()));
+        };
+    }
+
+    private static boolean sameKey(HashPair pair, HashKey key) {
+        if (pair.key.type() != key.type() || hash(pair.key) != key.value()) {
+            return false;
+        }
+        return !(pair.key instanceof MonkeyString string) || string.value().equals(key.content());
+    }
+
+    private static boolean sameKey(MonkeyObject left, MonkeyObject right) {
+        return switch (left) {
+            case MonkeyInteger integer -> right instanceof MonkeyInteger other && integer.value() == other.value();
+            case MonkeyString string -> right instanceof MonkeyString other && string.value().equals(other.value());
+            case MonkeyBoolean bool -> right instanceof MonkeyBoolean other && bool.value() == other.value();
+            default -> false;
+        };
+    }
+
+    // copies the path to the pair, or changes the nodes in place when the builder owns them
+    private static Node put(Node node, int shift, int hash, HashPair pair, boolean inPlace) {
+        final var bit = 1 << ((hash >>> shift) & MASK);
+        final var index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            final var array = new Object[node.array.length + 1];
+            arraycopy(node.array, 0, array, 0, index);
+            array[index] = pair;
+            arraycopy(node.array, index, array, index + 1, node.array.length - index);
+            return update(node, node.bitmap | bit, array, inPlace);
+        }
+
+        final var child = node.array[index];
+        final var updated = switch (child) {
+            case Node next -> put(next, shift + BITS, hash, pair, inPlace);
+            case HashPair existing when sameKey(existing.key, pair.key) -> pair;
+            case HashPair existing when hash(existing.key) == hash -> new Collision(hash, new HashPair[]{existing, pair});
+            case HashPair existing -> merge(shift + BITS, existing, hash(existing.key), pair, hash);
+            case Collision collision when collision.hash == hash -> put(collision, pair);
+            case Collision collision -> merge(shift + BITS, collision, collision.hash, pair, hash);
+            default -> throw new IllegalStateException("unexpected node [%s]".formatted(child));
+        };
+        if (updated == child) {
+            return node;
+        }
+        final var array = inPlace ? node.array : node.array.clone();
+        array[index] = updated;
+        return update(node, node.bitmap, array, inPlace);
+    }
+
+    private static Collision put(Collision collision, HashPair pair) {
+        final var pairs = collision.pairs;
+        for (var i = 0; i < pairs.length; i++) {
+            if (sameKey(pairs[i].key, pair.key)) {
+                final var updated = pairs.clone();
+                updated[i] = pair;
+                return new Collision(collision.hash, updated);
+            }
+        }
+        final var updated = new HashPair[pairs.length + 1];
+        arraycopy(pairs, 0, updated, 0, pairs.length);
+        updated[pairs.length] = pair;
+        return new Collision(collision.hash, updated);
+    }
+
+    // node of two pairs or collisions with different hashes
+    private static Node merge(int shift, Object left, int leftHash, Object right, int rightHash) {
+        final var leftIndex = (leftHash >>> shift) & MASK;
+        final var rightIndex = (rightHash >>> shift) & MASK;
+        if (leftIndex == rightIndex) {
+            return new Node(1 << leftIndex, new Object[]{merge(shift + BITS, left, leftHash, right, rightHash)});
+        }
+        final var array = leftIndex < rightIndex ? new Object[]{left, right} : new Object[]{right, left};
+        return new Node((1 << leftIndex) | (1 << rightIndex), array);
+    }
+
+    private static Node update(Node node, int bitmap, Object[] array, boolean inPlace) {
+        if (inPlace) {
+            node.bitmap = bitmap;
+            node.array = array;
+            return node;
+        }
+        return new Node(bitmap, array);
+    }
+
+    // transient hash for bulk construction, it changes its own nodes in place instead of copying paths. The builder can
+    // not be used after build(), the built hash shares its nodes
+    public static final class Builder {
+        private final Node root = new Node(0, new Object[0]);
+        private int size;
+        private boolean built;
+
+        private Builder() {
+        }
+
+        public Builder put(MonkeyObject key, MonkeyObject value) {
+            if (built) {
+                throw new IllegalStateException("builder already built");
+            }
+            final var hash = hash(key);
+            if (get(root, key) == null) {
+                size++;
+            }
+            MonkeyHash.put(root, 0, hash, new HashPair(key, value), true);
+            return this;
+        }
+
+        public MonkeyHash build() {
+            if (built) {
+                throw new IllegalStateException("builder already built");
+            }
+            built = true;
+            return new MonkeyHash(root, size);
+        }
     }
 }
@@ -3,12 +3,33 @@ package com.github.lipinskipawel.mlang.evaluator.objects;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.INTEGER_OBJ;
 
 public final class MonkeyInteger extends MonkeyObject implements Hashable {
+    // instances of small values are shared, the range can be changed with
+    // -Dmlang.integerCache.low and -Dmlang.integerCache.high
+    private static final int CACHE_LOW = Integer.getInteger("mlang.integerCache.low", -128);
+    private static final int CACHE_HIGH = Integer.getInteger("mlang.integerCache.high", 1024);
+    private static final MonkeyInteger[] CACHE = cache();
+
     private final int value;
 
     public MonkeyInteger(int value) {
         this.value = value;
     }
 
+    public static MonkeyInteger monkeyInteger(int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[value - CACHE_LOW];
+        }
+        return new MonkeyInteger(value);
+    }
+
+    private static MonkeyInteger[] cache() {
+        final var cache = new MonkeyInteger[Math.max(CACHE_HIGH - CACHE_LOW + 1, 0)];
+        for (var i = 0; i < cache.length; i++) {
+            cache[i] = new MonkeyInteger(CACHE_LOW + i);
+        }
+        return cache;
+    }
+
     public HashKey hashKey() {
         return new HashKey(type(), value);
     }
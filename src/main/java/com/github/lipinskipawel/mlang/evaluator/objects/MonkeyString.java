@@ -1,16 +1,71 @@
 package com.github.lipinskipawel.mlang.evaluator.objects;
 
+import java.util.ArrayDeque;
+
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.STRING_OBJ;
 
+// a concatenation of long strings is a rope, a tree of the strings which is flattened once on the first use of its
+// value, hash or inspect. Repeated appends are linear instead of copying the whole string on every append
 public final class MonkeyString extends MonkeyObject implements Hashable {
-    private final String value;
+    // shorter concatenations are copied right away
+    private static final int ROPE_THRESHOLD = 64;
+
+    // either the String or the Concat of a rope which is not yet flattened
+    private volatile Object content;
+    private final int length;
+    // computed on first use, racy like String.hashCode(). Every thread computes the same values
+    private int hash;
+    private boolean hashIsZero;
+    private HashKey hashKey;
+
+    private record Concat(MonkeyString left, MonkeyString right) {
+    }
 
     public MonkeyString(String value) {
-        this.value = value;
+        this.content = value;
+        this.length = value.length();
+    }
+
+    private MonkeyString(MonkeyString left, MonkeyString right, int length) {
+        this.content = new Concat(left, right);
+        this.length = length;
+    }
+
+    public MonkeyString concat(MonkeyString right) {
+        final var length = Math.addExact(this.length, right.length);
+        if (length <= ROPE_THRESHOLD) {
+            return new MonkeyString(value() + right.value());
+        }
+        if (right.length == 0) {
+            return this;
+        }
+        if (this.length == 0) {
+            return right;
+        }
+        return new MonkeyString(this, right, length);
     }
 
     public HashKey hashKey() {
-        return new HashKey(type(), value.hashCode());
+        var key = hashKey;
+        if (key == null) {
+            key = new HashKey(type(), hash(), value());
+            hashKey = key;
+        }
+        return key;
+    }
+
+    // the same as value().hashCode()
+    public int hash() {
+        var h = hash;
+        if (h == 0 && !hashIsZero) {
+            h = value().hashCode();
+            if (h == 0) {
+                hashIsZero = true;
+            } else {
+                hash = h;
+            }
+        }
+        return h;
     }
 
     @Override
@@ -20,10 +75,44 @@ public final class MonkeyString extends MonkeyObject implements Hashable {
 
     @Override
     public String inspect() {
-        return value;
+        return value();
     }
 
     public String value() {
+        if (content instanceof String value) {
+            return value;
+        }
+        final var value = flatten();
+        content = value;
         return value;
     }
+
+    // known without flattening
+    public int length() {
+        return length;
+    }
+
+    // interned strings are the same instance, ropes of another length are not flattened
+    public boolean sameValue(MonkeyString other) {
+        return this == other || (length == other.length && value().equals(other.value()));
+    }
+
+    // iterative, ropes of repeated appends are as deep as the number of appends. Every node is read once, a node
+    // flattened meanwhile by another thread is either a String or a Concat, both are complete
+    private String flatten() {
+        final var string = new StringBuilder(length);
+        final var nodes = new ArrayDeque<MonkeyString>();
+        nodes.push(this);
+        while (!nodes.isEmpty()) {
+            switch (nodes.pop().content) {
+                case String value -> string.append(value);
+                case Concat concat -> {
+                    nodes.push(concat.right);
+                    nodes.push(concat.left);
+                }
+                default -> throw new IllegalStateException("unexpected content of string");
+            }
+        }
+        return string.toString();
+    }
 }
@@ -0,0 +1,210 @@
+package com.github.lipinskipawel.mlang.evaluator.objects;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+// immutable bit-partitioned vector trie with 32-way nodes. The last, possibly partial, leaf is kept out of the trie in
+// the tail, so most pushes copy only the tail. Elements before the offset are not part of the vector, they are what
+// rest() has dropped. A vector shares its nodes with the vectors it was pushed or rested from
+final class PersistentVector<E> extends AbstractList<E> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] EMPTY_NODE = new Object[WIDTH];
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, 0, BITS, EMPTY_NODE, new Object[0]);
+
+    private final int offset;
+    private final int count; // elements in the trie and the tail, including the ones before the offset
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int offset, int count, int shift, Object[] root, Object[] tail) {
+        this.offset = offset;
+        this.count = count;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    static <E> Builder<E> builder() {
+        return new Builder<>();
+    }
+
+    @Override
+    public int size() {
+        return count - offset;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size());
+        final var i = index + offset;
+        return (E) leafFor(i)[i & MASK];
+    }
+
+    PersistentVector<E> push(E element) {
+        final var tailOffset = tailOffset(count);
+        if (count - tailOffset < WIDTH) {
+            final var newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = element;
+            return new PersistentVector<>(offset, count + 1, shift, root, newTail);
+        }
+        final var newTail = new Object[]{element};
+        // the root is full, the trie grows by one level
+        if ((count >>> BITS) > (1 << shift)) {
+            final var newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            return new PersistentVector<>(offset, count + 1, shift + BITS, newRoot, newTail);
+        }
+        return new PersistentVector<>(offset, count + 1, shift, pushTail(count, shift, root, tail), newTail);
+    }
+
+    // the vector without its first element, it shares every node with this vector
+    PersistentVector<E> rest() {
+        if (size() == 0) {
+            throw new IllegalStateException("rest of empty vector");
+        }
+        if (size() == 1) {
+            return empty();
+        }
+        return new PersistentVector<>(offset + 1, count, shift, root, tail);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private int i = offset;
+            private Object[] leaf = i < count ? leafFor(i) : null;
+
+            @Override
+            public boolean hasNext() {
+                return i < count;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (i >= count) {
+                    throw new NoSuchElementException();
+                }
+                if ((i & MASK) == 0 && i != offset) {
+                    leaf = leafFor(i);
+                }
+                return (E) leaf[i++ & MASK];
+            }
+        };
+    }
+
+    private Object[] leafFor(int i) {
+        if (i >= tailOffset(count)) {
+            return tail;
+        }
+        var node = root;
+        for (var level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(i >>> level) & MASK];
+        }
+        return node;
+    }
+
+    // index of the first element in the tail
+    private static int tailOffset(int count) {
+        return count < WIDTH ? 0 : ((count - 1) >>> BITS) << BITS;
+    }
+
+    // copies the path to the leaf where the full tail goes, count is the number of elements before the push
+    private static Object[] pushTail(int count, int level, Object[] parent, Object[] tail) {
+        final var i = ((count - 1) >>> level) & MASK;
+        final var node = parent.clone();
+        if (level == BITS) {
+            node[i] = tail;
+        } else {
+            final var child = (Object[]) parent[i];
+            node[i] = child != null ? pushTail(count, level - BITS, child, tail) : newPath(level - BITS, tail);
+        }
+        return node;
+    }
+
+    private static Object[] newPath(int level, Object[] leaf) {
+        if (level == 0) {
+            return leaf;
+        }
+        final var node = new Object[WIDTH];
+        node[0] = newPath(level - BITS, leaf);
+        return node;
+    }
+
+    // transient vector for bulk construction. It owns every node it creates, so adding mutates them in place instead of
+    // copying paths. The builder can not be used after build(), the built vector shares its nodes
+    static final class Builder<E> {
+        private int count;
+        private int shift = BITS;
+        private Object[] root = new Object[WIDTH];
+        private Object[] tail = new Object[WIDTH];
+        private boolean built;
+
+        private Builder() {
+        }
+
+        Builder<E> add(E element) {
+            if (built) {
+                throw new IllegalStateException("builder already built");
+            }
+            if (count - tailOffset(count) < WIDTH) {
+                tail[count & MASK] = element;
+                count++;
+                return this;
+            }
+            final var full = tail;
+            tail = new Object[WIDTH];
+            tail[0] = element;
+            if ((count >>> BITS) > (1 << shift)) {
+                final var newRoot = new Object[WIDTH];
+                newRoot[0] = root;
+                newRoot[1] = newPath(shift, full);
+                root = newRoot;
+                shift += BITS;
+            } else {
+                pushTail(shift, root, full);
+            }
+            count++;
+            return this;
+        }
+
+        PersistentVector<E> build() {
+            if (built) {
+                throw new IllegalStateException("builder already built");
+            }
+            built = true;
+            if (count == 0) {
+                return empty();
+            }
+            final var tailOffset = tailOffset(count);
+            return new PersistentVector<>(0, count, shift, root, Arrays.copyOf(tail, count - tailOffset));
+        }
+
+        private void pushTail(int level, Object[] parent, Object[] full) {
+            final var i = ((count - 1) >>> level) & MASK;
+            if (level == BITS) {
+                parent[i] = full;
+                return;
+            }
+            final var child = (Object[]) parent[i];
+            if (child != null) {
+                pushTail(level - BITS, child, full);
+            } else {
+                parent[i] = newPath(level - BITS, full);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.lipinskipawel.mlang.evaluator.objects;
+
+import java.util.Arrays;
+
+import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.CLOSURE_OBJ;
+import static java.util.Objects.requireNonNull;
+
+public final class RegisterClosure extends MonkeyObject {
+    public final RegisterFunction fn;
+    private final MonkeyObject[] freeVariables; // owned by the closure, callers pass a new array
+
+    public RegisterClosure(RegisterFunction fn, MonkeyObject[] freeVariables) {
+        this.fn = requireNonNull(fn);
+        this.freeVariables = requireNonNull(freeVariables);
+    }
+
+    public MonkeyObject freeVariable(int index) {
+        return freeVariables[index];
+    }
+
+    @Override
+    public ObjectType type() {
+        return CLOSURE_OBJ;
+    }
+
+    @Override
+    public String inspect() {
+        return "Closure{" + "fn=" + fn + ", freeVariables=" + Arrays.toString(freeVariables) + '}';
+    }
+}
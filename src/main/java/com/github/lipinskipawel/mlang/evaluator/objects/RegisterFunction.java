@@ -0,0 +1,58 @@
+package com.github.lipinskipawel.mlang.evaluator.objects;
+
+import java.util.Arrays;
+
+import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.COMPILED_FUNCTION_OBJ;
+
+public final class RegisterFunction extends MonkeyObject {
+    private final int[] code;
+    private final int numberOfRegisters;
+    private final int numberOfParameters;
+    private final int numberOfFreeVariables;
+
+    private RegisterFunction(int[] code, int numberOfRegisters, int numberOfParameters, int numberOfFreeVariables) {
+        this.code = code;
+        this.numberOfRegisters = numberOfRegisters;
+        this.numberOfParameters = numberOfParameters;
+        this.numberOfFreeVariables = numberOfFreeVariables;
+    }
+
+    public static RegisterFunction registerFunction(int[] code, int numberOfRegisters) {
+        return new RegisterFunction(code, numberOfRegisters, 0, 0);
+    }
+
+    public static RegisterFunction registerFunction(
+            int[] code,
+            int numberOfRegisters,
+            int numberOfParameters,
+            int numberOfFreeVariables
+    ) {
+        return new RegisterFunction(code, numberOfRegisters, numberOfParameters, numberOfFreeVariables);
+    }
+
+    public int[] code() {
+        return code;
+    }
+
+    public int numberOfRegisters() {
+        return numberOfRegisters;
+    }
+
+    public int numberOfParameters() {
+        return numberOfParameters;
+    }
+
+    public int numberOfFreeVariables() {
+        return numberOfFreeVariables;
+    }
+
+    @Override
+    public ObjectType type() {
+        return COMPILED_FUNCTION_OBJ;
+    }
+
+    @Override
+    public String inspect() {
+        return "RegisterFunction[%s]".formatted(Arrays.toString(code));
+    }
+}
@@ -26,21 +26,25 @@ import static com.github.lipinskipawel.mlang.lexer.token.TokenType.RPAREN;
 import static com.github.lipinskipawel.mlang.lexer.token.TokenType.SEMICOLON;
 import static com.github.lipinskipawel.mlang.lexer.token.TokenType.SLASH;
 import static com.github.lipinskipawel.mlang.lexer.token.TokenType.STRING;
+import static com.github.lipinskipawel.mlang.object.StringTable.intern;
 import static java.lang.Character.isDigit;
 import static java.lang.Character.isLetter;
 import static java.lang.String.valueOf;
 
 public final class Lexer {
+    private static final int NAMES = 128;
     private final String input;
     private int position; // current position in input (points to current char)
     private int readPosition; // current reading position in input (after current char)
     private char character; // current char under examination
+    private final String[] names; // interned identifiers and strings read last, by the hash of their characters
 
     private Lexer(String input) {
         this.input = input;
         position = 0;
         readPosition = 0;
         character = 0;
+        names = new String[NAMES];
     }
 
     public static Lexer lexer(String input) {
@@ -122,7 +126,7 @@ public final class Lexer {
         while (isLetter(character)) {
             readChar();
         }
-        return input.substring(pos, position);
+        return name(pos, position);
     }
 
     String readNumber() {
@@ -138,11 +142,27 @@ public final class Lexer {
         do {
             readChar();
         } while (character != '"' && character != 0);
-        final var result = input.substring(pos, position);
+        final var result = name(pos, position);
         readChar();
         return result;
     }
 
+    // repeated names are matched in the input, without a substring and a lookup in the intern table
+    private String name(int start, int end) {
+        var hash = 0;
+        for (var i = start; i < end; i++) {
+            hash = 31 * hash + input.charAt(i);
+        }
+        final var slot = (hash ^ (hash >>> 16)) & (NAMES - 1);
+        final var cached = names[slot];
+        if (cached != null && cached.length() == end - start && input.regionMatches(start, cached, 0, end - start)) {
+            return cached;
+        }
+        final var name = intern(input.substring(start, end));
+        names[slot] = name;
+        return name;
+    }
+
     char peekChar() {
         if (readPosition >= input.length()) {
             return 0;
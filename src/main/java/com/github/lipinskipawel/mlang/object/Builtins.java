@@ -1,16 +1,19 @@
 package com.github.lipinskipawel.mlang.object;
 
+import com.github.lipinskipawel.mlang.evaluator.objects.Arguments;
+import com.github.lipinskipawel.mlang.evaluator.objects.Hashable;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyArray;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyBuiltin;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyError;
-import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyHash;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
 
-import java.util.ArrayList;
 import java.util.List;
 
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.ARRAY_OBJ;
+import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.HASH_OBJ;
 
 public final class Builtins {
     private static final List<Builtin> builtins = initBuiltins();
@@ -26,15 +29,15 @@ public final class Builtins {
         return List.of(
                 new Builtin("len", new MonkeyBuiltin() {
                     @Override
-                    public MonkeyObject builtin(List<MonkeyObject> objects) {
+                    public MonkeyObject builtin(Arguments objects) {
                         if (objects.size() != 1) {
                             return newError("wrong number of arguments. got=%d, want=1", objects.size());
                         }
                         return switch (objects.get(0).type()) {
-                            case STRING_OBJ -> new MonkeyInteger(((MonkeyString) objects.get(0)).value().length());
+                            case STRING_OBJ -> monkeyInteger(((MonkeyString) objects.get(0)).length());
                             case ARRAY_OBJ -> {
                                 final var array = (MonkeyArray) objects.get(0);
-                                yield new MonkeyInteger(array.elements().size());
+                                yield monkeyInteger(array.size());
                             }
                             default -> newError("argument to 'len' not supported, got %s", objects.get(0).type());
                         };
@@ -42,16 +45,16 @@ public final class Builtins {
                 }),
                 new Builtin("puts", new MonkeyBuiltin() {
                     @Override
-                    public MonkeyObject builtin(List<MonkeyObject> objects) {
-                        objects.stream()
-                                .map(MonkeyObject::inspect)
-                                .forEach(System.out::println);
+                    public MonkeyObject builtin(Arguments objects) {
+                        for (var i = 0; i < objects.size(); i++) {
+                            System.out.println(objects.get(i).inspect());
+                        }
                         return null;
                     }
                 }),
                 new Builtin("first", new MonkeyBuiltin() {
                     @Override
-                    public MonkeyObject builtin(List<MonkeyObject> objects) {
+                    public MonkeyObject builtin(Arguments objects) {
                         if (objects.size() != 1) {
                             return newError("wrong number of arguments. got=%d, want=1", objects.size());
                         }
@@ -59,15 +62,15 @@ public final class Builtins {
                             return newError("argument to 'first' must be ARRAY, got %s", objects.get(0).type());
                         }
                         final var array = (MonkeyArray) objects.get(0);
-                        if (!array.elements().isEmpty()) {
-                            return array.elements().get(0);
+                        if (array.size() > 0) {
+                            return array.get(0);
                         }
                         return null;
                     }
                 }),
                 new Builtin("last", new MonkeyBuiltin() {
                     @Override
-                    public MonkeyObject builtin(List<MonkeyObject> objects) {
+                    public MonkeyObject builtin(Arguments objects) {
                         if (objects.size() != 1) {
                             return newError("wrong number of arguments. got=%d, want=1", objects.size());
                         }
@@ -75,16 +78,16 @@ public final class Builtins {
                             return newError("argument to 'last' must be ARRAY, got %s", objects.get(0).type());
                         }
                         final var array = (MonkeyArray) objects.get(0);
-                        final var length = array.elements().size();
+                        final var length = array.size();
                         if (length > 0) {
-                            return array.elements().get(length - 1);
+                            return array.get(length - 1);
                         }
                         return null;
                     }
                 }),
                 new Builtin("rest", new MonkeyBuiltin() {
                     @Override
-                    public MonkeyObject builtin(List<MonkeyObject> objects) {
+                    public MonkeyObject builtin(Arguments objects) {
                         if (objects.size() != 1) {
                             return newError("wrong number of arguments. got=%d, want=1", objects.size());
                         }
@@ -92,18 +95,15 @@ public final class Builtins {
                             return newError("argument to 'rest' must be ARRAY, got %s", objects.get(0).type());
                         }
                         final var array = (MonkeyArray) objects.get(0);
-                        final var length = array.elements().size();
-                        if (length > 0) {
-                            final var copy = new ArrayList<>(array.elements());
-                            copy.remove(0);
-                            return new MonkeyArray(copy);
+                        if (array.size() > 0) {
+                            return array.rest();
                         }
                         return null;
                     }
                 }),
                 new Builtin("push", new MonkeyBuiltin() {
                     @Override
-                    public MonkeyObject builtin(List<MonkeyObject> objects) {
+                    public MonkeyObject builtin(Arguments objects) {
                         if (objects.size() != 2) {
                             return newError("wrong number of arguments. got=%d, want=2", objects.size());
                         }
@@ -111,9 +111,23 @@ public final class Builtins {
                             return newError("argument to 'push' must be ARRAY, got %s", objects.get(0).type());
                         }
                         final var array = (MonkeyArray) objects.get(0);
-                        final var copy = new ArrayList<>(array.elements());
-                        copy.add(objects.get(1));
-                        return new MonkeyArray(copy);
+                        return array.push(objects.get(1));
+                    }
+                }),
+                new Builtin("put", new MonkeyBuiltin() {
+                    @Override
+                    public MonkeyObject builtin(Arguments objects) {
+                        if (objects.size() != 3) {
+                            return newError("wrong number of arguments. got=%d, want=3", objects.size());
+                        }
+                        if (objects.get(0).type() != HASH_OBJ) {
+                            return newError("argument to 'put' must be HASH, got %s", objects.get(0).type());
+                        }
+                        if (!(objects.get(1) instanceof Hashable)) {
+                            return newError("unusable as hash key: %s", objects.get(1).type());
+                        }
+                        final var hash = (MonkeyHash) objects.get(0);
+                        return hash.put(objects.get(1), objects.get(2));
                     }
                 })
         );
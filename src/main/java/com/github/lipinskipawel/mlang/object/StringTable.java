@@ -0,0 +1,61 @@
+package com.github.lipinskipawel.mlang.object;
+
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// intern table of the identifiers, string literals and string constants of every compile unit. Equal strings share one
+// instance, so repeated names and keys are kept once and equal constants are the same MonkeyString. Java strings are
+// interned with String.intern(), which already holds the string literals of the builtins. The constants are held
+// weakly, a constant no longer used by any bytecode is collected
+public final class StringTable {
+    private static final Map<String, Entry> constants = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<MonkeyString> collected = new ReferenceQueue<>();
+
+    private static final class Entry extends WeakReference<MonkeyString> {
+        private final String value;
+
+        private Entry(String value, MonkeyString constant) {
+            super(constant, collected);
+            this.value = value;
+        }
+    }
+
+    private StringTable() {
+    }
+
+    public static String intern(String value) {
+        return value.intern();
+    }
+
+    // the one MonkeyString of the value among the constants
+    public static MonkeyString constant(String value) {
+        expunge();
+        final var interned = value.intern();
+        while (true) {
+            final var entry = constants.get(interned);
+            final var existing = entry == null ? null : entry.get();
+            if (existing != null) {
+                return existing;
+            }
+            final var constant = new MonkeyString(interned);
+            final var added = new Entry(interned, constant);
+            final var replaced = entry == null
+                    ? constants.putIfAbsent(interned, added) == null
+                    : constants.replace(interned, entry, added);
+            if (replaced) {
+                return constant;
+            }
+        }
+    }
+
+    private static void expunge() {
+        for (var reference = collected.poll(); reference != null; reference = collected.poll()) {
+            final var entry = (Entry) reference;
+            constants.remove(entry.value, entry);
+        }
+    }
+}
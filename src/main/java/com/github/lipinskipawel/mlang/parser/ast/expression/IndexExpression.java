@@ -35,6 +35,10 @@ public final class IndexExpression extends Expression {
         return left;
     }
 
+    public void left(Expression left) {
+        this.left = left;
+    }
+
     public Expression index() {
         return index;
     }
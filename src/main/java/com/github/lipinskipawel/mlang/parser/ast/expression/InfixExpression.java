@@ -4,7 +4,7 @@ import com.github.lipinskipawel.mlang.lexer.token.Token;
 
 public final class InfixExpression extends Expression {
     private final Token token;
-    private final Expression left;
+    private Expression left;
     private final String operator;
     private Expression right;
 
@@ -35,6 +35,10 @@ public final class InfixExpression extends Expression {
         return left;
     }
 
+    public void left(Expression left) {
+        this.left = left;
+    }
+
     public String operator() {
         return operator;
     }
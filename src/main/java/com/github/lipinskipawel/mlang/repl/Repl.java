@@ -14,8 +14,8 @@ import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
 import static com.github.lipinskipawel.mlang.compiler.SymbolTable.symbolTable;
 import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
 import static com.github.lipinskipawel.mlang.object.Builtins.builtins;
-import static com.github.lipinskipawel.mlang.vm.VirtualMachine.GLOBAL_SIZE;
 import static com.github.lipinskipawel.mlang.vm.VirtualMachine.virtualMachine;
+import static com.github.lipinskipawel.mlang.vm.VmConfig.vmConfig;
 
 final class Repl {
     private static final String PROMPT = ">> ";
@@ -38,7 +38,7 @@ final class Repl {
         try (var scanner = new Scanner(inputStream)) {
 
             final List<MonkeyObject> constants = new ArrayList<>();
-            final MonkeyObject[] globals = new MonkeyObject[GLOBAL_SIZE];
+            var globals = new MonkeyObject[vmConfig().globalsCapacity()];
             final var symbolTable = symbolTable();
             final var builtins = builtins();
             for (var i = 0; i < builtins.size(); i++) {
@@ -67,6 +67,7 @@ final class Repl {
 
                 final var vm = virtualMachine(compiler.bytecode(), globals);
                 vm.run();
+                globals = vm.globals();
 
                 final var monkeyObject = vm.lastPoppedStackElement();
                 output.println(monkeyObject.inspect());
@@ -0,0 +1,190 @@
+package com.github.lipinskipawel.mlang.runtime;
+
+import com.github.lipinskipawel.mlang.compiler.Bytecode;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.vm.VirtualMachine;
+import com.github.lipinskipawel.mlang.vm.VmConfig;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.virtualMachine;
+import static com.github.lipinskipawel.mlang.vm.VmConfig.vmConfig;
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+// runs every job in its own virtual machine on a virtual thread. At most maxConcurrency jobs run at once, the others
+// wait for a permit on their virtual thread. Idle virtual machines are kept and reused by later jobs, so the stacks and
+// frames they have grown are not allocated again. Virtual machines with an instruction budget are time-sliced, a job
+// out of fuel hands its permit to the next waiting job and continues when it gets a permit again. The bytecode of a
+// job should be frozen when it is shared between jobs, see Bytecode.freeze()
+public final class ScriptExecutor implements AutoCloseable {
+    private final Semaphore permits;
+    private final AtomicInteger waiting; // jobs waiting for a permit
+    private final ExecutorService threads;
+    private final Queue<VirtualMachine> idle;
+    private VmConfig config;
+    private UnaryOperator<VirtualMachine> configuration;
+    private Duration timeout;
+
+    private ScriptExecutor(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("max concurrency must be positive, got %d".formatted(maxConcurrency));
+        }
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.waiting = new AtomicInteger();
+        this.threads = newVirtualThreadPerTaskExecutor();
+        this.idle = new ConcurrentLinkedQueue<>();
+        this.config = vmConfig();
+        this.configuration = UnaryOperator.identity();
+    }
+
+    public static ScriptExecutor scriptExecutor(int maxConcurrency) {
+        return new ScriptExecutor(maxConcurrency);
+    }
+
+    public ScriptExecutor withVmConfig(VmConfig config) {
+        this.config = config;
+        return this;
+    }
+
+    // applied once to every virtual machine the executor creates, e.g. VirtualMachine::withUnboxedIntegers. The
+    // configuration is the same for every job, a reused virtual machine keeps it but no state of its previous job, see
+    // VirtualMachine.reuse()
+    public ScriptExecutor withVirtualMachine(UnaryOperator<VirtualMachine> configuration) {
+        this.configuration = configuration;
+        return this;
+    }
+
+    // the timeout of jobs submitted without one
+    public ScriptExecutor withTimeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public CompletableFuture<MonkeyObject> submit(Bytecode bytecode, Consumer<MonkeyObject[]> globalsInitializer) {
+        return submit(bytecode, globalsInitializer, timeout);
+    }
+
+    // globalsInitializer fills the globals of the job, an array of VmConfig.globalsCapacity() slots. The timeout starts
+    // when the job starts running, waiting for a permit does not count. A job which times out or whose future is
+    // cancelled is stopped, see VirtualMachine.cancel()
+    public CompletableFuture<MonkeyObject> submit(
+            Bytecode bytecode,
+            Consumer<MonkeyObject[]> globalsInitializer,
+            Duration timeout
+    ) {
+        final var result = new CompletableFuture<MonkeyObject>();
+        final var job = new Job();
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                job.cancel();
+            }
+        });
+        waiting.incrementAndGet();
+        threads.execute(() -> run(bytecode, globalsInitializer, timeout, result, job));
+        return result;
+    }
+
+    private void run(
+            Bytecode bytecode,
+            Consumer<MonkeyObject[]> globalsInitializer,
+            Duration timeout,
+            CompletableFuture<MonkeyObject> result,
+            Job job
+    ) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            result.completeExceptionally(e);
+            return;
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        VirtualMachine vm = null;
+        try {
+            if (result.isDone()) {
+                return;
+            }
+            if (timeout != null) {
+                result.orTimeout(timeout.toNanos(), NANOSECONDS);
+            }
+            final var globals = new MonkeyObject[config.globalsCapacity()];
+            globalsInitializer.accept(globals);
+
+            final var reused = idle.poll();
+            vm = reused != null ? reused.reuse(bytecode, globals) : configuration.apply(virtualMachine(bytecode, globals, config));
+            job.started(vm);
+            if (result.isDone()) {
+                job.cancel();
+            }
+
+            vm.run();
+            while (vm.isSuspended()) {
+                if (waiting.get() > 0) {
+                    handOver();
+                }
+                vm.resume();
+            }
+            result.complete(vm.lastPoppedStackElement());
+        } catch (RuntimeException | StackOverflowError e) {
+            result.completeExceptionally(e);
+        } catch (Throwable e) {
+            // e.g. an AssertionError of the globals initializer or an OutOfMemoryError. The job fails, the virtual
+            // machine may be left broken so it is not reused
+            result.completeExceptionally(e);
+            vm = null;
+        } finally {
+            job.finished();
+            if (vm != null) {
+                idle.offer(vm);
+            }
+            permits.release();
+        }
+    }
+
+    // out of fuel while other jobs wait. Parking frees the carrier thread also for jobs which have not yet started,
+    // Thread.yield() does not reliably let them run when there are few carrier threads
+    private void handOver() {
+        permits.release();
+        waiting.incrementAndGet();
+        LockSupport.parkNanos(1);
+        permits.acquireUninterruptibly();
+        waiting.decrementAndGet();
+    }
+
+    // waits for submitted jobs to finish
+    @Override
+    public void close() {
+        threads.close();
+    }
+
+    // the virtual machine of a job may be cancelled only while the job runs, afterwards it belongs to the next job
+    private static final class Job {
+        private VirtualMachine vm;
+        private boolean finished;
+
+        synchronized void started(VirtualMachine vm) {
+            this.vm = vm;
+        }
+
+        synchronized void cancel() {
+            if (vm != null && !finished) {
+                vm.cancel();
+            }
+        }
+
+        synchronized void finished() {
+            finished = true;
+        }
+    }
+}
@@ -1,40 +1,34 @@
 package com.github.lipinskipawel.mlang.vm;
 
-import com.github.lipinskipawel.mlang.code.Instructions;
 import com.github.lipinskipawel.mlang.evaluator.objects.Closure;
 
+// frames are preallocated by the virtual machine and reset in place on every call
 final class Frame {
 
     private int instructionPointer; // instruction pointer in this frame
     private int basePointer; // ip before we execute the function call
-    public final Closure closure;
+    Closure closure;
+    int[] code; // pre-decoded instructions of the closure
 
-    private Frame(Closure closure, int instructionPointer, int basePointer) {
-        this.closure = closure;
-        this.instructionPointer = instructionPointer;
-        this.basePointer = basePointer;
+    private Frame() {
     }
 
-    public static Frame frame(Closure fn, int basePointer) {
-        return new Frame(fn, -1, basePointer);
+    static Frame frame() {
+        return new Frame();
     }
 
-    Instructions instructions() {
-        return closure.fn.instructions();
+    Frame reset(Closure closure, int basePointer) {
+        this.closure = closure;
+        this.code = closure.fn.instructions().decoded();
+        this.instructionPointer = -1;
+        this.basePointer = basePointer;
+        return this;
     }
 
     int instructionPointer() {
         return instructionPointer;
     }
 
-    void incrementInstructionPointer() {
-        instructionPointer++;
-    }
-
-    void incrementInstructionPointer(int by) {
-        instructionPointer = instructionPointer + by;
-    }
-
     void setInstructionPointer(int newInstructionPointer) {
         instructionPointer = newInstructionPointer;
     }
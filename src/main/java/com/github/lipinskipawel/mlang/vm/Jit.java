@@ -0,0 +1,55 @@
+package com.github.lipinskipawel.mlang.vm;
+
+import com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import static java.lang.invoke.MethodHandles.lookup;
+
+// counts invocations of functions and turns the hot ones into hidden classes. A function is translated exactly once,
+// by the first virtual machine which counts it at or past its own threshold, the count is shared by every virtual
+// machine running the function. Functions which can not be translated stay in the interpreter. Counting stops once
+// the translation is claimed, so virtual machines sharing a function on different threads do not keep writing to it.
+final class Jit {
+    static final int DEFAULT_THRESHOLD = 1000;
+    private static final MethodHandles.Lookup LOOKUP = lookup();
+    private static final MethodType INVOKE_TYPE = MethodType.fromMethodDescriptorString(
+            JitCompiler.INVOKE_DESCRIPTOR, Jit.class.getClassLoader());
+
+    private final int threshold;
+
+    Jit(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("threshold must be positive, got %d".formatted(threshold));
+        }
+        this.threshold = threshold;
+    }
+
+    // MethodHandle of type (VirtualMachine, Closure, MonkeyObject[])MonkeyObject or null when fn is interpreted
+    MethodHandle compiled(CompilerFunction fn) {
+        final var jitted = fn.jitted();
+        if (jitted != null || fn.isTranslationClaimed()) {
+            return jitted;
+        }
+        if (fn.incrementInvocations() < threshold || !fn.claimTranslation()) {
+            return null;
+        }
+        final var compiled = JitCompiler.compile(fn)
+                .map(Jit::define)
+                .orElse(null);
+        fn.jitted(compiled);
+        return compiled;
+    }
+
+    private static MethodHandle define(byte[] classFile) {
+        try {
+            final var hiddenClass = LOOKUP.defineHiddenClass(classFile, true);
+            return hiddenClass.findStatic(hiddenClass.lookupClass(), "invoke", INVOKE_TYPE);
+        } catch (IllegalAccessException | NoSuchMethodException | LinkageError e) {
+            // bailout, a class the verifier rejects is as good as an unsupported instruction
+            return null;
+        }
+    }
+}
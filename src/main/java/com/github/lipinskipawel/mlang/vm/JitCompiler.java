@@ -0,0 +1,598 @@
+package com.github.lipinskipawel.mlang.vm;
+
+import com.github.lipinskipawel.mlang.code.OpCode;
+import com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.github.lipinskipawel.mlang.code.OpCode.opCode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.fill;
+import static java.util.Arrays.stream;
+
+// translates the instructions of a CompilerFunction into the class file of a class with a single static method
+//     static MonkeyObject invoke(VirtualMachine vm, Closure closure, MonkeyObject[] args)
+// The operand stack of the virtual machine becomes the operand stack of the JVM and Monkey locals become JVM locals.
+// The class file version predates stack map frames, so the verifier infers the frames itself.
+// An empty result is a bailout: the function keeps running in the interpreter.
+final class JitCompiler {
+    static final String CLASS_NAME = "com/github/lipinskipawel/mlang/vm/JittedFunction";
+    static final String INVOKE_DESCRIPTOR = "(Lcom/github/lipinskipawel/mlang/vm/VirtualMachine;Lcom/github/lipinskipawel/mlang/evaluator/objects/Closure;[Lcom/github/lipinskipawel/mlang/evaluator/objects/MonkeyObject;)Lcom/github/lipinskipawel/mlang/evaluator/objects/MonkeyObject;";
+
+    private static final String VM = "com/github/lipinskipawel/mlang/vm/VirtualMachine";
+    private static final String RUNTIME = "com/github/lipinskipawel/mlang/vm/JitRuntime";
+    private static final String CLOSURE = "com/github/lipinskipawel/mlang/evaluator/objects/Closure";
+    private static final String OBJECT = "com/github/lipinskipawel/mlang/evaluator/objects/MonkeyObject";
+    private static final String OBJECT_TYPE = "L" + OBJECT + ";";
+    private static final String OBJECTS_TYPE = "[" + OBJECT_TYPE;
+    private static final String BINARY = "(" + OBJECT_TYPE + OBJECT_TYPE + ")" + OBJECT_TYPE;
+    private static final String PREDICATE = "(" + OBJECT_TYPE + OBJECT_TYPE + ")Z";
+    private static final String UNARY = "(" + OBJECT_TYPE + ")" + OBJECT_TYPE;
+
+    private static final int CLASS_FILE_VERSION = 49;
+    private static final int MAX_CODE_LENGTH = 65535;
+    // slots of the arguments of invoke, Monkey locals start right after them
+    private static final int VM_SLOT = 0;
+    private static final int CLOSURE_SLOT = 1;
+    private static final int ARGS_SLOT = 2;
+    private static final int FIRST_LOCAL_SLOT = 3;
+    // headroom over the depth of the Monkey stack needed to build argument arrays and load constants
+    private static final int EXTRA_STACK = 6;
+
+    private final CompilerFunction fn;
+    private final int[] code;
+    private final ConstantPool pool = new ConstantPool();
+    private final CodeBuffer out = new CodeBuffer();
+    private final int[] jvmPositions;
+    private final List<int[]> jumps = new ArrayList<>(); // {jvm position of the jump, target position in code}
+    private final int scratchSlot;
+    private int maxScratch;
+    private int bodyStart; // first instruction after the prologue, target of self tail calls
+
+    private JitCompiler(CompilerFunction fn) {
+        this.fn = fn;
+        this.code = fn.instructions().decoded();
+        this.jvmPositions = new int[code.length + 1];
+        this.scratchSlot = FIRST_LOCAL_SLOT + fn.numberOfLocals();
+    }
+
+    static Optional<byte[]> compile(CompilerFunction fn) {
+        return new JitCompiler(fn).compile();
+    }
+
+    private Optional<byte[]> compile() {
+        final var maxStack = maxStackDepth();
+        if (maxStack < 0) {
+            return Optional.empty();
+        }
+
+        prologue();
+        bodyStart = out.size();
+        var position = 0;
+        var last = (OpCode) null;
+        while (position < code.length) {
+            final var op = opCode((byte) code[position]);
+            jvmPositions[position] = out.size();
+            if (!translate(op, position)) {
+                return Optional.empty();
+            }
+            last = op;
+            position += width(op);
+        }
+        jvmPositions[code.length] = out.size();
+
+        // the verifier rejects code that can fall off the end of the method
+        if (last != OpCode.OP_RETURN_VALUE && last != OpCode.OP_RETURN && last != OpCode.OP_ADD_RETURN_VALUE) {
+            return Optional.empty();
+        }
+        if (out.size() > MAX_CODE_LENGTH || !patchJumps()) {
+            return Optional.empty();
+        }
+        return Optional.of(classFile(maxStack + EXTRA_STACK, scratchSlot + maxScratch));
+    }
+
+    private void prologue() {
+        for (var i = 0; i < fn.numberOfParameters(); i++) {
+            out.load(ARGS_SLOT);
+            out.pushInt(i, pool);
+            out.u1(AALOAD);
+            out.store(FIRST_LOCAL_SLOT + i);
+        }
+        // locals which are not parameters have to be definitely assigned for the verifier
+        for (var i = fn.numberOfParameters(); i < fn.numberOfLocals(); i++) {
+            out.u1(ACONST_NULL);
+            out.store(FIRST_LOCAL_SLOT + i);
+        }
+    }
+
+    private boolean translate(OpCode op, int position) {
+        final var operand = position + 1 < code.length ? code[position + 1] : 0;
+        switch (op) {
+            case OP_CONSTANT -> loadConstant(operand);
+            case OP_ADD -> invokeRuntime("add", BINARY);
+            case OP_SUB -> invokeRuntime("sub", BINARY);
+            case OP_MUL -> invokeRuntime("mul", BINARY);
+            case OP_DIV -> invokeRuntime("div", BINARY);
+            case OP_POP -> out.u1(POP);
+            case OP_TRUE -> getStatic("TRUE", "Lcom/github/lipinskipawel/mlang/evaluator/objects/MonkeyBoolean;");
+            case OP_FALSE -> getStatic("FALSE", "Lcom/github/lipinskipawel/mlang/evaluator/objects/MonkeyBoolean;");
+            case OP_NULL -> getStatic("NULL", "Lcom/github/lipinskipawel/mlang/evaluator/objects/MonkeyNull;");
+            case OP_EQUAL -> comparison("equal");
+            case OP_NOT_EQUAL -> comparison("notEqual");
+            case OP_GREATER_THAN -> comparison("greaterThan");
+            case OP_BANG -> invokeRuntime("bang", UNARY);
+            case OP_MINUS -> invokeRuntime("minus", UNARY);
+            case OP_JUMP -> jump(GOTO, operand);
+            case OP_JUMP_NOT_TRUTHY -> {
+                invokeRuntime("isTruthy", "(" + OBJECT_TYPE + ")Z");
+                jump(IFEQ, operand);
+            }
+            case OP_GET_GLOBAL -> {
+                out.load(VM_SLOT);
+                out.u1(GETFIELD);
+                out.u2(pool.fieldRef(VM, "globals", OBJECTS_TYPE));
+                out.pushInt(operand, pool);
+                out.u1(AALOAD);
+            }
+            case OP_GET_LOCAL -> out.load(FIRST_LOCAL_SLOT + operand);
+            case OP_SET_LOCAL -> out.store(FIRST_LOCAL_SLOT + operand);
+            case OP_GET_BUILTIN -> {
+                out.pushInt(operand, pool);
+                invokeRuntime("builtin", "(I)" + OBJECT_TYPE);
+            }
+            case OP_ARRAY -> {
+                newArrayFromStack(operand);
+                invokeRuntime("array", "(" + OBJECTS_TYPE + ")" + OBJECT_TYPE);
+            }
+            case OP_HASH -> {
+                newArrayFromStack(operand);
+                invokeRuntime("hash", "(" + OBJECTS_TYPE + ")" + OBJECT_TYPE);
+            }
+            case OP_INDEX -> invokeRuntime("index", BINARY);
+            case OP_CALL -> call(operand);
+            case OP_TAIL_CALL -> tailCall(operand);
+            case OP_RETURN_VALUE -> out.u1(ARETURN);
+            case OP_RETURN -> {
+                getStatic("NULL", "Lcom/github/lipinskipawel/mlang/evaluator/objects/MonkeyNull;");
+                out.u1(ARETURN);
+            }
+            case OP_CLOSURE -> {
+                newArrayFromStack(code[position + 3]);
+                out.pushInt(operand, pool);
+                out.load(VM_SLOT);
+                invokeRuntime("closure", "(" + OBJECTS_TYPE + "I" + "L" + VM + ";)" + OBJECT_TYPE);
+            }
+            case OP_GET_FREE -> {
+                out.load(CLOSURE_SLOT);
+                out.pushInt(operand, pool);
+                out.u1(INVOKEVIRTUAL);
+                out.u2(pool.methodRef(CLOSURE, "freeVariable", "(I)" + OBJECT_TYPE));
+            }
+            case OP_CURRENT_CLOSURE -> out.load(CLOSURE_SLOT);
+            case OP_ADD_LOCAL_CONSTANT, OP_SUB_LOCAL_CONSTANT -> {
+                out.load(FIRST_LOCAL_SLOT + operand);
+                loadConstant(code[position + 2]);
+                invokeRuntime(op == OpCode.OP_ADD_LOCAL_CONSTANT ? "add" : "sub", BINARY);
+            }
+            case OP_JUMP_NOT_EQUAL -> {
+                invokeRuntime("equal", PREDICATE);
+                jump(IFEQ, operand);
+            }
+            case OP_JUMP_NOT_GREATER_THAN -> {
+                invokeRuntime("greaterThan", PREDICATE);
+                jump(IFEQ, operand);
+            }
+            case OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL -> {
+                out.load(FIRST_LOCAL_SLOT + operand);
+                loadConstant(code[position + 2]);
+                invokeRuntime("equal", PREDICATE);
+                jump(IFEQ, code[position + 4]);
+            }
+            case OP_GET_LOCAL_CALL -> {
+                out.load(FIRST_LOCAL_SLOT + operand);
+                call(code[position + 2]);
+            }
+            case OP_SELF_CALL_SUB_LOCAL_CONSTANT -> {
+                out.load(CLOSURE_SLOT);
+                out.load(FIRST_LOCAL_SLOT + operand);
+                loadConstant(code[position + 2]);
+                invokeRuntime("sub", BINARY);
+                call(1);
+            }
+            case OP_ADD_RETURN_VALUE -> {
+                invokeRuntime("add", BINARY);
+                out.u1(ARETURN);
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void loadConstant(int index) {
+        out.load(VM_SLOT);
+        out.u1(GETFIELD);
+        out.u2(pool.fieldRef(VM, "constants", OBJECTS_TYPE));
+        out.pushInt(index, pool);
+        out.u1(AALOAD);
+    }
+
+    private void comparison(String predicate) {
+        invokeRuntime(predicate, PREDICATE);
+        invokeRuntime("bool", "(Z)" + OBJECT_TYPE);
+    }
+
+    // the stack holds callee, arg1, ..., argN
+    private void call(int numArgs) {
+        newArrayFromStack(numArgs);
+        out.load(VM_SLOT);
+        invokeRuntime("call", "(" + OBJECT_TYPE + OBJECTS_TYPE + "L" + VM + ";)" + OBJECT_TYPE);
+    }
+
+    // the function calling itself jumps back to its start with the arguments as the new parameters,
+    // any other callee is called like with OP_CALL
+    private void tailCall(int numArgs) {
+        if (numArgs != fn.numberOfParameters()) {
+            call(numArgs);
+            return;
+        }
+        final var calleeSlot = scratchSlot;
+        final var argsSlot = scratchSlot + 1;
+        storeToScratch(argsSlot, numArgs);
+        storeToScratch(calleeSlot, 1);
+
+        out.load(calleeSlot);
+        out.load(CLOSURE_SLOT);
+        final var notSelf = out.size();
+        out.u1(IF_ACMPNE);
+        out.u2(0);
+        for (var i = 0; i < numArgs; i++) {
+            out.load(argsSlot + i);
+            out.store(FIRST_LOCAL_SLOT + i);
+        }
+        out.load(VM_SLOT);
+        out.load(CLOSURE_SLOT);
+        invokeRuntime("selfCall", "(L" + VM + ";L" + CLOSURE + ";)V");
+        out.u1(GOTO);
+        out.u2(bodyStart - (out.size() - 1));
+
+        out.patchU2(notSelf + 1, out.size() - notSelf);
+        out.load(calleeSlot);
+        arrayFromScratch(argsSlot, numArgs);
+        out.load(VM_SLOT);
+        invokeRuntime("call", "(" + OBJECT_TYPE + OBJECTS_TYPE + "L" + VM + ";)" + OBJECT_TYPE);
+    }
+
+    // moves the top length values of the stack into a new array, keeping their order
+    private void newArrayFromStack(int length) {
+        storeToScratch(scratchSlot, length);
+        arrayFromScratch(scratchSlot, length);
+    }
+
+    private void storeToScratch(int firstSlot, int length) {
+        maxScratch = Math.max(maxScratch, firstSlot + length - scratchSlot);
+        for (var i = length - 1; i >= 0; i--) {
+            out.store(firstSlot + i);
+        }
+    }
+
+    private void arrayFromScratch(int firstSlot, int length) {
+        out.pushInt(length, pool);
+        out.u1(ANEWARRAY);
+        out.u2(pool.classRef(OBJECT));
+        for (var i = 0; i < length; i++) {
+            out.u1(DUP);
+            out.pushInt(i, pool);
+            out.load(firstSlot + i);
+            out.u1(AASTORE);
+        }
+    }
+
+    private void invokeRuntime(String name, String descriptor) {
+        out.u1(INVOKESTATIC);
+        out.u2(pool.methodRef(RUNTIME, name, descriptor));
+    }
+
+    private void getStatic(String name, String descriptor) {
+        out.u1(GETSTATIC);
+        out.u2(pool.fieldRef(VM, name, descriptor));
+    }
+
+    private void jump(int opcode, int target) {
+        jumps.add(new int[]{out.size(), target});
+        out.u1(opcode);
+        out.u2(0);
+    }
+
+    private boolean patchJumps() {
+        for (var jump : jumps) {
+            final var offset = jvmPositions[jump[1]] - jump[0];
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                return false;
+            }
+            out.patchU2(jump[0] + 1, offset);
+        }
+        return true;
+    }
+
+    // depth of the Monkey stack, jumps only go forward so a single pass is enough. -1 for unknown instructions
+    private int maxStackDepth() {
+        final var depthAtTarget = new int[code.length + 1];
+        fill(depthAtTarget, -1);
+
+        var depth = 0;
+        var max = 0;
+        var reachable = true;
+        var position = 0;
+        while (position < code.length) {
+            final var op = opCode((byte) code[position]);
+            if (op == null) {
+                return -1;
+            }
+            if (!reachable) {
+                depth = Math.max(depthAtTarget[position], 0);
+                reachable = true;
+            }
+
+            final var operand = op.definition().operandWidths().length > 0 ? code[position + 1] : 0;
+            depth += switch (op) {
+                case OP_CONSTANT, OP_TRUE, OP_FALSE, OP_NULL, OP_GET_GLOBAL, OP_GET_LOCAL, OP_GET_BUILTIN,
+                     OP_GET_FREE, OP_CURRENT_CLOSURE, OP_ADD_LOCAL_CONSTANT, OP_SUB_LOCAL_CONSTANT -> 1;
+                case OP_ADD, OP_SUB, OP_MUL, OP_DIV, OP_POP, OP_EQUAL, OP_NOT_EQUAL, OP_GREATER_THAN,
+                     OP_JUMP_NOT_TRUTHY, OP_SET_GLOBAL, OP_SET_LOCAL, OP_INDEX, OP_RETURN_VALUE -> -1;
+                case OP_JUMP_NOT_EQUAL, OP_JUMP_NOT_GREATER_THAN, OP_ADD_RETURN_VALUE -> -2;
+                case OP_ARRAY, OP_HASH -> 1 - operand;
+                case OP_CALL, OP_TAIL_CALL -> -operand;
+                case OP_GET_LOCAL_CALL -> 1 - code[position + 2];
+                case OP_SELF_CALL_SUB_LOCAL_CONSTANT -> 1;
+                case OP_CLOSURE -> 1 - code[position + 3];
+                default -> 0;
+            };
+            // the local of OP_GET_LOCAL_CALL is pushed on top of the arguments before the call pops them, the same as
+            // the closure and the difference of OP_SELF_CALL_SUB_LOCAL_CONSTANT
+            max = Math.max(max, switch (op) {
+                case OP_GET_LOCAL_CALL -> depth + code[position + 2];
+                case OP_SELF_CALL_SUB_LOCAL_CONSTANT -> depth + 1;
+                default -> depth;
+            });
+
+            final var jumpOperand = op.jumpOperandIndex();
+            if (jumpOperand >= 0) {
+                final var target = code[operandOffset(op, position, jumpOperand)];
+                depthAtTarget[target] = Math.max(depthAtTarget[target], depth);
+            }
+            if (op == OpCode.OP_JUMP || op == OpCode.OP_RETURN || op == OpCode.OP_RETURN_VALUE
+                    || op == OpCode.OP_ADD_RETURN_VALUE) {
+                reachable = false;
+            }
+            position += width(op);
+        }
+        return max;
+    }
+
+    private static int width(OpCode op) {
+        return 1 + stream(op.definition().operandWidths()).sum();
+    }
+
+    // decoded operands sit at the byte offsets of the encoded instruction
+    private static int operandOffset(OpCode op, int position, int index) {
+        return position + 1 + stream(op.definition().operandWidths()).limit(index).sum();
+    }
+
+    private byte[] classFile(int maxStack, int maxLocals) {
+        final var thisClass = pool.classRef(CLASS_NAME);
+        final var superClass = pool.classRef("java/lang/Object");
+        final var methodName = pool.utf8("invoke");
+        final var methodDescriptor = pool.utf8(INVOKE_DESCRIPTOR);
+        final var codeAttribute = pool.utf8("Code");
+
+        final var file = new CodeBuffer();
+        file.u4(0xCAFEBABE);
+        file.u2(0);
+        file.u2(CLASS_FILE_VERSION);
+        pool.writeTo(file);
+        file.u2(ACC_FINAL | ACC_SUPER);
+        file.u2(thisClass);
+        file.u2(superClass);
+        file.u2(0); // interfaces
+        file.u2(0); // fields
+        file.u2(1); // methods
+        file.u2(ACC_STATIC);
+        file.u2(methodName);
+        file.u2(methodDescriptor);
+        file.u2(1); // method attributes
+        file.u2(codeAttribute);
+        file.u4(12 + out.size());
+        file.u2(maxStack);
+        file.u2(maxLocals);
+        file.u4(out.size());
+        file.bytes(out.toByteArray());
+        file.u2(0); // exception table
+        file.u2(0); // code attributes
+        file.u2(0); // class attributes
+        return file.toByteArray();
+    }
+
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ACONST_NULL = 0x01;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int ALOAD = 0x19;
+    private static final int AALOAD = 0x32;
+    private static final int ASTORE = 0x3a;
+    private static final int AASTORE = 0x53;
+    private static final int POP = 0x57;
+    private static final int DUP = 0x59;
+    private static final int IFEQ = 0x99;
+    private static final int IF_ACMPNE = 0xa6;
+    private static final int GOTO = 0xa7;
+    private static final int ARETURN = 0xb0;
+    private static final int GETSTATIC = 0xb2;
+    private static final int GETFIELD = 0xb4;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int ANEWARRAY = 0xbd;
+    private static final int WIDE = 0xc4;
+
+    private static final class CodeBuffer {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void u1(int value) {
+            if (size == bytes.length) {
+                bytes = copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        void bytes(byte[] value) {
+            for (var b : value) {
+                u1(b);
+            }
+        }
+
+        void load(int slot) {
+            localInstruction(ALOAD, slot);
+        }
+
+        void store(int slot) {
+            localInstruction(ASTORE, slot);
+        }
+
+        private void localInstruction(int opcode, int slot) {
+            if (slot > 255) {
+                u1(WIDE);
+                u1(opcode);
+                u2(slot);
+                return;
+            }
+            u1(opcode);
+            u1(slot);
+        }
+
+        void pushInt(int value, ConstantPool pool) {
+            if (value >= 0 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                u1(LDC_W);
+                u2(pool.integer(value));
+            }
+        }
+
+        void patchU2(int position, int value) {
+            bytes[position] = (byte) (value >>> 8);
+            bytes[position + 1] = (byte) value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toByteArray() {
+            return copyOf(bytes, size);
+        }
+    }
+
+    private static final class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int INTEGER = 3;
+        private static final int CLASS = 7;
+        private static final int FIELD_REF = 9;
+        private static final int METHOD_REF = 10;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final CodeBuffer entries = new CodeBuffer();
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            return entry("utf8 " + value, () -> {
+                entries.u1(UTF8);
+                final var encoded = value.getBytes(UTF_8);
+                entries.u2(encoded.length);
+                entries.bytes(encoded);
+            });
+        }
+
+        int integer(int value) {
+            return entry("int " + value, () -> {
+                entries.u1(INTEGER);
+                entries.u4(value);
+            });
+        }
+
+        int classRef(String name) {
+            final var nameIndex = utf8(name);
+            return entry("class " + name, () -> {
+                entries.u1(CLASS);
+                entries.u2(nameIndex);
+            });
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return memberRef(FIELD_REF, owner, name, descriptor);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return memberRef(METHOD_REF, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) {
+            final var ownerIndex = classRef(owner);
+            final var nameIndex = utf8(name);
+            final var descriptorIndex = utf8(descriptor);
+            final var nameAndType = entry("nat " + name + " " + descriptor, () -> {
+                entries.u1(NAME_AND_TYPE);
+                entries.u2(nameIndex);
+                entries.u2(descriptorIndex);
+            });
+            return entry("ref " + tag + " " + owner + "." + name + descriptor, () -> {
+                entries.u1(tag);
+                entries.u2(ownerIndex);
+                entries.u2(nameAndType);
+            });
+        }
+
+        private int entry(String key, Runnable write) {
+            final var existing = indexes.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            write.run();
+            indexes.put(key, count);
+            return count++;
+        }
+
+        void writeTo(CodeBuffer file) {
+            file.u2(count);
+            file.bytes(entries.toByteArray());
+        }
+    }
+}
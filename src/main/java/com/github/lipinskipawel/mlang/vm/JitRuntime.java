@@ -0,0 +1,125 @@
+package com.github.lipinskipawel.mlang.vm;
+
+import com.github.lipinskipawel.mlang.evaluator.objects.Closure;
+import com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyArray;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyHash;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_ADD;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_DIV;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_EQUAL;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_GREATER_THAN;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_MUL;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_NOT_EQUAL;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_SUB;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
+import static com.github.lipinskipawel.mlang.object.Builtins.builtins;
+
+// static entry points called by the classes generated in JitCompiler. Every method mirrors one instruction of the
+// virtual machine. Integer arithmetic is checked first so HotSpot can inline the common case into the generated code.
+final class JitRuntime {
+
+    private JitRuntime() {
+    }
+
+    static MonkeyObject add(MonkeyObject left, MonkeyObject right) {
+        if (left instanceof MonkeyInteger l && right instanceof MonkeyInteger r) {
+            return monkeyInteger(l.value() + r.value());
+        }
+        return VirtualMachine.binaryOperation(OP_ADD, left, right);
+    }
+
+    static MonkeyObject sub(MonkeyObject left, MonkeyObject right) {
+        if (left instanceof MonkeyInteger l && right instanceof MonkeyInteger r) {
+            return monkeyInteger(l.value() - r.value());
+        }
+        return VirtualMachine.binaryOperation(OP_SUB, left, right);
+    }
+
+    static MonkeyObject mul(MonkeyObject left, MonkeyObject right) {
+        if (left instanceof MonkeyInteger l && right instanceof MonkeyInteger r) {
+            return monkeyInteger(l.value() * r.value());
+        }
+        return VirtualMachine.binaryOperation(OP_MUL, left, right);
+    }
+
+    static MonkeyObject div(MonkeyObject left, MonkeyObject right) {
+        return VirtualMachine.binaryOperation(OP_DIV, left, right);
+    }
+
+    static boolean equal(MonkeyObject left, MonkeyObject right) {
+        if (left instanceof MonkeyInteger l && right instanceof MonkeyInteger r) {
+            return l.value() == r.value();
+        }
+        return VirtualMachine.compare(OP_EQUAL, left, right);
+    }
+
+    static boolean notEqual(MonkeyObject left, MonkeyObject right) {
+        return VirtualMachine.compare(OP_NOT_EQUAL, left, right);
+    }
+
+    static boolean greaterThan(MonkeyObject left, MonkeyObject right) {
+        if (left instanceof MonkeyInteger l && right instanceof MonkeyInteger r) {
+            return l.value() > r.value();
+        }
+        return VirtualMachine.compare(OP_GREATER_THAN, left, right);
+    }
+
+    static MonkeyObject bool(boolean value) {
+        return VirtualMachine.nativeBoolToBooleanObject(value);
+    }
+
+    static boolean isTruthy(MonkeyObject object) {
+        return VirtualMachine.isTruthy(object);
+    }
+
+    static MonkeyObject bang(MonkeyObject operand) {
+        return VirtualMachine.bang(operand);
+    }
+
+    static MonkeyObject minus(MonkeyObject operand) {
+        return VirtualMachine.minus(operand);
+    }
+
+    static MonkeyObject index(MonkeyObject left, MonkeyObject index) {
+        return VirtualMachine.index(left, index);
+    }
+
+    static MonkeyObject array(MonkeyObject[] elements) {
+        final var array = MonkeyArray.builder();
+        for (var element : elements) {
+            array.add(element);
+        }
+        return array.build();
+    }
+
+    static MonkeyObject hash(MonkeyObject[] entries) {
+        final var hash = MonkeyHash.builder();
+        for (var i = 0; i < entries.length; i = i + 2) {
+            hash.put(entries[i], entries[i + 1]);
+        }
+        return hash.build();
+    }
+
+    static MonkeyObject builtin(int index) {
+        return builtins().get(index).builtin();
+    }
+
+    static MonkeyObject closure(MonkeyObject[] free, int constIndex, VirtualMachine vm) {
+        final var constant = vm.constants[constIndex];
+        if (constant instanceof CompilerFunction function) {
+            return new Closure(function, free);
+        }
+        throw new RuntimeException("not a function: %s".formatted(constant.getClass()));
+    }
+
+    static MonkeyObject call(MonkeyObject callee, MonkeyObject[] args, VirtualMachine vm) {
+        return vm.callFromJit(callee, args);
+    }
+
+    static void selfCall(VirtualMachine vm, Closure closure) {
+        vm.jittedSelfCall(closure);
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.lipinskipawel.mlang.vm;
+
+import com.github.lipinskipawel.mlang.code.OpCode;
+import com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Comparator.comparingLong;
+
+// execution counts and nanoseconds of a virtual machine run with the profiler, per opcode, per function and per
+// instruction of a function. Offsets are the ones of Instructions.toString()
+public final class Profile {
+    private static final int OPCODES = 256;
+    private final long[] opcodeCounts = new long[OPCODES];
+    private final long[] opcodeNanos = new long[OPCODES];
+    private final Map<CompilerFunction, FunctionProfile> functions = new LinkedHashMap<>();
+
+    public record OpcodeProfile(String opcode, long count, long nanos) {
+    }
+
+    public static final class FunctionProfile {
+        private final CompilerFunction function;
+        private final String name;
+        private final long[] counts;
+        private final long[] nanos;
+
+        private FunctionProfile(CompilerFunction function, String name) {
+            this.function = function;
+            this.name = name;
+            this.counts = new long[function.instructions().length()];
+            this.nanos = new long[function.instructions().length()];
+        }
+
+        public CompilerFunction function() {
+            return function;
+        }
+
+        // main or the index of the function in the constants
+        public String name() {
+            return name;
+        }
+
+        public long count(int offset) {
+            return counts[offset];
+        }
+
+        public long nanos(int offset) {
+            return nanos[offset];
+        }
+
+        public long totalCount() {
+            var total = 0L;
+            for (var count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        public long totalNanos() {
+            var total = 0L;
+            for (var nano : nanos) {
+                total += nano;
+            }
+            return total;
+        }
+
+        // the disassembly of the function, every instruction prefixed with its count and nanoseconds
+        public String annotatedInstructions() {
+            final var string = new StringBuilder();
+            for (var line : function.instructions().toString().lines().toList()) {
+                final var offset = Integer.parseInt(line.substring(0, line.indexOf(' ')));
+                string.append("%12d %14d  %s\n".formatted(counts[offset], nanos[offset], line));
+            }
+            return string.toString();
+        }
+    }
+
+    Profile() {
+    }
+
+    FunctionProfile function(CompilerFunction function, String name) {
+        return functions.computeIfAbsent(function, it -> new FunctionProfile(it, name));
+    }
+
+    void record(FunctionProfile function, int offset, int opcode, long nanos) {
+        function.counts[offset]++;
+        function.nanos[offset] += nanos;
+        opcodeCounts[opcode]++;
+        opcodeNanos[opcode] += nanos;
+    }
+
+    // executed opcodes, the slowest first
+    public List<OpcodeProfile> opcodes() {
+        final var opcodes = new ArrayList<OpcodeProfile>();
+        for (var opcode = 0; opcode < OPCODES; opcode++) {
+            if (opcodeCounts[opcode] > 0) {
+                final var name = OpCode.definition((byte) opcode).name();
+                opcodes.add(new OpcodeProfile(name, opcodeCounts[opcode], opcodeNanos[opcode]));
+            }
+        }
+        opcodes.sort(comparingLong(OpcodeProfile::nanos).reversed());
+        return opcodes;
+    }
+
+    // executed functions, the slowest first
+    public List<FunctionProfile> functions() {
+        return functions.values().stream()
+                .sorted(comparingLong(FunctionProfile::totalNanos).reversed())
+                .toList();
+    }
+
+    public String report() {
+        final var report = new StringBuilder();
+        report.append("%-32s %12s %14s\n".formatted("opcode", "count", "ns"));
+        for (var opcode : opcodes()) {
+            report.append("%-32s %12d %14d\n".formatted(opcode.opcode(), opcode.count(), opcode.nanos()));
+        }
+        for (var function : functions()) {
+            report.append("\n%s: count=%d, ns=%d\n".formatted(function.name(), function.totalCount(), function.totalNanos()));
+            report.append("%12s %14s  %s\n".formatted("count", "ns", "instruction"));
+            report.append(function.annotatedInstructions());
+        }
+        return report.toString();
+    }
+}
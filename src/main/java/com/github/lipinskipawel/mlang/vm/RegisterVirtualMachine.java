@@ -0,0 +1,322 @@
+package com.github.lipinskipawel.mlang.vm;
+
+import com.github.lipinskipawel.mlang.compiler.RegisterBytecode;
+import com.github.lipinskipawel.mlang.evaluator.objects.Arguments;
+import com.github.lipinskipawel.mlang.evaluator.objects.Hashable;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyArray;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyBoolean;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyBuiltin;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyHash;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyNull;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
+import com.github.lipinskipawel.mlang.evaluator.objects.RegisterClosure;
+import com.github.lipinskipawel.mlang.evaluator.objects.RegisterFunction;
+
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.INSTRUCTION_WIDTH;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_ADD;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_ARRAY;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_BANG;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_CALL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_CLOSURE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_CURRENT_CLOSURE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_DIV;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_EQUAL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_GET_BUILTIN;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_GET_FREE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_GET_GLOBAL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_GREATER_THAN;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_HASH;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_INDEX;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_JUMP;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_JUMP_NOT_TRUTHY;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_LOAD_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_LOAD_FALSE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_LOAD_NULL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_LOAD_TRUE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_MINUS;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_MOVE;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_MUL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_NOT_EQUAL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_POP;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_RETURN;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_SET_GLOBAL;
+import static com.github.lipinskipawel.mlang.code.RegisterOpCodes.R_SUB;
+import static com.github.lipinskipawel.mlang.evaluator.objects.Arguments.arguments;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
+import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.ARRAY_OBJ;
+import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.HASH_OBJ;
+import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.INTEGER_OBJ;
+import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.STRING_OBJ;
+import static com.github.lipinskipawel.mlang.object.Builtins.builtins;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.FALSE;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.GLOBAL_SIZE;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.NULL;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.TRUE;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.sameString;
+
+// Executes three-address code produced by the RegisterCompiler. Every frame owns a window of the register file
+// starting at its base pointer. The window of a callee starts at the first argument of the call, so arguments are
+// never copied.
+public final class RegisterVirtualMachine {
+    private static final int REGISTER_SIZE = 8192;
+    private static final int MAX_FRAMES = 1024;
+
+    // frames are preallocated and reset in place on every call
+    private static final class RegisterFrame {
+        private RegisterClosure closure;
+        private int basePointer;
+        private int returnRegister; // absolute register of the caller receiving the result
+        private int instructionPointer;
+
+        private RegisterFrame reset(RegisterClosure closure, int basePointer, int returnRegister) {
+            this.closure = closure;
+            this.basePointer = basePointer;
+            this.returnRegister = returnRegister;
+            this.instructionPointer = 0;
+            return this;
+        }
+    }
+
+    private final MonkeyObject[] constants;
+    private final MonkeyObject[] registers;
+    private final MonkeyObject[] globals;
+    private final RegisterFrame[] frames;
+    private final Arguments arguments = arguments(); // reused by every builtin call
+    private int frameIndex;
+    private MonkeyObject lastPopped;
+
+    private RegisterVirtualMachine(RegisterBytecode bytecode, MonkeyObject[] registers, MonkeyObject[] globals) {
+        this.constants = bytecode.constants().toArray(new MonkeyObject[0]);
+        this.registers = registers;
+        this.globals = globals;
+
+        final var mainClosure = new RegisterClosure(bytecode.main(), new MonkeyObject[0]);
+        this.frames = new RegisterFrame[MAX_FRAMES];
+        for (var i = 0; i < MAX_FRAMES; i++) {
+            this.frames[i] = new RegisterFrame();
+        }
+        this.frames[0].reset(mainClosure, 0, 0);
+        this.frameIndex = 1;
+        checkRegisters(0, bytecode.main());
+    }
+
+    public static RegisterVirtualMachine registerVirtualMachine(RegisterBytecode bytecode) {
+        return registerVirtualMachine(bytecode, new MonkeyObject[GLOBAL_SIZE]);
+    }
+
+    public static RegisterVirtualMachine registerVirtualMachine(RegisterBytecode bytecode, MonkeyObject[] globals) {
+        return new RegisterVirtualMachine(bytecode, new MonkeyObject[REGISTER_SIZE], globals);
+    }
+
+    public void run() {
+        var frame = frames[frameIndex - 1];
+        var code = frame.closure.fn.code();
+        var ip = frame.instructionPointer;
+        var base = frame.basePointer;
+
+        while (ip < code.length) {
+            final var a = code[ip + 1];
+            final var b = code[ip + 2];
+            final var c = code[ip + 3];
+
+            switch (code[ip]) {
+                case R_LOAD_CONSTANT -> registers[base + a] = constants[b];
+                case R_LOAD_TRUE -> registers[base + a] = TRUE;
+                case R_LOAD_FALSE -> registers[base + a] = FALSE;
+                case R_LOAD_NULL -> registers[base + a] = NULL;
+                case R_MOVE -> registers[base + a] = registers[base + b];
+                case R_ADD, R_SUB, R_MUL, R_DIV ->
+                        registers[base + a] = binaryOperation(code[ip], registers[base + b], registers[base + c]);
+                case R_EQUAL, R_NOT_EQUAL, R_GREATER_THAN ->
+                        registers[base + a] = compare(code[ip], registers[base + b], registers[base + c]) ? TRUE : FALSE;
+                case R_MINUS -> registers[base + a] = minus(registers[base + b]);
+                case R_BANG -> registers[base + a] = bang(registers[base + b]);
+                case R_JUMP -> {
+                    ip = a;
+                    continue;
+                }
+                case R_JUMP_NOT_TRUTHY -> {
+                    if (!isTruthy(registers[base + a])) {
+                        ip = b;
+                        continue;
+                    }
+                }
+                case R_GET_GLOBAL -> registers[base + a] = globals[b];
+                case R_SET_GLOBAL -> globals[a] = registers[base + b];
+                case R_GET_BUILTIN -> registers[base + a] = builtins().get(b).builtin();
+                case R_GET_FREE -> registers[base + a] = frame.closure.freeVariable(b);
+                case R_CURRENT_CLOSURE -> registers[base + a] = frame.closure;
+                case R_ARRAY -> {
+                    final var array = MonkeyArray.builder();
+                    for (var i = 0; i < c; i++) {
+                        array.add(registers[base + b + i]);
+                    }
+                    registers[base + a] = array.build();
+                }
+                case R_HASH -> {
+                    final var hash = MonkeyHash.builder();
+                    for (var i = 0; i < c; i = i + 2) {
+                        hash.put(registers[base + b + i], registers[base + b + i + 1]);
+                    }
+                    registers[base + a] = hash.build();
+                }
+                case R_INDEX -> registers[base + a] = index(registers[base + b], registers[base + c]);
+                case R_CALL -> {
+                    final var callee = registers[base + b];
+                    switch (callee) {
+                        case RegisterClosure closure -> {
+                            if (c != closure.fn.numberOfParameters()) {
+                                throw new RuntimeException("wrong number of arguments want=%d, got=%d".formatted(closure.fn.numberOfParameters(), c));
+                            }
+                            frame.instructionPointer = ip + INSTRUCTION_WIDTH;
+
+                            final var calleeBase = base + b + 1;
+                            checkRegisters(calleeBase, closure.fn);
+                            if (frameIndex >= MAX_FRAMES) {
+                                throw new RuntimeException("stack overflow");
+                            }
+                            frame = frames[frameIndex++].reset(closure, calleeBase, base + a);
+
+                            code = closure.fn.code();
+                            ip = 0;
+                            base = calleeBase;
+                            continue;
+                        }
+                        case MonkeyBuiltin builtin -> {
+                            final var result = builtin.builtin(arguments.window(registers, base + b + 1, base + b + 1 + c));
+                            registers[base + a] = result != null ? result : NULL;
+                        }
+                        default -> throw new RuntimeException("calling non-function and non-built-in");
+                    }
+                }
+                case R_RETURN -> {
+                    final var returnValue = registers[base + a];
+                    frameIndex--;
+                    if (frameIndex == 0) {
+                        lastPopped = returnValue;
+                        return;
+                    }
+                    registers[frame.returnRegister] = returnValue;
+
+                    frame = frames[frameIndex - 1];
+                    code = frame.closure.fn.code();
+                    ip = frame.instructionPointer;
+                    base = frame.basePointer;
+                    continue;
+                }
+                case R_CLOSURE -> {
+                    final var fn = (RegisterFunction) constants[b];
+                    final var free = new MonkeyObject[fn.numberOfFreeVariables()];
+                    System.arraycopy(registers, base + c, free, 0, free.length);
+                    registers[base + a] = new RegisterClosure(fn, free);
+                }
+                case R_POP -> lastPopped = registers[base + a];
+                default -> throw new RuntimeException("unknown register instruction [%d]".formatted(code[ip]));
+            }
+            ip += INSTRUCTION_WIDTH;
+        }
+        frame.instructionPointer = ip;
+    }
+
+    public MonkeyObject lastPoppedStackElement() {
+        return lastPopped;
+    }
+
+    private void checkRegisters(int base, RegisterFunction fn) {
+        if (base + fn.numberOfRegisters() > registers.length) {
+            throw new RuntimeException("stack overflow");
+        }
+    }
+
+    private MonkeyObject binaryOperation(int op, MonkeyObject left, MonkeyObject right) {
+        final var leftType = left.type();
+        final var rightType = right.type();
+
+        if (leftType == INTEGER_OBJ && rightType == INTEGER_OBJ) {
+            final var leftValue = ((MonkeyInteger) left).value();
+            final var rightValue = ((MonkeyInteger) right).value();
+
+            return monkeyInteger(switch (op) {
+                case R_ADD -> leftValue + rightValue;
+                case R_SUB -> leftValue - rightValue;
+                case R_MUL -> leftValue * rightValue;
+                case R_DIV -> leftValue / rightValue;
+                default -> throw new RuntimeException("unknown integer operation [%s]".formatted(op));
+            });
+        }
+
+        if (leftType == STRING_OBJ && rightType == STRING_OBJ) {
+            if (op != R_ADD) {
+                throw new RuntimeException("unknown string operator [%s]".formatted(op));
+            }
+            return ((MonkeyString) left).concat((MonkeyString) right);
+        }
+
+        throw new RuntimeException("unsupported types for binary operation: %s %s".formatted(leftType, rightType));
+    }
+
+    private boolean compare(int op, MonkeyObject left, MonkeyObject right) {
+        if (left.type() == INTEGER_OBJ && right.type() == INTEGER_OBJ) {
+            final var leftValue = ((MonkeyInteger) left).value();
+            final var rightValue = ((MonkeyInteger) right).value();
+
+            return switch (op) {
+                case R_EQUAL -> rightValue == leftValue;
+                case R_NOT_EQUAL -> rightValue != leftValue;
+                case R_GREATER_THAN -> leftValue > rightValue;
+                default -> throw new RuntimeException("unknown operator [%s]".formatted(op));
+            };
+        }
+
+        return switch (op) {
+            case R_EQUAL -> right == left || sameString(left, right);
+            case R_NOT_EQUAL -> right != left && !sameString(left, right);
+            default ->
+                    throw new RuntimeException("unknown integer operation [%s] (%s %s)".formatted(op, left.type(), right.type()));
+        };
+    }
+
+    private MonkeyObject minus(MonkeyObject operand) {
+        if (operand.type() != INTEGER_OBJ) {
+            throw new RuntimeException("unsupported type for negation: %s".formatted(operand.type()));
+        }
+        return monkeyInteger(-((MonkeyInteger) operand).value());
+    }
+
+    private MonkeyObject bang(MonkeyObject operand) {
+        return switch (operand) {
+            case MonkeyBoolean monkeyBoolean -> monkeyBoolean.value() ? FALSE : TRUE;
+            case MonkeyNull __ -> TRUE;
+            default -> FALSE;
+        };
+    }
+
+    private MonkeyObject index(MonkeyObject left, MonkeyObject index) {
+        if (left.type() == ARRAY_OBJ && index.type() == INTEGER_OBJ) {
+            final var array = (MonkeyArray) left;
+            final var i = ((MonkeyInteger) index).value();
+            if (i < 0 || i > array.size() - 1) {
+                return NULL;
+            }
+            return array.get(i);
+        }
+        if (left.type() == HASH_OBJ) {
+            if (index instanceof Hashable) {
+                final var pair = ((MonkeyHash) left).get(index);
+                return pair == null ? NULL : pair.value();
+            }
+            throw new RuntimeException("unusable as hash key [%s]".formatted(index));
+        }
+        throw new RuntimeException("index operator not supported [%s]".formatted(left.type()));
+    }
+
+    private boolean isTruthy(MonkeyObject object) {
+        return switch (object.type()) {
+            case BOOLEAN_OBJ -> ((MonkeyBoolean) object).value();
+            case NULL_OBJ -> false;
+            default -> true;
+        };
+    }
+}
@@ -1,6 +1,7 @@
 package com.github.lipinskipawel.mlang.vm;
 
 import com.github.lipinskipawel.mlang.compiler.Bytecode;
+import com.github.lipinskipawel.mlang.evaluator.objects.Arguments;
 import com.github.lipinskipawel.mlang.evaluator.objects.Closure;
 import com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction;
 import com.github.lipinskipawel.mlang.evaluator.objects.Hashable;
@@ -12,10 +13,13 @@ import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyNull;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
+import com.github.lipinskipawel.mlang.evaluator.objects.ObjectType;
 
-import java.util.List;
+import java.lang.invoke.MethodHandle;
 
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_ADD;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_ADD_LOCAL_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_ADD_RETURN_VALUE;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_ARRAY;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_BANG;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_CALL;
@@ -23,16 +27,21 @@ import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_CLOSURE;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_CONSTANT;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_CURRENT_CLOSURE;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_DIV;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_DUP;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_EQUAL;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_FALSE;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_GET_BUILTIN;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_GET_FREE;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_GET_GLOBAL;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_GET_LOCAL;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_GET_LOCAL_CALL;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_GREATER_THAN;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_HASH;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_INDEX;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_JUMP;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_JUMP_NOT_EQUAL;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_JUMP_NOT_GREATER_THAN;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_JUMP_NOT_TRUTHY;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_MINUS;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_MUL;
@@ -41,68 +50,205 @@ import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_NULL;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_POP;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_RETURN;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_RETURN_VALUE;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_SELF_CALL_SUB_LOCAL_CONSTANT;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_SET_GLOBAL;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_SET_LOCAL;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_SUB;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_SUB_LOCAL_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_TAIL_CALL;
 import static com.github.lipinskipawel.mlang.code.InstructionOpCodes.OP_TRUE;
+import static com.github.lipinskipawel.mlang.evaluator.objects.Arguments.arguments;
 import static com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction.compilerFunction;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.ARRAY_OBJ;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.HASH_OBJ;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.INTEGER_OBJ;
 import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.STRING_OBJ;
 import static com.github.lipinskipawel.mlang.object.Builtins.builtins;
 import static com.github.lipinskipawel.mlang.vm.Frame.frame;
-import static java.util.Arrays.asList;
+import static com.github.lipinskipawel.mlang.vm.VmConfig.vmConfig;
+import static java.lang.System.nanoTime;
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.copyOfRange;
+import static java.util.Arrays.fill;
 import static java.util.stream.Stream.iterate;
 
+// confined to one thread, it owns its stack, frames and globals. Bytecode is only read, so any number of virtual
+// machines on different threads can run the same frozen Bytecode at the same time, see Bytecode.freeze()
 public final class VirtualMachine {
     public static final int GLOBAL_SIZE = 65536;
     static final MonkeyNull NULL = new MonkeyNull();
-    private static final int STACK_SIZE = 2048;
-    private static final int MAX_FRAMES = 1024;
-    private static final MonkeyBoolean TRUE = new MonkeyBoolean(true);
-    private static final MonkeyBoolean FALSE = new MonkeyBoolean(false);
+    private static final int INITIAL_FRAMES = 16;
+    static final MonkeyBoolean TRUE = new MonkeyBoolean(true);
+    static final MonkeyBoolean FALSE = new MonkeyBoolean(false);
+    // marks a stack slot whose integer lives unboxed in the parallel integers array
+    private static final MonkeyObject UNBOXED = new MonkeyObject() {
+        @Override
+        public ObjectType type() {
+            return INTEGER_OBJ;
+        }
+
+        @Override
+        public String inspect() {
+            return "unboxed integer";
+        }
+    };
+    // unwinds the interpreter when it runs out of fuel. Thrown only when every frame is on the frames array, so the
+    // program resumes from them, see resume()
+    private static final RuntimeException SUSPENSION = new RuntimeException("suspended", null, false, false) {
+    };
+    private static final long UNLIMITED = Long.MAX_VALUE;
+    // the fuel tank is refilled from the budget in portions, cancel() is noticed when the tank runs dry
+    private static final long TANK_SIZE = 1 << 16;
+
+    // decides what a virtual machine which ran out of fuel does. Returning true refuels it and it keeps running, e.g.
+    // after Thread.yield(). Returning false suspends it, run() returns and resume() continues the program
+    @FunctionalInterface
+    public interface YieldHook {
+        boolean keepRunning(VirtualMachine vm);
+    }
 
-    private final List<MonkeyObject> constants;
-    private final MonkeyObject[] stack; // we can define limit on the queue but can't in Stack
+    MonkeyObject[] constants; // read by jitted functions
+    private final VmConfig config;
+    private MonkeyObject[] stack; // grows on demand up to config.maxStackSize()
+    private int[] integers; // values of the UNBOXED slots of the stack
+    private boolean unboxedIntegers;
     private int stackPointer = 0;
-    private final MonkeyObject[] globals;
-    private final Frame[] frames;
+    MonkeyObject[] globals; // read by jitted functions, grows on OP_SET_GLOBAL
+    private Frame[] frames; // grows on demand up to config.maxFrames()
+    private final Arguments arguments = arguments(); // reused by every builtin call
     private int frameIndex;
+    private Jit jit;
+    private long inlineCacheHits;
+    private long inlineCacheMisses;
+    private int jitDepth; // calls of jitted functions live on the JVM stack instead of frames
+    private volatile boolean cancelled; // set by other threads, see cancel()
+    private long budget = UNLIMITED;
+    private long fuel; // consumed by calls, see consumeFuel()
+    private long budgetLeft; // not yet in the fuel tank
+    private YieldHook yieldHook;
+    private Profile profile;
+    private boolean suspendRequested; // the yield hook said suspend but the virtual machine could not yet
+    private boolean suspended;
 
     private VirtualMachine(
             Bytecode bytecode,
-            MonkeyObject[] stack,
-            MonkeyObject[] globals
+            MonkeyObject[] globals,
+            VmConfig config
     ) {
-        this.constants = bytecode.constants();
-        this.stack = stack;
+        this.config = config;
+        this.stack = new MonkeyObject[config.initialStackSize()];
+        this.integers = new int[config.initialStackSize()];
+        this.frames = new Frame[Math.min(INITIAL_FRAMES, config.maxFrames())];
+        fillFrames(0);
+        load(bytecode, globals);
+    }
+
+    private void load(Bytecode bytecode, MonkeyObject[] globals) {
+        this.constants = bytecode.constants().toArray(new MonkeyObject[0]);
         this.globals = globals;
 
         final var mainFn = compilerFunction(bytecode.instructions());
         final var mainClosure = new Closure(mainFn);
-        final var mainFrame = frame(mainClosure, 0);
 
-        this.frames = new Frame[MAX_FRAMES];
-        this.frames[0] = mainFrame;
+        this.frames[0].reset(mainClosure, 0);
         this.frameIndex = 1;
+        this.stackPointer = 0;
+        this.jitDepth = 0;
+        this.cancelled = false;
+        this.suspendRequested = false;
+        this.suspended = false;
+        this.inlineCacheHits = 0;
+        this.inlineCacheMisses = 0;
+        refuel();
+        if (profile != null) {
+            this.profile = new Profile();
+        }
     }
 
     public static VirtualMachine virtualMachine(Bytecode bytecode) {
-        return virtualMachine(bytecode, new MonkeyObject[GLOBAL_SIZE]);
+        return virtualMachine(bytecode, vmConfig());
+    }
+
+    public static VirtualMachine virtualMachine(Bytecode bytecode, VmConfig config) {
+        return virtualMachine(bytecode, new MonkeyObject[config.globalsCapacity()], config);
     }
 
+    // the globals are shared with the caller until the virtual machine has to grow them, see globals()
     public static VirtualMachine virtualMachine(Bytecode bytecode, MonkeyObject[] globals) {
-        return new VirtualMachine(bytecode, new MonkeyObject[STACK_SIZE], globals);
+        return virtualMachine(bytecode, globals, vmConfig());
+    }
+
+    public static VirtualMachine virtualMachine(Bytecode bytecode, MonkeyObject[] globals, VmConfig config) {
+        return new VirtualMachine(bytecode, globals, config);
+    }
+
+    // integers produced by constants and arithmetic stay unboxed on the stack.
+    // They are boxed only when they escape into an array, hash, global, closure or builtin
+    public VirtualMachine withUnboxedIntegers() {
+        this.unboxedIntegers = true;
+        return this;
+    }
+
+    // every call consumes fuel equal to the length of the instructions of the callee. Jumps only go forward, so that
+    // is an upper bound of the instructions the call executes. When the fuel runs out the yield hook decides whether the
+    // virtual machine keeps running or suspends, without a hook it suspends. Jitted functions keep their calls on the
+    // JVM stack, so they run until they return to the interpreter before it can suspend
+    public VirtualMachine withInstructionBudget(long budget) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("instruction budget must be positive, got %d".formatted(budget));
+        }
+        this.budget = budget;
+        return this;
+    }
+
+    public VirtualMachine withYieldHook(YieldHook yieldHook) {
+        this.yieldHook = yieldHook;
+        return this;
+    }
+
+    // counts and times every instruction, see profile()
+    public VirtualMachine withProfiler() {
+        this.profile = new Profile();
+        return this;
+    }
+
+    public Profile profile() {
+        if (profile == null) {
+            throw new IllegalStateException("profiler is not enabled");
+        }
+        return profile;
+    }
+
+    public VirtualMachine withJit() {
+        return withJit(Jit.DEFAULT_THRESHOLD);
+    }
+
+    // functions called threshold times are translated to JVM bytecode
+    public VirtualMachine withJit(int threshold) {
+        this.jit = new Jit(threshold);
+        return this;
     }
 
     private Frame currentFrame() {
         return frames[frameIndex - 1];
     }
 
-    private void pushFrame(Frame frame) {
-        frames[frameIndex] = frame;
+    private Frame pushFrame(Closure closure, int basePointer) {
+        if (frameIndex == frames.length) {
+            final var length = frames.length;
+            frames = copyOf(frames, Math.min(length * 2, config.maxFrames()));
+            fillFrames(length);
+        }
+        final var frame = frames[frameIndex].reset(closure, basePointer);
         frameIndex++;
+        return frame;
+    }
+
+    private void fillFrames(int from) {
+        for (var i = from; i < frames.length; i++) {
+            frames[i] = frame();
+        }
     }
 
     private Frame popFrame() {
@@ -110,151 +256,431 @@ public final class VirtualMachine {
         return frames[frameIndex];
     }
 
-    // fetch-decode-execute cycle
+    // runs another program keeping the stack and the frames this virtual machine has grown so far, together with its
+    // configuration: the budget, the yield hook, the profiler and the JIT. Nothing the previous program left behind is
+    // kept, the fuel, the cancellation, the inline cache counters and the profile start over. Must not be called while
+    // the virtual machine runs
+    public VirtualMachine reuse(Bytecode bytecode, MonkeyObject[] globals) {
+        fill(stack, null);
+        load(bytecode, globals);
+        return this;
+    }
+
+    // runs the program until it finishes or suspends, see isSuspended()
     public void run() {
-        while (currentFrame().instructionPointer() < currentFrame().instructions().length() - 1) {
-            // we are in the hot path
-            currentFrame().incrementInstructionPointer();
+        suspended = false;
+        refuel();
+        try {
+            interpret(0);
+        } catch (RuntimeException e) {
+            if (e != SUSPENSION) {
+                throw e;
+            }
+            suspended = true;
+        }
+    }
+
+    // continues a suspended program with a full budget
+    public void resume() {
+        if (!suspended) {
+            throw new IllegalStateException("virtual machine is not suspended");
+        }
+        run();
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    // stops the running program, which fails with "cancelled" at a call within TANK_SIZE instructions. Can be called
+    // from any thread. Jumps only go forward, so a program which does not call functions always finishes
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // self calls of jitted functions jump back to the start of the function instead of calling it
+    void jittedSelfCall(Closure closure) {
+        consumeFuel(closure.fn.instructions().decoded().length, false);
+    }
+
+    // checked on every call, including calls which reuse the frame and self calls of jitted functions. Resumable is
+    // true when the state of the program is entirely on the frames array and the stack
+    private void consumeFuel(int amount, boolean resumable) {
+        fuel -= amount;
+        if (fuel < 0) {
+            outOfFuel(resumable);
+        }
+    }
 
-            final var instructionPointer = currentFrame().instructionPointer();
-            final var instructions = currentFrame().instructions();
-            // this static `opCode` function probably should be replaced by raw byte
-            final var op = instructions.instructionAt(instructionPointer);
+    private void outOfFuel(boolean resumable) {
+        if (cancelled) {
+            throw new RuntimeException("cancelled");
+        }
+        while (fuel < 0 && budgetLeft > 0) {
+            final var portion = Math.min(budgetLeft, TANK_SIZE);
+            budgetLeft -= portion;
+            fuel += portion;
+        }
+        if (fuel >= 0) {
+            return;
+        }
+        if (!suspendRequested) {
+            if (yieldHook != null && yieldHook.keepRunning(this)) {
+                refuel();
+                return;
+            }
+            suspendRequested = true;
+        }
+        if (resumable && jitDepth == 0) {
+            suspendRequested = false;
+            throw SUSPENSION;
+        }
+    }
+
+    private void refuel() {
+        fuel = Math.min(budget, TANK_SIZE);
+        budgetLeft = budget - fuel;
+    }
 
-            switch (op) {
+    // the profiler has its own loop, so the loop without it does not pay for it
+    private void interpret(int exitFrameIndex) {
+        if (profile == null) {
+            execute(exitFrameIndex, false);
+        } else {
+            executeProfiled(exitFrameIndex);
+        }
+    }
+
+    // executes one instruction at a time and measures it. Calls are measured until the callee's frame is entered,
+    // calls of builtins and jitted functions until they return
+    private void executeProfiled(int exitFrameIndex) {
+        Frame frame = null;
+        Profile.FunctionProfile function = null;
+        while (frameIndex > exitFrameIndex) {
+            if (frame != currentFrame() || function.function() != frame.closure.fn) {
+                frame = currentFrame();
+                function = profile.function(frame.closure.fn, functionName(frame.closure.fn));
+            }
+            final var offset = frame.instructionPointer() + 1;
+            if (offset >= frame.code.length) {
+                return;
+            }
+            // a tail call resets the frame
+            final var opcode = frame.code[offset];
+
+            final var start = nanoTime();
+            execute(exitFrameIndex, true);
+            profile.record(function, offset, opcode, nanoTime() - start);
+        }
+    }
+
+    private String functionName(CompilerFunction fn) {
+        if (fn == frames[0].closure.fn) {
+            return "main";
+        }
+        for (var i = 0; i < constants.length; i++) {
+            if (constants[i] == fn) {
+                return "constant %d".formatted(i);
+            }
+        }
+        return "unknown";
+    }
+
+    // fetch-decode-execute cycle
+    // the state of the current frame is kept in locals and written back to the frame only when we leave it.
+    // Returns when a function returns to exitFrameIndex, which is how jitted functions call interpreted ones.
+    // A step executes a single instruction, it ends also when the instruction enters or leaves a frame
+    private void execute(int exitFrameIndex, boolean step) {
+        var frame = currentFrame();
+        var code = frame.code;
+        var ip = frame.instructionPointer();
+        var basePointer = frame.basePointer();
+        var limit = step ? ip + 1 : code.length - 1;
+
+        while (ip < limit) {
+            // we are in the hot path
+            ip++;
+
+            switch (code[ip]) {
                 case OP_CONSTANT -> {
-                    final var constIndex = instructions.readShort(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer(2);
-                    push(constants.get(constIndex));
+                    final var constant = constants[code[ip + 1]];
+                    if (unboxedIntegers && constant instanceof MonkeyInteger integer) {
+                        pushInteger(integer.value());
+                    } else {
+                        push(constant);
+                    }
+                    ip += 2;
                 }
-                case OP_ADD, OP_SUB, OP_MUL, OP_DIV -> executeBinaryOperation(op);
-                case OP_POP -> pop();
+                case OP_ADD, OP_SUB, OP_MUL, OP_DIV -> executeBinaryOperation(code[ip]);
+                case OP_POP -> stackPointer--;
+                case OP_DUP -> pushSlot(stackPointer - 1);
                 case OP_TRUE -> push(TRUE);
                 case OP_FALSE -> push(FALSE);
-                case OP_EQUAL, OP_NOT_EQUAL, OP_GREATER_THAN -> executeComparison(op);
+                case OP_EQUAL, OP_NOT_EQUAL, OP_GREATER_THAN -> executeComparison(code[ip]);
                 case OP_BANG -> executeBangOperator();
                 case OP_MINUS -> executeMinusOperator();
-                case OP_JUMP -> {
-                    final var pos = instructions.readShort(instructionPointer + 1);
-                    currentFrame().setInstructionPointer(pos - 1);
-                }
+                case OP_JUMP -> ip = code[ip + 1] - 1;
                 case OP_JUMP_NOT_TRUTHY -> {
-                    final var pos = instructions.readShort(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer(2);
-
-                    final var condition = pop();
-                    if (!isTruthy(condition)) {
-                        currentFrame().setInstructionPointer(pos - 1);
+                    stackPointer--;
+                    if (!isTruthy(stack[stackPointer])) {
+                        ip = code[ip + 1] - 1;
+                    } else {
+                        ip += 2;
                     }
                 }
                 case OP_NULL -> push(NULL);
                 case OP_SET_GLOBAL -> {
-                    final var globalIndex = instructions.readShort(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer(2);
-
-                    globals[globalIndex] = pop();
+                    setGlobal(code[ip + 1], pop());
+                    ip += 2;
                 }
                 case OP_GET_GLOBAL -> {
-                    final var globalIndex = instructions.readShort(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer(2);
-
-                    push(globals[globalIndex]);
+                    push(getGlobal(code[ip + 1]));
+                    ip += 2;
                 }
                 case OP_SET_LOCAL -> {
-                    final var localIndex = instructions.instructionAt(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer();
-
-                    final var frame = currentFrame();
-
-                    stack[frame.basePointer() + localIndex] = pop();
+                    stackPointer--;
+                    copySlot(stackPointer, basePointer + code[ip + 1]);
+                    ip += 1;
                 }
                 case OP_GET_LOCAL -> {
-                    final var localIndex = instructions.instructionAt(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer();
-
-                    final var frame = currentFrame();
-
-                    push(stack[frame.basePointer() + localIndex]);
+                    pushSlot(basePointer + code[ip + 1]);
+                    ip += 1;
                 }
                 case OP_GET_BUILTIN -> {
-                    final var builtinIndex = instructions.instructionAt(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer();
-
-                    final var definition = builtins().get(builtinIndex);
+                    final var definition = builtins().get(code[ip + 1]);
+                    ip += 1;
 
                     push(definition.builtin());
                 }
                 case OP_ARRAY -> {
-                    final var arrayLength = instructions.readShort(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer(2);
+                    final var arrayLength = code[ip + 1];
+                    ip += 2;
 
-                    push(new MonkeyArray(iterate(1, i -> i <= arrayLength, i -> i + 1)
-                            .map(it -> pop())
-                            .toList()
-                            .reversed()));
+                    final var array = MonkeyArray.builder();
+                    for (var i = stackPointer - arrayLength; i < stackPointer; i++) {
+                        array.add(object(i));
+                    }
+                    stackPointer -= arrayLength;
+                    push(array.build());
                 }
                 case OP_HASH -> {
-                    final var hashLength = instructions.readShort(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer(2);
-
-                    final var entries = iterate(1, i -> i <= hashLength, i -> i + 1)
-                            .map(it -> pop())
-                            .toList()
-                            .reversed();
-                    final var hash = new MonkeyHash();
-                    for (var i = 0; i < hashLength; i = i + 2) {
-                        hash.put(entries.get(i), entries.get(i + 1));
-                    }
+                    final var hashLength = code[ip + 1];
+                    ip += 2;
 
-                    push(hash);
+                    final var hash = MonkeyHash.builder();
+                    for (var i = stackPointer - hashLength; i < stackPointer; i = i + 2) {
+                        hash.put(object(i), object(i + 1));
+                    }
+                    stackPointer -= hashLength;
+                    push(hash.build());
                 }
                 case OP_INDEX -> {
                     final var index = pop();
                     final var left = pop();
 
-                    executeIndexExpression(left, index);
+                    push(index(left, index));
                 }
                 case OP_CALL -> {
-                    final var numArgs = instructions.instructionAt(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer();
+                    final var callSite = ip;
+                    final var numArgs = code[ip + 1];
+                    ip += 1;
+                    frame.setInstructionPointer(ip);
 
-                    executeCall(numArgs);
+                    executeCall(numArgs, callSite);
+
+                    if (step) {
+                        return;
+                    }
+                    frame = currentFrame();
+                    code = frame.code;
+                    ip = frame.instructionPointer();
+                    limit = code.length - 1;
+                    basePointer = frame.basePointer();
                 }
-                case OP_RETURN_VALUE -> {
-                    final var returnValue = pop();
+                case OP_RETURN_VALUE, OP_ADD_RETURN_VALUE -> {
+                    if (code[ip] == OP_ADD_RETURN_VALUE) {
+                        executeBinaryOperation(OP_ADD);
+                    }
+                    final var returnSlot = stackPointer - 1;
+
+                    popFrame();
+                    stackPointer = basePointer - 1;
 
-                    final var frame = popFrame();
-                    stackPointer = frame.basePointer() - 1;
+                    pushSlot(returnSlot);
+                    if (frameIndex == exitFrameIndex || step) {
+                        return;
+                    }
 
-                    push(returnValue);
+                    frame = currentFrame();
+                    code = frame.code;
+                    ip = frame.instructionPointer();
+                    limit = code.length - 1;
+                    basePointer = frame.basePointer();
                 }
                 case OP_RETURN -> {
-                    final var frame = popFrame();
-                    stackPointer = frame.basePointer() - 1;
+                    popFrame();
+                    stackPointer = basePointer - 1;
 
                     push(NULL);
+                    if (frameIndex == exitFrameIndex || step) {
+                        return;
+                    }
+
+                    frame = currentFrame();
+                    code = frame.code;
+                    ip = frame.instructionPointer();
+                    limit = code.length - 1;
+                    basePointer = frame.basePointer();
                 }
                 case OP_CLOSURE -> {
-                    final var constIndex = instructions.readShort(instructionPointer + 1);
-                    final var numFree = instructions.instructionAt(instructionPointer + 3);
-                    currentFrame().incrementInstructionPointer(3);
+                    final var constIndex = code[ip + 1];
+                    final var numFree = code[ip + 3];
+                    ip += 3;
 
                     pushClosure(constIndex, numFree);
                 }
                 case OP_GET_FREE -> {
-                    final var freeIndex = instructions.instructionAt(instructionPointer + 1);
-                    currentFrame().incrementInstructionPointer();
+                    final var freeIndex = code[ip + 1];
+                    ip += 1;
+
+                    push(frame.closure.freeVariable(freeIndex));
+                }
+                case OP_CURRENT_CLOSURE -> push(frame.closure);
+                case OP_ADD_LOCAL_CONSTANT, OP_SUB_LOCAL_CONSTANT -> {
+                    final var leftSlot = basePointer + code[ip + 1];
+                    final var right = constants[code[ip + 2]];
+                    final var op = code[ip] == OP_ADD_LOCAL_CONSTANT ? OP_ADD : OP_SUB;
+                    ip += 3;
+
+                    executeLocalConstantOperation(op, leftSlot, right);
+                }
+                case OP_JUMP_NOT_EQUAL, OP_JUMP_NOT_GREATER_THAN -> {
+                    final var op = code[ip] == OP_JUMP_NOT_EQUAL ? OP_EQUAL : OP_GREATER_THAN;
+
+                    if (!popAndCompare(op)) {
+                        ip = code[ip + 1] - 1;
+                    } else {
+                        ip += 2;
+                    }
+                }
+                case OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL -> {
+                    final var leftSlot = basePointer + code[ip + 1];
+                    final var right = constants[code[ip + 2]];
+                    final var equal = isInteger(leftSlot) && right instanceof MonkeyInteger integer
+                            ? integer(leftSlot) == integer.value()
+                            : compare(OP_EQUAL, object(leftSlot), right);
+
+                    if (!equal) {
+                        ip = code[ip + 4] - 1;
+                    } else {
+                        ip += 5;
+                    }
+                }
+                case OP_GET_LOCAL_CALL -> {
+                    final var callSite = ip;
+                    pushSlot(basePointer + code[ip + 1]);
+                    final var numArgs = code[ip + 2];
+                    ip += 2;
+                    frame.setInstructionPointer(ip);
 
-                    final var currentClosure = currentFrame().closure;
-                    push(currentClosure.freeVariables[freeIndex]);
+                    executeCall(numArgs, callSite);
+
+                    if (step) {
+                        return;
+                    }
+                    frame = currentFrame();
+                    code = frame.code;
+                    ip = frame.instructionPointer();
+                    limit = code.length - 1;
+                    basePointer = frame.basePointer();
                 }
-                case OP_CURRENT_CLOSURE -> {
-                    final var currentClosure = currentFrame().closure;
+                case OP_SELF_CALL_SUB_LOCAL_CONSTANT -> {
+                    final var callSite = ip;
+                    push(frame.closure);
+                    executeLocalConstantOperation(OP_SUB, basePointer + code[ip + 1], constants[code[ip + 2]]);
+                    ip += 3;
+                    frame.setInstructionPointer(ip);
 
-                    push(currentClosure);
+                    executeCall(1, callSite);
+
+                    if (step) {
+                        return;
+                    }
+                    frame = currentFrame();
+                    code = frame.code;
+                    ip = frame.instructionPointer();
+                    limit = code.length - 1;
+                    basePointer = frame.basePointer();
                 }
+                case OP_TAIL_CALL -> {
+                    final var numArgs = code[ip + 1];
+                    ip += 1;
+                    frame.setInstructionPointer(ip);
+
+                    executeTailCall(numArgs);
+
+                    if (step) {
+                        return;
+                    }
+                    frame = currentFrame();
+                    code = frame.code;
+                    ip = frame.instructionPointer();
+                    limit = code.length - 1;
+                    basePointer = frame.basePointer();
+                }
+            }
+        }
+        frame.setInstructionPointer(ip);
+    }
+
+    private void executeLocalConstantOperation(int op, int leftSlot, MonkeyObject right) {
+        if (isInteger(leftSlot) && right instanceof MonkeyInteger integer) {
+            pushInteger(integerOperation(op, integer(leftSlot), integer.value()));
+        } else {
+            push(binaryOperation(op, object(leftSlot), right));
+        }
+    }
+
+    // a closure called in tail position takes over the frame and the stack window of the caller. Builtins and jitted
+    // functions are called as usual and the OP_RETURN_VALUE after OP_TAIL_CALL returns their result
+    private void executeTailCall(int numArgs) {
+        final var calleeSlot = stackPointer - 1 - numArgs;
+        if (!(stack[calleeSlot] instanceof Closure closure) || jit != null && jit.compiled(closure.fn) != null) {
+            executeCall(numArgs);
+            return;
+        }
+        if (numArgs != closure.fn.numberOfParameters()) {
+            throw new RuntimeException("wrong number of arguments want=%d, got=%d".formatted(closure.fn.numberOfParameters(), numArgs));
+        }
+
+        final var basePointer = currentFrame().basePointer();
+        for (var i = 0; i <= numArgs; i++) {
+            copySlot(calleeSlot + i, basePointer - 1 + i);
+        }
+        final var frame = currentFrame().reset(closure, basePointer);
+        stackPointer = basePointer + closure.fn.numberOfLocals();
+        ensureStack(stackPointer);
+        consumeFuel(frame.code.length, true);
+    }
+
+    // monomorphic inline cache: every call instruction remembers the last function it called. The arity of that
+    // function was checked when it was cached, so a hit enters the frame directly. With the JIT enabled every call goes
+    // through callClosure because it counts the invocations
+    private void executeCall(int numArgs, int callSite) {
+        final var callee = stack[stackPointer - 1 - numArgs];
+        if (jit == null && callee instanceof Closure closure) {
+            final var callSites = currentFrame().closure.fn.callSites();
+            if (callSites[callSite] == closure.fn) {
+                inlineCacheHits++;
+                enterFrame(closure, numArgs);
+                return;
             }
+            inlineCacheMisses++;
+            callClosure(closure, numArgs);
+            callSites[callSite] = closure.fn;
+            return;
         }
+        executeCall(numArgs);
     }
 
     private void executeCall(int numArgs) {
@@ -270,16 +696,83 @@ public final class VirtualMachine {
         if (numArgs != closure.fn.numberOfParameters()) {
             throw new RuntimeException("wrong number of arguments want=%d, got=%d".formatted(closure.fn.numberOfParameters(), numArgs));
         }
-        final var newFrame = frame(closure, stackPointer - numArgs);
-        pushFrame(newFrame);
+        if (jit != null) {
+            final var jitted = jit.compiled(closure.fn);
+            if (jitted != null) {
+                boxSlots(stackPointer - numArgs, stackPointer);
+                final var args = copyOfRange(stack, stackPointer - numArgs, stackPointer);
+                stackPointer = stackPointer - numArgs - 1;
+
+                push(invokeJitted(jitted, closure, args));
+                return;
+            }
+        }
+        enterFrame(closure, numArgs);
+    }
+
+    private void enterFrame(Closure closure, int numArgs) {
+        if (frameIndex + jitDepth >= config.maxFrames()) {
+            throw new RuntimeException("stack overflow");
+        }
+        final var newFrame = pushFrame(closure, stackPointer - numArgs);
 
         stackPointer = newFrame.basePointer() + closure.fn.numberOfLocals();
+        ensureStack(stackPointer);
+        consumeFuel(newFrame.code.length, true);
     }
 
-    private void callBuiltin(MonkeyBuiltin fn, int numArgs) {
-        final var args = slice(stack, stackPointer - numArgs, stackPointer);
+    // entry point of calls made by jitted functions
+    MonkeyObject callFromJit(MonkeyObject callee, MonkeyObject[] args) {
+        switch (callee) {
+            case Closure closure -> {
+                if (args.length != closure.fn.numberOfParameters()) {
+                    throw new RuntimeException("wrong number of arguments want=%d, got=%d".formatted(closure.fn.numberOfParameters(), args.length));
+                }
+                final var jitted = jit.compiled(closure.fn);
+                if (jitted != null) {
+                    return invokeJitted(jitted, closure, args);
+                }
 
-        final var result = fn.builtin(args);
+                push(closure);
+                for (var arg : args) {
+                    push(arg);
+                }
+                final var exitFrameIndex = frameIndex;
+                enterFrame(closure, args.length);
+                interpret(exitFrameIndex);
+                return pop();
+            }
+            case MonkeyBuiltin builtin -> {
+                final var result = builtin.builtin(arguments.window(args, 0, args.length));
+                return result != null ? result : NULL;
+            }
+            default -> throw new RuntimeException("calling non-function and non-built-in");
+        }
+    }
+
+    private MonkeyObject invokeJitted(MethodHandle jitted, Closure closure, MonkeyObject[] args) {
+        consumeFuel(closure.fn.instructions().decoded().length, false);
+        if (frameIndex + jitDepth >= config.maxFrames()) {
+            throw new RuntimeException("stack overflow");
+        }
+        jitDepth++;
+        try {
+            return (MonkeyObject) jitted.invokeExact(this, closure, args);
+        } catch (StackOverflowError e) {
+            // jitted calls use the JVM stack, which can be smaller than config.maxFrames()
+            throw new RuntimeException("stack overflow");
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        } finally {
+            jitDepth--;
+        }
+    }
+
+    private void callBuiltin(MonkeyBuiltin fn, int numArgs) {
+        boxSlots(stackPointer - numArgs, stackPointer);
+        final var result = fn.builtin(arguments.window(stack, stackPointer - numArgs, stackPointer));
         stackPointer = stackPointer - numArgs - 1;
 
         if (result != null) {
@@ -289,159 +782,192 @@ public final class VirtualMachine {
         }
     }
 
-    private List<MonkeyObject> slice(MonkeyObject[] slice, int start, int end) {
-        return asList(slice).subList(start, end);
-    }
-
     private void executeBinaryOperation(int op) {
+        final var rightSlot = stackPointer - 1;
+        final var leftSlot = stackPointer - 2;
+        if (isInteger(leftSlot) && isInteger(rightSlot)) {
+            final var result = integerOperation(op, integer(leftSlot), integer(rightSlot));
+            stackPointer -= 2;
+            pushInteger(result);
+            return;
+        }
+
         final var right = pop();
         final var left = pop();
 
+        push(binaryOperation(op, left, right));
+    }
+
+    static MonkeyObject binaryOperation(int op, MonkeyObject left, MonkeyObject right) {
         final var leftType = left.type();
         final var rightType = right.type();
 
         if (leftType == INTEGER_OBJ && rightType == INTEGER_OBJ) {
-            executeBinaryInteger(op, left, right);
-            return;
+            return binaryInteger(op, left, right);
         }
 
         if (leftType == STRING_OBJ && rightType == STRING_OBJ) {
-            executeBinaryString(op, left, right);
-            return;
+            return binaryString(op, left, right);
         }
 
         throw new RuntimeException("unsupported types for binary operation: %s %s".formatted(leftType, rightType));
     }
 
-    private void executeBinaryInteger(int op, MonkeyObject left, MonkeyObject right) {
+    private static MonkeyObject binaryInteger(int op, MonkeyObject left, MonkeyObject right) {
         final var leftValue = ((MonkeyInteger) left).value();
         final var rightValue = ((MonkeyInteger) right).value();
 
-        final var result = switch (op) {
+        return monkeyInteger(integerOperation(op, leftValue, rightValue));
+    }
+
+    private static int integerOperation(int op, int leftValue, int rightValue) {
+        return switch (op) {
             case OP_ADD -> leftValue + rightValue;
             case OP_SUB -> leftValue - rightValue;
             case OP_MUL -> leftValue * rightValue;
             case OP_DIV -> leftValue / rightValue;
             default -> throw new RuntimeException("unknown integer operation [%s]".formatted(op));
         };
-        push(new MonkeyInteger(result));
     }
 
-    private void executeBinaryString(int op, MonkeyObject left, MonkeyObject right) {
+    private static MonkeyObject binaryString(int op, MonkeyObject left, MonkeyObject right) {
         if (op != OP_ADD) {
             throw new RuntimeException("unknown string operator [%s]".formatted(op));
         }
 
-        final var leftValue = ((MonkeyString) left).value();
-        final var rightValue = ((MonkeyString) right).value();
-
-        push(new MonkeyString(leftValue + rightValue));
+        return ((MonkeyString) left).concat((MonkeyString) right);
     }
 
     private void executeComparison(int op) {
-        final var right = pop();
-        final var left = pop();
+        push(nativeBoolToBooleanObject(popAndCompare(op)));
+    }
 
+    private boolean popAndCompare(int op) {
+        final var rightSlot = stackPointer - 1;
+        final var leftSlot = stackPointer - 2;
+        stackPointer -= 2;
+
+        if (isInteger(leftSlot) && isInteger(rightSlot)) {
+            return compareIntegers(op, integer(leftSlot), integer(rightSlot));
+        }
+        return compare(op, object(leftSlot), object(rightSlot));
+    }
+
+    static boolean compare(int op, MonkeyObject left, MonkeyObject right) {
         if (left.type() == INTEGER_OBJ && right.type() == INTEGER_OBJ) {
-            executeIntegerComparison(op, left, right);
-            return;
+            return compareIntegers(op, ((MonkeyInteger) left).value(), ((MonkeyInteger) right).value());
         }
 
-        switch (op) {
-            case OP_EQUAL -> push(nativeBoolToBooleanObject(right == left));
-            case OP_NOT_EQUAL -> push(nativeBoolToBooleanObject(right != left));
+        return switch (op) {
+            case OP_EQUAL -> right == left || sameString(left, right);
+            case OP_NOT_EQUAL -> right != left && !sameString(left, right);
             default ->
                     throw new RuntimeException("unknown integer operation [%s] (%s %s)".formatted(op, left.type(), right.type()));
-        }
+        };
     }
 
-    private void executeIntegerComparison(int op, MonkeyObject left, MonkeyObject right) {
-        final var leftValue = ((MonkeyInteger) left).value();
-        final var rightValue = ((MonkeyInteger) right).value();
+    static boolean sameString(MonkeyObject left, MonkeyObject right) {
+        return left instanceof MonkeyString string && right instanceof MonkeyString other && string.sameValue(other);
+    }
 
-        switch (op) {
-            case OP_EQUAL -> push(nativeBoolToBooleanObject(rightValue == leftValue));
-            case OP_NOT_EQUAL -> push(nativeBoolToBooleanObject(rightValue != leftValue));
-            case OP_GREATER_THAN -> push(nativeBoolToBooleanObject(leftValue > rightValue));
+    private static boolean compareIntegers(int op, int leftValue, int rightValue) {
+        return switch (op) {
+            case OP_EQUAL -> rightValue == leftValue;
+            case OP_NOT_EQUAL -> rightValue != leftValue;
+            case OP_GREATER_THAN -> leftValue > rightValue;
             default -> throw new RuntimeException("unknown operator [%s]".formatted(op));
-        }
+        };
     }
 
-    private MonkeyBoolean nativeBoolToBooleanObject(boolean input) {
+    static MonkeyBoolean nativeBoolToBooleanObject(boolean input) {
         return input ? TRUE : FALSE;
     }
 
     private void executeBangOperator() {
-        final var operand = pop();
-
-        switch (operand) {
-            case MonkeyBoolean monkeyBoolean -> {
-                if (monkeyBoolean.value()) {
-                    push(FALSE);
-                } else {
-                    push(TRUE);
-                }
-            }
-            case MonkeyNull __ -> push(TRUE);
-            default -> push(FALSE);
-        }
+        stackPointer--;
+        push(bang(stack[stackPointer]));
+    }
+
+    static MonkeyObject bang(MonkeyObject operand) {
+        return switch (operand) {
+            case MonkeyBoolean monkeyBoolean -> monkeyBoolean.value() ? FALSE : TRUE;
+            case MonkeyNull __ -> TRUE;
+            default -> FALSE;
+        };
     }
 
     private void executeMinusOperator() {
-        final var operand = pop();
+        final var slot = stackPointer - 1;
+        if (isInteger(slot)) {
+            final var value = integer(slot);
+            stackPointer--;
+            pushInteger(-value);
+            return;
+        }
+        push(minus(pop()));
+    }
 
+    static MonkeyObject minus(MonkeyObject operand) {
         if (operand.type() != INTEGER_OBJ) {
             throw new RuntimeException("unsupported type for negation: %s".formatted(operand.type()));
         }
 
         final var value = ((MonkeyInteger) operand).value();
-        push(new MonkeyInteger(-value));
+        return monkeyInteger(-value);
     }
 
-    private void executeIndexExpression(MonkeyObject left, MonkeyObject index) {
+    static MonkeyObject index(MonkeyObject left, MonkeyObject index) {
         if (left.type() == ARRAY_OBJ && index.type() == INTEGER_OBJ) {
-            executeArrayIndex(left, index);
-            return;
+            return arrayIndex(left, index);
         }
         if (left.type() == HASH_OBJ) {
-            executeHashIndex(left, index);
-            return;
+            return hashIndex(left, index);
         }
         throw new RuntimeException("index operator not supported [%s]".formatted(left.type()));
     }
 
-    private void executeArrayIndex(MonkeyObject left, MonkeyObject index) {
+    private static MonkeyObject arrayIndex(MonkeyObject left, MonkeyObject index) {
         final var array = (MonkeyArray) left;
         final var i = ((MonkeyInteger) (index)).value();
-        final var max = array.elements().size() - 1;
+        final var max = array.size() - 1;
 
         if (i < 0 || i > max) {
-            push(NULL);
-            return;
+            return NULL;
         }
-        push(array.elements().get(i));
+        return array.get(i);
     }
 
-    private void executeHashIndex(MonkeyObject left, MonkeyObject index) {
+    private static MonkeyObject hashIndex(MonkeyObject left, MonkeyObject index) {
         final var hash = (MonkeyHash) left;
-        if (index instanceof Hashable hashable) {
-            final var pair = hash.getHashPair(hashable.hashKey());
+        if (index instanceof Hashable) {
+            final var pair = hash.get(index);
             if (pair == null) {
-                push(NULL);
-                return;
+                return NULL;
             }
-            push(pair.value());
-            return;
+            return pair.value();
         }
 
         throw new RuntimeException("unusable as hash key [%s]".formatted(index));
     }
 
+    public long inlineCacheHits() {
+        return inlineCacheHits;
+    }
+
+    public long inlineCacheMisses() {
+        return inlineCacheMisses;
+    }
+
+    // the globals after the run, which is a new array when the virtual machine had to grow them
+    public MonkeyObject[] globals() {
+        return globals;
+    }
+
     public MonkeyObject lastPoppedStackElement() {
-        return stack[stackPointer];
+        return object(stackPointer);
     }
 
-    private boolean isTruthy(MonkeyObject object) {
+    static boolean isTruthy(MonkeyObject object) {
         return switch (object.type()) {
             case BOOLEAN_OBJ -> ((MonkeyBoolean) object).value();
             case NULL_OBJ -> false;
@@ -450,11 +976,11 @@ public final class VirtualMachine {
     }
 
     private void pushClosure(int constIndex, int numFree) {
-        final var constant = constants.get(constIndex);
+        final var constant = constants[constIndex];
         if (constant instanceof CompilerFunction function) {
 
             final var free = iterate(0, i -> i < numFree, i -> i + 1)
-                    .map(it -> stack[stackPointer - numFree + it])
+                    .map(it -> object(stackPointer - numFree + it))
                     .toArray(MonkeyObject[]::new);
             stackPointer -= numFree;
 
@@ -466,15 +992,88 @@ public final class VirtualMachine {
     }
 
     private void push(MonkeyObject object) {
-        if (stackPointer >= STACK_SIZE) {
-            throw new RuntimeException("stack overflow");
+        if (stackPointer >= stack.length) {
+            ensureStack(stackPointer + 1);
         }
         stack[stackPointer] = object;
         stackPointer++;
     }
 
+    private void pushInteger(int value) {
+        if (!unboxedIntegers) {
+            push(monkeyInteger(value));
+            return;
+        }
+        if (stackPointer >= stack.length) {
+            ensureStack(stackPointer + 1);
+        }
+        stack[stackPointer] = UNBOXED;
+        integers[stackPointer] = value;
+        stackPointer++;
+    }
+
+    // pushes a copy of the slot without boxing it
+    private void pushSlot(int slot) {
+        if (stackPointer >= stack.length) {
+            ensureStack(stackPointer + 1);
+        }
+        copySlot(slot, stackPointer);
+        stackPointer++;
+    }
+
+    // grows the stack to hold at least size slots. Doubling keeps the cost of growing amortized constant per push
+    private void ensureStack(int size) {
+        if (size <= stack.length) {
+            return;
+        }
+        if (size > config.maxStackSize()) {
+            throw new RuntimeException("stack overflow");
+        }
+        final var length = Math.min(Math.max(size, stack.length * 2), config.maxStackSize());
+        stack = copyOf(stack, length);
+        integers = copyOf(integers, length);
+    }
+
+    private void setGlobal(int index, MonkeyObject value) {
+        if (index >= globals.length) {
+            globals = copyOf(globals, Math.min(Math.max(index + 1, globals.length * 2), GLOBAL_SIZE));
+        }
+        globals[index] = value;
+    }
+
+    private MonkeyObject getGlobal(int index) {
+        return index < globals.length ? globals[index] : null;
+    }
+
+    private void copySlot(int from, int to) {
+        stack[to] = stack[from];
+        integers[to] = integers[from];
+    }
+
+    private boolean isInteger(int slot) {
+        final var object = stack[slot];
+        return object == UNBOXED || object instanceof MonkeyInteger;
+    }
+
+    private int integer(int slot) {
+        final var object = stack[slot];
+        return object == UNBOXED ? integers[slot] : ((MonkeyInteger) object).value();
+    }
+
+    // the slot as an object, boxing an unboxed integer
+    private MonkeyObject object(int slot) {
+        final var object = stack[slot];
+        return object == UNBOXED ? monkeyInteger(integers[slot]) : object;
+    }
+
+    private void boxSlots(int from, int to) {
+        for (var slot = from; slot < to; slot++) {
+            stack[slot] = object(slot);
+        }
+    }
+
     private MonkeyObject pop() {
-        final var object = stack[stackPointer - 1];
+        final var object = object(stackPointer - 1);
         stackPointer--;
         // explicitly not null'ing last element. Just for the book and tests. see usage of lastPoppedStackElement()
         return object;
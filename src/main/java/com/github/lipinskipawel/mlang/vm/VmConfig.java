@@ -0,0 +1,46 @@
+package com.github.lipinskipawel.mlang.vm;
+
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.GLOBAL_SIZE;
+
+// sizes of the arrays owned by a virtual machine. The stack and the globals start small and grow on demand, the stack
+// up to maxStackSize and the globals up to GLOBAL_SIZE, which is the limit of the OP_SET_GLOBAL operand
+public record VmConfig(
+        int initialStackSize,
+        int maxStackSize,
+        int maxFrames,
+        int globalsCapacity
+) {
+    private static final VmConfig DEFAULT = new VmConfig(64, 1 << 20, 1 << 16, 64);
+
+    public VmConfig {
+        if (initialStackSize < 1 || initialStackSize > maxStackSize) {
+            throw new IllegalArgumentException("initial stack size must be between 1 and %d, got %d".formatted(maxStackSize, initialStackSize));
+        }
+        if (maxFrames < 1) {
+            throw new IllegalArgumentException("max frames must be positive, got %d".formatted(maxFrames));
+        }
+        if (globalsCapacity < 0 || globalsCapacity > GLOBAL_SIZE) {
+            throw new IllegalArgumentException("globals capacity must be between 0 and %d, got %d".formatted(GLOBAL_SIZE, globalsCapacity));
+        }
+    }
+
+    public static VmConfig vmConfig() {
+        return DEFAULT;
+    }
+
+    public VmConfig withInitialStackSize(int initialStackSize) {
+        return new VmConfig(initialStackSize, maxStackSize, maxFrames, globalsCapacity);
+    }
+
+    public VmConfig withMaxStackSize(int maxStackSize) {
+        return new VmConfig(Math.min(initialStackSize, maxStackSize), maxStackSize, maxFrames, globalsCapacity);
+    }
+
+    public VmConfig withMaxFrames(int maxFrames) {
+        return new VmConfig(initialStackSize, maxStackSize, maxFrames, globalsCapacity);
+    }
+
+    public VmConfig withGlobalsCapacity(int globalsCapacity) {
+        return new VmConfig(initialStackSize, maxStackSize, maxFrames, globalsCapacity);
+    }
+}
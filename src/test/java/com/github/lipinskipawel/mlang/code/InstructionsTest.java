@@ -49,6 +49,36 @@ class InstructionsTest implements WithAssertions {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource("makeInstruction")
+    @DisplayName("append instruction")
+    void append_instruction(OpCode op, int[] operands, byte[] expected) {
+        var instructions = instructions(make(OP_ADD, new int[0]));
+
+        var position = instructions.append(op, operands);
+
+        assertThat(position).isEqualTo(1);
+        assertThat(instructions.length()).isEqualTo(1 + expected.length);
+        assertThat(instructions.slice(1, instructions.length())).isEqualTo(expected);
+    }
+
+    @Test
+    void truncate_keeps_instructions_before_position() {
+        var instructions = instructions(new byte[0]);
+        for (var i = 0; i < 100; i++) {
+            instructions.append(OP_CONSTANT, new int[]{i});
+        }
+
+        instructions.truncate(6);
+        instructions.append(OP_ADD, new int[0]);
+
+        assertThat(instructions.toString()).isEqualTo("""
+                0000 OpConstant 0
+                0003 OpConstant 1
+                0006 OpAdd
+                """);
+    }
+
     private static Stream<Arguments> readOperandsCases() {
         return Stream.of(
                 of(OP_CONSTANT, new int[]{65535}, 2),
@@ -93,4 +123,24 @@ class InstructionsTest implements WithAssertions {
 
         assertThat(allInstructions.toString()).isEqualTo(expected);
     }
+
+    @Test
+    @DisplayName("decode instructions into widened operands")
+    void decode_instructions() {
+        var allInstructions = merge(List.of(
+                instructions(make(OP_ADD, new int[0])),
+                instructions(make(OP_GET_LOCAL, new int[]{255})),
+                instructions(make(OP_CONSTANT, new int[]{65535})),
+                instructions(make(OP_CLOSURE, new int[]{65534, 255}))
+        ));
+
+        var decoded = allInstructions.decoded();
+
+        assertThat(decoded).containsExactly(
+                OP_ADD.opCode,
+                OP_GET_LOCAL.opCode, 255,
+                OP_CONSTANT.opCode, 65535, 0,
+                OP_CLOSURE.opCode, 65534, 0, 255
+        );
+    }
 }
@@ -18,4 +18,22 @@ class OpCodeTest implements WithAssertions {
 
         assertThat(definitionsFromOpCodes).doesNotContainNull();
     }
+
+    @Test
+    @DisplayName("jump position is a two byte operand of every jump")
+    void jump_operand_is_position() {
+        final var jumps = Arrays.stream(OpCode.values())
+                .filter(it -> it.jumpOperandIndex() >= 0)
+                .toList();
+
+        assertThat(jumps).containsExactlyInAnyOrder(
+                OpCode.OP_JUMP,
+                OpCode.OP_JUMP_NOT_TRUTHY,
+                OpCode.OP_JUMP_NOT_EQUAL,
+                OpCode.OP_JUMP_NOT_GREATER_THAN,
+                OpCode.OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL
+        );
+        assertThat(jumps).allSatisfy(it ->
+                assertThat(it.definition().operandWidths()[it.jumpOperandIndex()]).isEqualTo(2));
+    }
 }
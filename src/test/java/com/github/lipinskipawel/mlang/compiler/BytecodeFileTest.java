@@ -0,0 +1,126 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
+import com.github.lipinskipawel.mlang.parser.Parser;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static com.github.lipinskipawel.mlang.compiler.BytecodeFile.decode;
+import static com.github.lipinskipawel.mlang.compiler.BytecodeFile.encode;
+import static com.github.lipinskipawel.mlang.compiler.BytecodeFile.load;
+import static com.github.lipinskipawel.mlang.compiler.BytecodeFile.write;
+import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.virtualMachine;
+
+@DisplayName("Bytecode file Spec")
+class BytecodeFileTest implements WithAssertions {
+    private static final String PROGRAM = """
+            let greeting = "héllo";
+            let add = fn(a, b) { let c = a + b; c };
+            let adder = fn(x) { fn(y) { add(x, y) } };
+            [greeting, adder(40)(2), -7];
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void write_and_load_bytecode() {
+        var bytecode = compile(PROGRAM);
+        var file = directory.resolve("program.mbc");
+
+        write(bytecode, file);
+        var loaded = load(file);
+
+        assertThat(loaded.instructions().toString()).isEqualTo(bytecode.instructions().toString());
+        assertThat(loaded.constants()).hasSameSizeAs(bytecode.constants());
+        for (var i = 0; i < bytecode.constants().size(); i++) {
+            var expected = bytecode.constants().get(i);
+            var actual = loaded.constants().get(i);
+            switch (expected) {
+                case MonkeyInteger integer -> assertThat(((MonkeyInteger) actual).value()).isEqualTo(integer.value());
+                case MonkeyString string -> assertThat(((MonkeyString) actual).value()).isEqualTo(string.value());
+                case CompilerFunction function -> {
+                    var loadedFunction = (CompilerFunction) actual;
+                    assertThat(loadedFunction.instructions().toString()).isEqualTo(function.instructions().toString());
+                    assertThat(loadedFunction.numberOfLocals()).isEqualTo(function.numberOfLocals());
+                    assertThat(loadedFunction.numberOfParameters()).isEqualTo(function.numberOfParameters());
+                }
+                default -> fail("unexpected constant [{}]", expected);
+            }
+        }
+    }
+
+    @Test
+    void run_loaded_bytecode() {
+        var file = directory.resolve("program.mbc");
+        write(compile(PROGRAM), file);
+
+        var vm = virtualMachine(load(file));
+        vm.run();
+
+        assertThat(vm.lastPoppedStackElement().inspect()).isEqualTo("[héllo, 42, -7]");
+    }
+
+    @Test
+    void reject_other_version() {
+        var buffer = encode(compile(PROGRAM));
+        buffer.putShort(4, (short) (BytecodeFile.VERSION + 1));
+
+        assertThatThrownBy(() -> decode(buffer))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("unsupported bytecode version");
+    }
+
+    @Test
+    void reject_other_files() {
+        assertThatThrownBy(() -> decode(ByteBuffer.wrap("let x = 1;".getBytes())))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("not a bytecode file");
+    }
+
+    @Test
+    void reject_truncated_file() {
+        var buffer = encode(compile(PROGRAM));
+        var truncated = buffer.limit(buffer.limit() - 7);
+
+        assertThatThrownBy(() -> decode(truncated))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("truncated bytecode file");
+    }
+
+    @Test
+    void reject_negative_length() {
+        var buffer = encode(compile(PROGRAM));
+        buffer.putInt(8, -1);
+
+        assertThatThrownBy(() -> decode(buffer))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("negative length [-1] in bytecode file");
+    }
+
+    @Test
+    void reject_trailing_bytes() {
+        var encoded = encode(compile(PROGRAM));
+        var buffer = ByteBuffer.allocate(encoded.remaining() + 1).put(encoded).rewind();
+
+        assertThatThrownBy(() -> decode(buffer))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("trailing bytes in bytecode file");
+    }
+
+    private Bytecode compile(String input) {
+        var compiler = compiler();
+        var error = compiler.compile(new Parser(lexer(input)).parseProgram());
+        assertThat(error).isEmpty();
+        return compiler.bytecode();
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.compiler.CompilationCache.Metrics;
+import com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_POP;
+import static com.github.lipinskipawel.mlang.compiler.CompilationCache.compilationCache;
+import static com.github.lipinskipawel.mlang.compiler.CompilationCache.key;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.virtualMachine;
+
+@DisplayName("Compilation cache Spec")
+class CompilationCacheTest implements WithAssertions {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void share_bytecode_of_identical_source() {
+        var cache = compilationCache(8);
+
+        var first = cache.compile("let f = fn(x) { x * 2 }; f(21);");
+        var second = cache.compile("let f = fn(x) { x * 2 }; f(21);");
+
+        assertThat(second).isSameAs(first);
+        assertThat(cache.metrics()).isEqualTo(new Metrics(1, 0, 1, 0, 1));
+        var vm = virtualMachine(second);
+        vm.run();
+        assertThat(vm.lastPoppedStackElement().inspect()).isEqualTo("42");
+    }
+
+    @Test
+    void hand_out_frozen_bytecode() {
+        var bytecode = compilationCache(8).compile("fn(x) { x };");
+
+        var function = (CompilerFunction) bytecode.constants().getFirst();
+
+        assertThat(bytecode.isFrozen()).isTrue();
+        assertThatThrownBy(() -> bytecode.instructions().append(OP_POP, new int[0]))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> function.instructions().truncate(0))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> bytecode.constants().clear())
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void evict_least_recently_used_source() {
+        var cache = compilationCache(2);
+
+        cache.compile("1");
+        cache.compile("2");
+        cache.compile("1");
+        cache.compile("3");
+        cache.compile("1");
+        cache.compile("2");
+
+        assertThat(cache.metrics()).isEqualTo(new Metrics(2, 0, 4, 2, 2));
+    }
+
+    @Test
+    void load_from_disk_tier_when_memory_tier_misses() {
+        compilationCache(8).withDiskTier(directory).compile("len(\"monkey\")");
+        var cache = compilationCache(8).withDiskTier(directory);
+
+        var bytecode = cache.compile("len(\"monkey\")");
+
+        assertThat(cache.metrics()).isEqualTo(new Metrics(0, 1, 0, 0, 1));
+        var vm = virtualMachine(bytecode);
+        vm.run();
+        assertThat(vm.lastPoppedStackElement().inspect()).isEqualTo("6");
+    }
+
+    @Test
+    void keep_instructions_of_disk_tier_mapped() {
+        compilationCache(8).withDiskTier(directory).compile("let f = fn(x) { x * 2 }; f(21);");
+        var cache = compilationCache(8).withDiskTier(directory);
+
+        var bytecode = cache.compile("let f = fn(x) { x * 2 }; f(21);");
+        var function = (CompilerFunction) bytecode.constants().get(1);
+
+        assertThat(cache.metrics().diskHits()).isEqualTo(1);
+        assertThat(bytecode.isFrozen()).isTrue();
+        assertThat(bytecode.instructions().isMapped()).isTrue();
+        assertThat(function.instructions().isMapped()).isTrue();
+        var vm = virtualMachine(bytecode);
+        vm.run();
+        assertThat(vm.lastPoppedStackElement().inspect()).isEqualTo("42");
+        assertThat(bytecode.instructions().isMapped()).isTrue();
+        assertThat(function.instructions().isMapped()).isTrue();
+    }
+
+    @Test
+    void compile_again_when_disk_tier_file_is_truncated() throws IOException {
+        compilationCache(8).withDiskTier(directory).compile("len(\"monkey\")");
+        var file = directory.resolve(key("len(\"monkey\")") + ".mbc");
+        var bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 7));
+        var cache = compilationCache(8).withDiskTier(directory);
+
+        var bytecode = cache.compile("len(\"monkey\")");
+
+        assertThat(cache.metrics()).isEqualTo(new Metrics(0, 0, 1, 0, 1));
+        var vm = virtualMachine(bytecode);
+        vm.run();
+        assertThat(vm.lastPoppedStackElement().inspect()).isEqualTo("6");
+        assertThat(Files.readAllBytes(file)).isEqualTo(bytes);
+    }
+
+    @Test
+    void hand_out_bytecode_when_disk_tier_store_fails() throws IOException {
+        var cache = compilationCache(8).withDiskTier(directory);
+        // a non-empty directory in place of the file fails the move of the written temporary file
+        Files.createDirectories(directory.resolve(key("1 + 2") + ".mbc").resolve("entry"));
+
+        var bytecode = cache.compile("1 + 2");
+
+        assertThat(cache.metrics()).isEqualTo(new Metrics(0, 0, 1, 0, 1));
+        var vm = virtualMachine(bytecode);
+        vm.run();
+        assertThat(vm.lastPoppedStackElement().inspect()).isEqualTo("3");
+        try (var files = Files.list(directory)) {
+            assertThat(files.map(it -> it.getFileName().toString())).noneMatch(it -> it.endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    void do_not_cache_errors() {
+        var cache = compilationCache(8);
+
+        assertThatThrownBy(() -> cache.compile("let = 1;")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cache.compile("unknown;")).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(cache.metrics().size()).isZero();
+    }
+}
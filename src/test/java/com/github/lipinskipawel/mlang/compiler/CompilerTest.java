@@ -21,6 +21,7 @@ import static com.github.lipinskipawel.mlang.code.Instructions.instructions;
 import static com.github.lipinskipawel.mlang.code.Instructions.make;
 import static com.github.lipinskipawel.mlang.code.Instructions.merge;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_ADD;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_ADD_RETURN_VALUE;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_ARRAY;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_BANG;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_CALL;
@@ -34,10 +35,13 @@ import static com.github.lipinskipawel.mlang.code.OpCode.OP_GET_BUILTIN;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_GET_FREE;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_GET_GLOBAL;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_GET_LOCAL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_GET_LOCAL_CALL;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_GREATER_THAN;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_HASH;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_INDEX;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP_NOT_GREATER_THAN;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP_NOT_TRUTHY;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_MINUS;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_MUL;
@@ -49,9 +53,14 @@ import static com.github.lipinskipawel.mlang.code.OpCode.OP_RETURN_VALUE;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_SET_GLOBAL;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_SET_LOCAL;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_SUB;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_SUB_LOCAL_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_SELF_CALL_SUB_LOCAL_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_TAIL_CALL;
 import static com.github.lipinskipawel.mlang.code.OpCode.OP_TRUE;
+import static com.github.lipinskipawel.mlang.code.OpCode.opCode;
 import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
 import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static java.util.Arrays.stream;
 import static org.junit.jupiter.params.provider.Arguments.of;
 
 @DisplayName("Compiler Spec")
@@ -275,6 +284,16 @@ class CompilerTest implements WithAssertions {
                         instructions(make(OP_CONSTANT, new int[]{1})),
                         instructions(make(OP_ADD, new int[0])),
                         instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("""
+                        "mon" + "key" + "mon"
+                        """, List.of("mon", "key"), List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_CONSTANT, new int[]{1})),
+                        instructions(make(OP_ADD, new int[0])),
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_ADD, new int[0])),
+                        instructions(make(OP_POP, new int[0]))
                 )))
         );
     }
@@ -361,23 +380,23 @@ class CompilerTest implements WithAssertions {
 
     private static Stream<Arguments> indexes() {
         return Stream.of(
-                of(new CompilerTestCase("[1, 2, 3][1 + 1]", List.of(1, 2, 3, 1, 1), List.of(
+                of(new CompilerTestCase("[1, 2, 3][1 + 1]", List.of(1, 2, 3), List.of(
                         instructions(make(OP_CONSTANT, new int[]{0})),
                         instructions(make(OP_CONSTANT, new int[]{1})),
                         instructions(make(OP_CONSTANT, new int[]{2})),
                         instructions(make(OP_ARRAY, new int[]{3})),
-                        instructions(make(OP_CONSTANT, new int[]{3})),
-                        instructions(make(OP_CONSTANT, new int[]{4})),
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_CONSTANT, new int[]{0})),
                         instructions(make(OP_ADD, new int[0])),
                         instructions(make(OP_INDEX, new int[0])),
                         instructions(make(OP_POP, new int[0]))
                 ))),
-                of(new CompilerTestCase("{1: 2}[2 - 1]", List.of(1, 2, 2, 1), List.of(
+                of(new CompilerTestCase("{1: 2}[2 - 1]", List.of(1, 2), List.of(
                         instructions(make(OP_CONSTANT, new int[]{0})),
                         instructions(make(OP_CONSTANT, new int[]{1})),
                         instructions(make(OP_HASH, new int[]{2})),
-                        instructions(make(OP_CONSTANT, new int[]{2})),
-                        instructions(make(OP_CONSTANT, new int[]{3})),
+                        instructions(make(OP_CONSTANT, new int[]{1})),
+                        instructions(make(OP_CONSTANT, new int[]{0})),
                         instructions(make(OP_SUB, new int[0])),
                         instructions(make(OP_INDEX, new int[0])),
                         instructions(make(OP_POP, new int[0]))
@@ -451,6 +470,17 @@ class CompilerTest implements WithAssertions {
         runCompiler(compilerTestCase);
     }
 
+    @Test
+    void share_string_constants_between_compile_units() {
+        var first = compiler();
+        var second = compiler();
+
+        assertThat(first.compile(new Parser(lexer("\"monkey\"")).parseProgram())).isEmpty();
+        assertThat(second.compile(new Parser(lexer("let monkey = \"monkey\"")).parseProgram())).isEmpty();
+
+        assertThat(second.bytecode().constants().getFirst()).isSameAs(first.bytecode().constants().getFirst());
+    }
+
     @Test
     void compiler_scopes() {
         var compiler = compiler();
@@ -648,7 +678,7 @@ class CompilerTest implements WithAssertions {
                         List.of(
                                 instructions(make(OP_GET_BUILTIN, new int[]{0})),
                                 instructions(make(OP_ARRAY, new int[]{0})),
-                                instructions(make(OP_CALL, new int[]{1})),
+                                instructions(make(OP_TAIL_CALL, new int[]{1})),
                                 instructions(make(OP_RETURN_VALUE, new int[0]))
                         )
                 ), List.of(
@@ -791,15 +821,14 @@ class CompilerTest implements WithAssertions {
                                 instructions(make(OP_GET_LOCAL, new int[]{0})),
                                 instructions(make(OP_CONSTANT, new int[]{0})),
                                 instructions(make(OP_SUB, new int[0])),
-                                instructions(make(OP_CALL, new int[]{1})),
+                                instructions(make(OP_TAIL_CALL, new int[]{1})),
                                 instructions(make(OP_RETURN_VALUE, new int[0]))
-                        ),
-                        1
+                        )
                 ), List.of(
                         instructions(make(OP_CLOSURE, new int[]{1, 0})),
                         instructions(make(OP_SET_GLOBAL, new int[]{0})),
                         instructions(make(OP_GET_GLOBAL, new int[]{0})),
-                        instructions(make(OP_CONSTANT, new int[]{2})),
+                        instructions(make(OP_CONSTANT, new int[]{0})),
                         instructions(make(OP_CALL, new int[]{1})),
                         instructions(make(OP_POP, new int[0]))
                 ))),
@@ -816,20 +845,19 @@ class CompilerTest implements WithAssertions {
                                 instructions(make(OP_GET_LOCAL, new int[]{0})),
                                 instructions(make(OP_CONSTANT, new int[]{0})),
                                 instructions(make(OP_SUB, new int[0])),
-                                instructions(make(OP_CALL, new int[]{1})),
+                                instructions(make(OP_TAIL_CALL, new int[]{1})),
                                 instructions(make(OP_RETURN_VALUE, new int[0]))
                         ),
-                        1,
                         List.of(
                                 instructions(make(OP_CLOSURE, new int[]{1, 0})),
                                 instructions(make(OP_SET_LOCAL, new int[]{0})),
                                 instructions(make(OP_GET_LOCAL, new int[]{0})),
-                                instructions(make(OP_CONSTANT, new int[]{2})),
-                                instructions(make(OP_CALL, new int[]{1})),
+                                instructions(make(OP_CONSTANT, new int[]{0})),
+                                instructions(make(OP_TAIL_CALL, new int[]{1})),
                                 instructions(make(OP_RETURN_VALUE, new int[0]))
                         )
                 ), List.of(
-                        instructions(make(OP_CLOSURE, new int[]{3, 0})),
+                        instructions(make(OP_CLOSURE, new int[]{2, 0})),
                         instructions(make(OP_SET_GLOBAL, new int[]{0})),
                         instructions(make(OP_GET_GLOBAL, new int[]{0})),
                         instructions(make(OP_CALL, new int[]{0})),
@@ -845,10 +873,286 @@ class CompilerTest implements WithAssertions {
         runCompiler(compilerTestCase);
     }
 
+    private static Stream<Arguments> tailCalls() {
+        return Stream.of(
+                of(new CompilerTestCase("fn(x) { if (x) { x() } else { 1 } }", List.of(
+                        1,
+                        List.of(
+                                // 0000
+                                instructions(make(OP_GET_LOCAL, new int[]{0})),
+                                // 0002
+                                instructions(make(OP_JUMP_NOT_TRUTHY, new int[]{12})),
+                                // 0005
+                                instructions(make(OP_GET_LOCAL, new int[]{0})),
+                                // 0007
+                                instructions(make(OP_TAIL_CALL, new int[]{0})),
+                                // 0009
+                                instructions(make(OP_JUMP, new int[]{15})),
+                                // 0012
+                                instructions(make(OP_CONSTANT, new int[]{0})),
+                                // 0015
+                                instructions(make(OP_RETURN_VALUE, new int[0]))
+                        )
+                ), List.of(
+                        instructions(make(OP_CLOSURE, new int[]{1, 0})),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("fn(x) { x() + 1 }", List.of(
+                        1,
+                        List.of(
+                                instructions(make(OP_GET_LOCAL, new int[]{0})),
+                                instructions(make(OP_CALL, new int[]{0})),
+                                instructions(make(OP_CONSTANT, new int[]{0})),
+                                instructions(make(OP_ADD, new int[0])),
+                                instructions(make(OP_RETURN_VALUE, new int[0]))
+                        )
+                ), List.of(
+                        instructions(make(OP_CLOSURE, new int[]{1, 0})),
+                        instructions(make(OP_POP, new int[0]))
+                )))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("tailCalls")
+    @DisplayName("tail calls")
+    void tail_calls(CompilerTestCase compilerTestCase) {
+        runCompiler(compilerTestCase);
+    }
+
+    private static Stream<Arguments> superinstructions() {
+        return Stream.of(
+                of(new CompilerTestCase("fn(x) { if (x == 1) { x - 2 } else { 3 } }", List.of(
+                        1,
+                        2,
+                        3,
+                        List.of(
+                                // 0000
+                                instructions(make(OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL, new int[]{0, 0, 11})),
+                                // 0006
+                                instructions(make(OP_SUB_LOCAL_CONSTANT, new int[]{0, 1})),
+                                // 0010, the jump to the return returns right away
+                                instructions(make(OP_RETURN_VALUE, new int[0])),
+                                // 0011
+                                instructions(make(OP_CONSTANT, new int[]{2})),
+                                // 0014
+                                instructions(make(OP_RETURN_VALUE, new int[0]))
+                        )
+                ), List.of(
+                        instructions(make(OP_CLOSURE, new int[]{3, 0})),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("fn(f) { let y = 1; -f(y) }", List.of(
+                        1,
+                        List.of(
+                                instructions(make(OP_CONSTANT, new int[]{0})),
+                                instructions(make(OP_SET_LOCAL, new int[]{1})),
+                                instructions(make(OP_GET_LOCAL, new int[]{0})),
+                                instructions(make(OP_GET_LOCAL_CALL, new int[]{1, 1})),
+                                instructions(make(OP_MINUS, new int[0])),
+                                instructions(make(OP_RETURN_VALUE, new int[0]))
+                        )
+                ), List.of(
+                        instructions(make(OP_CLOSURE, new int[]{1, 0})),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("""
+                        let fibonacci = fn(x) {
+                            if (x == 0) { 0 } else { if (x == 1) { 1 } else { fibonacci(x - 1) + fibonacci(x - 2) } }
+                        };
+                        """, List.of(
+                        0,
+                        1,
+                        2,
+                        List.of(
+                                // 0000
+                                instructions(make(OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL, new int[]{0, 0, 10})),
+                                // 0006
+                                instructions(make(OP_CONSTANT, new int[]{0})),
+                                // 0009
+                                instructions(make(OP_RETURN_VALUE, new int[0])),
+                                // 0010
+                                instructions(make(OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL, new int[]{0, 1, 20})),
+                                // 0016
+                                instructions(make(OP_CONSTANT, new int[]{1})),
+                                // 0019
+                                instructions(make(OP_RETURN_VALUE, new int[0])),
+                                // 0020
+                                instructions(make(OP_SELF_CALL_SUB_LOCAL_CONSTANT, new int[]{0, 1})),
+                                // 0024
+                                instructions(make(OP_SELF_CALL_SUB_LOCAL_CONSTANT, new int[]{0, 2})),
+                                // 0028
+                                instructions(make(OP_ADD_RETURN_VALUE, new int[0]))
+                        )
+                ), List.of(
+                        instructions(make(OP_CLOSURE, new int[]{3, 0})),
+                        instructions(make(OP_SET_GLOBAL, new int[]{0}))
+                ))),
+                of(new CompilerTestCase("let f = fn(g, n) { -g(f, n - 1) };", List.of(
+                        1,
+                        List.of(
+                                instructions(make(OP_GET_LOCAL, new int[]{0})),
+                                instructions(make(OP_CURRENT_CLOSURE, new int[0])),
+                                instructions(make(OP_SUB_LOCAL_CONSTANT, new int[]{1, 0})),
+                                instructions(make(OP_CALL, new int[]{2})),
+                                instructions(make(OP_MINUS, new int[0])),
+                                instructions(make(OP_RETURN_VALUE, new int[0]))
+                        )
+                ), List.of(
+                        instructions(make(OP_CLOSURE, new int[]{1, 0})),
+                        instructions(make(OP_SET_GLOBAL, new int[]{0}))
+                ))),
+                of(new CompilerTestCase("if (1 > 2) { 10 }", List.of(1, 2, 10), List.of(
+                        // 0000
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        // 0003
+                        instructions(make(OP_CONSTANT, new int[]{1})),
+                        // 0006
+                        instructions(make(OP_JUMP_NOT_GREATER_THAN, new int[]{15})),
+                        // 0009
+                        instructions(make(OP_CONSTANT, new int[]{2})),
+                        // 0012
+                        instructions(make(OP_JUMP, new int[]{16})),
+                        // 0015
+                        instructions(make(OP_NULL, new int[0])),
+                        // 0016
+                        instructions(make(OP_POP, new int[0]))
+                )))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("superinstructions")
+    @DisplayName("superinstructions")
+    void superinstructions(CompilerTestCase compilerTestCase) {
+        runCompiler(compilerTestCase, compiler().withSuperinstructions());
+    }
+
+    @Test
+    void fuse_recursive_path_of_fibonacci() {
+        var program = parse("""
+                let fibonacci = fn(x) {
+                    if (x == 0) { 0 } else { if (x == 1) { 1 } else { fibonacci(x - 1) + fibonacci(x - 2) } }
+                };
+                """);
+
+        var plain = compiler();
+        plain.compile(program);
+        var fused = compiler().withSuperinstructions();
+        fused.compile(program);
+
+        assertThat(instructionsOnRecursivePath(plain)).isEqualTo(20);
+        assertThat(instructionsOnRecursivePath(fused)).isEqualTo(5);
+    }
+
+    // instructions executed by a call which neither of the base cases returns from, every jump is taken
+    private int instructionsOnRecursivePath(Compiler compiler) {
+        var fn = (CompilerFunction) compiler.bytecode().constants().getLast();
+        var code = fn.instructions().decoded();
+
+        var count = 0;
+        var position = 0;
+        while (true) {
+            var op = opCode((byte) code[position]);
+            count++;
+            switch (op) {
+                case OP_RETURN_VALUE, OP_ADD_RETURN_VALUE -> {
+                    return count;
+                }
+                case OP_JUMP, OP_JUMP_NOT_TRUTHY -> position = code[position + 1];
+                case OP_JUMP_LOCAL_CONSTANT_NOT_EQUAL -> position = code[position + 4];
+                default -> position += 1 + stream(op.definition().operandWidths()).sum();
+            }
+        }
+    }
+
+    private static Stream<Arguments> constantFolding() {
+        return Stream.of(
+                of(new CompilerTestCase("60 * 60 * 24", List.of(86400), List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("\"mon\" + \"key\"", List.of("monkey"), List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("!true; -(5); 1 < 2; true != false", List.of(-5), List.of(
+                        instructions(make(OP_FALSE, new int[0])),
+                        instructions(make(OP_POP, new int[0])),
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_POP, new int[0])),
+                        instructions(make(OP_TRUE, new int[0])),
+                        instructions(make(OP_POP, new int[0])),
+                        instructions(make(OP_TRUE, new int[0])),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("1 / 0", List.of(1, 0), List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_CONSTANT, new int[]{1})),
+                        instructions(make(OP_DIV, new int[0])),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("fn() { 2 * 3 }", List.of(
+                        6,
+                        List.of(
+                                instructions(make(OP_CONSTANT, new int[]{0})),
+                                instructions(make(OP_RETURN_VALUE, new int[0]))
+                        )
+                ), List.of(
+                        instructions(make(OP_CLOSURE, new int[]{1, 0})),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("if (true) { 10 } else { 20 }; 3333", List.of(10, 3333), List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_POP, new int[0])),
+                        instructions(make(OP_CONSTANT, new int[]{1})),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("if (1 > 2) { 10 }", List.of(), List.of(
+                        instructions(make(OP_NULL, new int[0])),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("if (true) { let a = 1; a }", List.of(1), List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_SET_GLOBAL, new int[]{0})),
+                        instructions(make(OP_GET_GLOBAL, new int[]{0})),
+                        instructions(make(OP_POP, new int[0]))
+                ))),
+                of(new CompilerTestCase("if (true) { 1 } else { let a = 2; a }", List.of(1, 2), List.of(
+                        // 0000
+                        instructions(make(OP_TRUE, new int[0])),
+                        // 0001
+                        instructions(make(OP_JUMP_NOT_TRUTHY, new int[]{10})),
+                        // 0004
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        // 0007
+                        instructions(make(OP_JUMP, new int[]{19})),
+                        // 0010
+                        instructions(make(OP_CONSTANT, new int[]{1})),
+                        // 0013
+                        instructions(make(OP_SET_GLOBAL, new int[]{0})),
+                        // 0016
+                        instructions(make(OP_GET_GLOBAL, new int[]{0})),
+                        // 0019
+                        instructions(make(OP_POP, new int[0]))
+                )))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("constantFolding")
+    @DisplayName("constant folding")
+    void constant_folding(CompilerTestCase compilerTestCase) {
+        runCompiler(compilerTestCase, compiler().withConstantFolding());
+    }
+
     private void runCompiler(CompilerTestCase compilerTestCase) {
+        runCompiler(compilerTestCase, compiler());
+    }
+
+    private void runCompiler(CompilerTestCase compilerTestCase, Compiler compiler) {
         var program = parse(compilerTestCase.input());
 
-        var compiler = compiler();
         var error = compiler.compile(program);
         if (error.isPresent()) {
             fail("compiler error: [{}]", error);
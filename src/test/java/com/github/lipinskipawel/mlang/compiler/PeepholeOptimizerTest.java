@@ -0,0 +1,204 @@
+package com.github.lipinskipawel.mlang.compiler;
+
+import com.github.lipinskipawel.mlang.code.Instructions;
+import com.github.lipinskipawel.mlang.compiler.PeepholeOptimizer.PassStatistics;
+import com.github.lipinskipawel.mlang.parser.Parser;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.github.lipinskipawel.mlang.code.Instructions.instructions;
+import static com.github.lipinskipawel.mlang.code.Instructions.make;
+import static com.github.lipinskipawel.mlang.code.Instructions.merge;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_DUP;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_FALSE;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_GET_GLOBAL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_JUMP_NOT_TRUTHY;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_NULL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_POP;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_RETURN_VALUE;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_SET_GLOBAL;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_TRUE;
+import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
+import static com.github.lipinskipawel.mlang.compiler.PeepholeOptimizer.peepholeOptimizer;
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static org.junit.jupiter.params.provider.Arguments.of;
+
+@DisplayName("Peephole optimizer Spec")
+class PeepholeOptimizerTest implements WithAssertions {
+
+    private static Stream<Arguments> rules() {
+        return Stream.of(
+                of(List.of(
+                        // 0000
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        // 0003
+                        instructions(make(OP_JUMP, new int[]{6})),
+                        // 0006
+                        instructions(make(OP_POP, new int[0]))
+                ), List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_POP, new int[0]))
+                )),
+                of(List.of(
+                        // 0000
+                        instructions(make(OP_GET_GLOBAL, new int[]{0})),
+                        // 0003
+                        instructions(make(OP_JUMP_NOT_TRUTHY, new int[]{7})),
+                        // 0006
+                        instructions(make(OP_NULL, new int[0])),
+                        // 0007
+                        instructions(make(OP_JUMP, new int[]{11})),
+                        // 0010
+                        instructions(make(OP_NULL, new int[0])),
+                        // 0011
+                        instructions(make(OP_POP, new int[0]))
+                ), List.of(
+                        // 0000
+                        instructions(make(OP_GET_GLOBAL, new int[]{0})),
+                        // 0003
+                        instructions(make(OP_JUMP_NOT_TRUTHY, new int[]{7})),
+                        // 0006
+                        instructions(make(OP_NULL, new int[0])),
+                        // 0007
+                        instructions(make(OP_POP, new int[0]))
+                )),
+                of(List.of(
+                        // 0000
+                        instructions(make(OP_TRUE, new int[0])),
+                        // 0001
+                        instructions(make(OP_JUMP_NOT_TRUTHY, new int[]{7})),
+                        // 0004
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        // 0007
+                        instructions(make(OP_POP, new int[0]))
+                ), List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_POP, new int[0]))
+                )),
+                of(List.of(
+                        // 0000
+                        instructions(make(OP_FALSE, new int[0])),
+                        // 0001
+                        instructions(make(OP_JUMP_NOT_TRUTHY, new int[]{7})),
+                        // 0004
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        // 0007
+                        instructions(make(OP_NULL, new int[0]))
+                ), List.of(
+                        instructions(make(OP_NULL, new int[0]))
+                )),
+                of(List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_RETURN_VALUE, new int[0])),
+                        instructions(make(OP_CONSTANT, new int[]{1})),
+                        instructions(make(OP_RETURN_VALUE, new int[0]))
+                ), List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_RETURN_VALUE, new int[0]))
+                )),
+                of(List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_SET_GLOBAL, new int[]{1})),
+                        instructions(make(OP_GET_GLOBAL, new int[]{1})),
+                        instructions(make(OP_POP, new int[0]))
+                ), List.of(
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        instructions(make(OP_DUP, new int[0])),
+                        instructions(make(OP_SET_GLOBAL, new int[]{1})),
+                        instructions(make(OP_POP, new int[0]))
+                )),
+                of(List.of(
+                        // 0000
+                        instructions(make(OP_GET_GLOBAL, new int[]{0})),
+                        // 0003
+                        instructions(make(OP_JUMP_NOT_TRUTHY, new int[]{12})),
+                        // 0006
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        // 0009
+                        instructions(make(OP_SET_GLOBAL, new int[]{1})),
+                        // 0012
+                        instructions(make(OP_GET_GLOBAL, new int[]{1}))
+                ), List.of(
+                        // 0000
+                        instructions(make(OP_GET_GLOBAL, new int[]{0})),
+                        // 0003
+                        instructions(make(OP_JUMP_NOT_TRUTHY, new int[]{12})),
+                        // 0006
+                        instructions(make(OP_CONSTANT, new int[]{0})),
+                        // 0009
+                        instructions(make(OP_SET_GLOBAL, new int[]{1})),
+                        // 0012
+                        instructions(make(OP_GET_GLOBAL, new int[]{1}))
+                ))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("rules")
+    @DisplayName("rewrite instructions and relocate jumps")
+    void rewrite_instructions(List<Instructions> input, List<Instructions> expected) {
+        var optimized = peepholeOptimizer().optimize(merge(input));
+
+        assertThat(optimized.toString()).isEqualTo(merge(expected).toString());
+    }
+
+    @Test
+    void leaves_given_instructions_untouched() {
+        var instructions = merge(List.of(
+                instructions(make(OP_TRUE, new int[0])),
+                instructions(make(OP_JUMP_NOT_TRUTHY, new int[]{4})),
+                instructions(make(OP_POP, new int[0]))
+        ));
+        var before = instructions.toString();
+
+        peepholeOptimizer().optimize(instructions);
+
+        assertThat(instructions.toString()).isEqualTo(before);
+    }
+
+    @Test
+    void report_statistics_of_every_pass() {
+        var optimizer = peepholeOptimizer();
+        var compiler = compiler().withPeepholeOptimizer(optimizer);
+
+        compiler.compile(new Parser(lexer("if (true) { 10 } else { 20 }")).parseProgram());
+
+        assertThat(compiler.bytecode().instructions().toString()).isEqualTo("""
+                0000 OpConstant 0
+                0003 OpPop
+                """);
+        assertThat(optimizer.statistics()).containsExactly(
+                new PassStatistics("jump-to-next", 1, 3),
+                new PassStatistics("jump-threading", 0, 0),
+                new PassStatistics("constant-jump-not-truthy", 1, 4),
+                new PassStatistics("unreachable-code", 1, 3),
+                new PassStatistics("global-round-trip", 0, 0)
+        );
+    }
+
+    @Test
+    void run_only_given_passes() {
+        var optimizer = peepholeOptimizer(List.of(new PeepholeOptimizer.UnreachableCode()));
+
+        var optimized = optimizer.optimize(merge(List.of(
+                instructions(make(OP_JUMP, new int[]{3})),
+                instructions(make(OP_RETURN_VALUE, new int[0])),
+                instructions(make(OP_NULL, new int[0]))
+        )));
+
+        assertThat(optimized.toString()).isEqualTo("""
+                0000 OpJump 3
+                0003 OpReturnValue
+                """);
+        assertThat(optimizer.statistics()).containsExactly(new PassStatistics("unreachable-code", 1, 1));
+    }
+}
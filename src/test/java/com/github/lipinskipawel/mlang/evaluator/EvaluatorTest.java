@@ -318,7 +318,12 @@ final class EvaluatorTest implements WithAssertions {
                 arguments("rest([1, 2, 3])", List.of(2, 3)),
                 arguments("rest([])", null),
                 arguments("push([], 1)", List.of(1)),
-                arguments("push(1, 1)", "argument to 'push' must be ARRAY, got INTEGER")
+                arguments("push(1, 1)", "argument to 'push' must be ARRAY, got INTEGER"),
+                arguments("put({1: 2}, 3, 4)[3]", 4),
+                arguments("put({1: 2}, 1, 5)[1]", 5),
+                arguments("let hash = {1: 2}; put(hash, 3, 4); hash[3]", null),
+                arguments("put(1, 1, 1)", "argument to 'put' must be HASH, got INTEGER"),
+                arguments("put({}, [], 1)", "unusable as hash key: ARRAY_OBJ")
         );
     }
 
@@ -1,9 +1,21 @@
 package com.github.lipinskipawel.mlang.evaluator;
 
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyArray;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyBoolean;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyHash;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
 import org.assertj.core.api.WithAssertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.lipinskipawel.mlang.evaluator.objects.Arguments.arguments;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyHash.monkeyHash;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
+
 final class ObjectTest implements WithAssertions {
 
     @Test
@@ -17,4 +29,196 @@ final class ObjectTest implements WithAssertions {
         assertThat(diff1.hashKey()).usingRecursiveComparison().isEqualTo(diff2.hashKey());
         assertThat(string1.hashKey()).usingRecursiveComparison().isNotEqualTo(diff1.hashKey());
     }
+
+    @Test
+    void should_tell_apart_hash_keys_of_strings_with_the_same_hash() {
+        final var aa = new MonkeyString("Aa");
+        final var bb = new MonkeyString("BB");
+
+        assertThat(aa.hash()).isEqualTo(bb.hash());
+        assertThat(aa.hashKey()).isNotEqualTo(bb.hashKey());
+        assertThat(aa.hashKey()).isEqualTo(new MonkeyString("Aa").hashKey());
+        assertThat(aa.hashKey()).isSameAs(aa.hashKey());
+        assertThat(new MonkeyString("").hash()).isEqualTo(0);
+    }
+
+    @Test
+    void should_find_string_keys_with_the_same_hash_by_hash_key() {
+        final var hash = MonkeyHash.builder()
+                .put(new MonkeyString("Aa"), monkeyInteger(1))
+                .put(new MonkeyString("BB"), monkeyInteger(2))
+                .build();
+
+        assertThat(hash.size()).isEqualTo(2);
+        assertThat(hash.getHashPair(new MonkeyString("Aa").hashKey()).value()).isEqualTo(monkeyInteger(1));
+        assertThat(hash.getHashPair(new MonkeyString("BB").hashKey()).value()).isEqualTo(monkeyInteger(2));
+        assertThat(hash.getHashPair(new MonkeyString("C#").hashKey())).isNull();
+    }
+
+    @Test
+    void should_share_small_integers() {
+        assertThat(monkeyInteger(-128)).isSameAs(monkeyInteger(-128));
+        assertThat(monkeyInteger(1024)).isSameAs(monkeyInteger(1024));
+        assertThat(monkeyInteger(1025)).isNotSameAs(monkeyInteger(1025));
+        assertThat(monkeyInteger(1025).value()).isEqualTo(1025);
+    }
+
+    @Test
+    void should_move_arguments_window_over_slots() {
+        final var slots = new MonkeyObject[]{monkeyInteger(1), monkeyInteger(2), monkeyInteger(3)};
+        final var arguments = arguments();
+
+        arguments.window(slots, 1, 3);
+        assertThat(arguments.size()).isEqualTo(2);
+        assertThat(arguments.get(0)).isSameAs(slots[1]);
+        assertThat(arguments.get(1)).isSameAs(slots[2]);
+        assertThatThrownBy(() -> arguments.get(2)).isInstanceOf(IndexOutOfBoundsException.class);
+
+        arguments.window(slots, 0, 0);
+        assertThat(arguments.size()).isEqualTo(0);
+    }
+
+    @Test
+    void should_push_to_array_without_changing_it() {
+        var array = new MonkeyArray(List.of());
+        final var versions = new ArrayList<MonkeyArray>();
+
+        // 40_000 elements need a trie of three levels below the root
+        for (var i = 0; i < 40_000; i++) {
+            versions.add(array);
+            array = array.push(monkeyInteger(i));
+        }
+
+        assertThat(array.size()).isEqualTo(40_000);
+        for (var i = 0; i < 40_000; i++) {
+            assertThat(((MonkeyInteger) array.get(i)).value()).isEqualTo(i);
+        }
+        for (var size : List.of(0, 1, 32, 33, 1056, 1057, 32_800)) {
+            final var version = versions.get(size);
+            assertThat(version.size()).isEqualTo(size);
+            assertThat(version.elements()).extracting(it -> ((MonkeyInteger) it).value())
+                    .containsExactlyElementsOf(array.elements().subList(0, size).stream()
+                            .map(it -> ((MonkeyInteger) it).value())
+                            .toList());
+        }
+    }
+
+    @Test
+    void should_build_the_same_array_as_push() {
+        final var builder = MonkeyArray.builder();
+        var pushed = new MonkeyArray(List.of());
+        for (var i = 0; i < 2_000; i++) {
+            builder.add(monkeyInteger(i));
+            pushed = pushed.push(monkeyInteger(i));
+        }
+        final var built = builder.build();
+
+        assertThat(built.inspect()).isEqualTo(pushed.inspect());
+        assertThat(((MonkeyInteger) built.push(monkeyInteger(2_000)).get(2_000)).value()).isEqualTo(2_000);
+        assertThat(built.size()).isEqualTo(2_000);
+        assertThatThrownBy(() -> builder.add(monkeyInteger(0)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("builder already built");
+    }
+
+    @Test
+    void should_share_elements_with_rest_of_array() {
+        final var builder = MonkeyArray.builder();
+        for (var i = 0; i < 100; i++) {
+            builder.add(monkeyInteger(i));
+        }
+        final var array = builder.build();
+
+        var dropped = array;
+        for (var i = 0; i < 64; i++) {
+            dropped = dropped.rest();
+        }
+        final var rest = dropped;
+        final var pushed = rest.push(monkeyInteger(100));
+
+        assertThat(array.size()).isEqualTo(100);
+        assertThat(rest.size()).isEqualTo(36);
+        assertThat(rest.get(0)).isSameAs(array.get(64));
+        assertThat(pushed.size()).isEqualTo(37);
+        assertThat(pushed.get(36)).isEqualTo(monkeyInteger(100));
+        assertThat(pushed.inspect()).startsWith("[64, 65, ").endsWith("99, 100]");
+        assertThatThrownBy(() -> rest.get(36)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void should_put_to_hash_without_changing_it() {
+        var hash = monkeyHash();
+        final var versions = new ArrayList<MonkeyHash>();
+
+        for (var i = 0; i < 10_000; i++) {
+            versions.add(hash);
+            hash = hash.put(monkeyInteger(i), monkeyInteger(-i));
+        }
+        final var replaced = hash.put(monkeyInteger(7), new MonkeyString("seven"));
+
+        assertThat(hash.size()).isEqualTo(10_000);
+        for (var i = 0; i < 10_000; i++) {
+            assertThat(((MonkeyInteger) hash.get(new MonkeyInteger(i)).value()).value()).isEqualTo(-i);
+        }
+        assertThat(hash.get(monkeyInteger(10_000))).isNull();
+        assertThat(versions.get(100).size()).isEqualTo(100);
+        assertThat(versions.get(100).get(monkeyInteger(100))).isNull();
+        assertThat(versions.get(100).get(monkeyInteger(99))).isNotNull();
+        assertThat(replaced.size()).isEqualTo(10_000);
+        assertThat(replaced.get(monkeyInteger(7)).value().inspect()).isEqualTo("seven");
+        assertThat(hash.get(monkeyInteger(7)).value().inspect()).isEqualTo("-7");
+    }
+
+    @Test
+    void should_keep_keys_with_the_same_hash_apart() {
+        // "Aa" and "BB" have the same String.hashCode(), 1 and true have the same HashKey value
+        final var hash = MonkeyHash.builder()
+                .put(new MonkeyString("Aa"), monkeyInteger(1))
+                .put(new MonkeyString("BB"), monkeyInteger(2))
+                .put(monkeyInteger(1), monkeyInteger(3))
+                .put(new MonkeyBoolean(true), monkeyInteger(4))
+                .put(new MonkeyString("BB"), monkeyInteger(5))
+                .build();
+        final var updated = hash.put(new MonkeyString("Aa"), monkeyInteger(6));
+
+        assertThat(hash.size()).isEqualTo(4);
+        assertThat(hash.get(new MonkeyString("Aa")).value()).isEqualTo(monkeyInteger(1));
+        assertThat(hash.get(new MonkeyString("BB")).value()).isEqualTo(monkeyInteger(5));
+        assertThat(hash.get(monkeyInteger(1)).value()).isEqualTo(monkeyInteger(3));
+        assertThat(hash.get(new MonkeyBoolean(true)).value()).isEqualTo(monkeyInteger(4));
+        assertThat(hash.get(new MonkeyBoolean(false))).isNull();
+        assertThat(hash.getHashPair(monkeyInteger(1).hashKey()).value()).isEqualTo(monkeyInteger(3));
+        assertThat(updated.size()).isEqualTo(4);
+        assertThat(updated.get(new MonkeyString("Aa")).value()).isEqualTo(monkeyInteger(6));
+        assertThat(updated.get(new MonkeyString("BB")).value()).isEqualTo(monkeyInteger(5));
+    }
+
+    @Test
+    void should_flatten_concatenated_strings_on_first_use() {
+        var rope = new MonkeyString("");
+        var expected = new StringBuilder();
+        for (var i = 0; i < 100_000; i++) {
+            rope = rope.concat(new MonkeyString("0123456789"));
+            expected.append("0123456789");
+        }
+        final var flat = new MonkeyString(expected.toString());
+
+        assertThat(rope.length()).isEqualTo(1_000_000);
+        assertThat(rope.hash()).isEqualTo(flat.hash());
+        assertThat(rope.hashKey()).isEqualTo(flat.hashKey());
+        assertThat(rope.value()).isEqualTo(expected.toString());
+        assertThat(rope.concat(new MonkeyString("!")).inspect()).endsWith("789!").hasSize(1_000_001);
+    }
+
+    @Test
+    void should_copy_short_concatenations() {
+        final var left = new MonkeyString("mon");
+        final var empty = new MonkeyString("");
+        final var longer = new MonkeyString("x".repeat(100));
+
+        assertThat(left.concat(new MonkeyString("key")).value()).isEqualTo("monkey");
+        assertThat(longer.concat(empty)).isSameAs(longer);
+        assertThat(empty.concat(longer)).isSameAs(longer);
+        assertThat(left.concat(longer).length()).isEqualTo(103);
+    }
 }
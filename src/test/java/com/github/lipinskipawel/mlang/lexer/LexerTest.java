@@ -188,4 +188,19 @@ final class LexerTest implements WithAssertions {
             }
         }
     }
+
+    @Test
+    void share_identifiers_and_strings_between_lexers() {
+        var first = lexer("let monkey = \"banana\";");
+        var second = lexer("monkey(\"banana\")");
+
+        first.nextToken();
+        var identifier = first.nextToken();
+        first.nextToken();
+        var string = first.nextToken();
+
+        assertThat(second.nextToken().literal()).isSameAs(identifier.literal());
+        second.nextToken();
+        assertThat(second.nextToken().literal()).isSameAs(string.literal());
+    }
 }
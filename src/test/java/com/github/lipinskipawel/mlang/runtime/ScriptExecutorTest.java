@@ -0,0 +1,198 @@
+package com.github.lipinskipawel.mlang.runtime;
+
+import com.github.lipinskipawel.mlang.compiler.Bytecode;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
+import com.github.lipinskipawel.mlang.parser.Parser;
+import com.github.lipinskipawel.mlang.vm.Profile.OpcodeProfile;
+import com.github.lipinskipawel.mlang.vm.VirtualMachine;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
+import static com.github.lipinskipawel.mlang.compiler.SymbolTable.symbolTable;
+import static com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger.monkeyInteger;
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static com.github.lipinskipawel.mlang.object.Builtins.builtins;
+import static com.github.lipinskipawel.mlang.runtime.ScriptExecutor.scriptExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+@DisplayName("Script executor Spec")
+class ScriptExecutorTest implements WithAssertions {
+    private static final String FIBONACCI = """
+            let fibonacci = fn(x) {
+              if (x == 0) {
+                0
+              } else {
+                if (x == 1) {
+                  return 1;
+                } else {
+                  fibonacci(x - 1) + fibonacci(x - 2);
+                }
+              }
+            };
+            fibonacci(input);
+            """;
+
+    @Test
+    void run_jobs_with_their_own_globals() throws Exception {
+        var bytecode = compile(FIBONACCI);
+        var results = new ArrayList<CompletableFuture<MonkeyObject>>();
+
+        try (var executor = scriptExecutor(2)) {
+            for (var i = 0; i < 10; i++) {
+                final var input = i;
+                results.add(executor.submit(bytecode, globals -> globals[0] = monkeyInteger(input)));
+            }
+        }
+
+        var fibonacci = new ArrayList<String>();
+        for (var result : results) {
+            fibonacci.add(result.get(10, SECONDS).inspect());
+        }
+        assertThat(fibonacci).containsExactly("0", "1", "1", "2", "3", "5", "8", "13", "21", "34");
+    }
+
+    @Test
+    void stop_job_after_timeout() {
+        var bytecode = compile(FIBONACCI);
+
+        try (var executor = scriptExecutor(1)) {
+            var result = executor.submit(bytecode, globals -> globals[0] = monkeyInteger(60), Duration.ofMillis(50));
+
+            assertThatThrownBy(() -> result.get(10, SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(TimeoutException.class);
+        }
+    }
+
+    @Test
+    void start_timeout_when_job_starts_running() throws Exception {
+        var bytecode = compile(FIBONACCI);
+
+        try (var executor = scriptExecutor(1).withTimeout(Duration.ofSeconds(5))) {
+            var slow = executor.submit(bytecode, globals -> globals[0] = monkeyInteger(60), Duration.ofMillis(200));
+            var waiting = executor.submit(bytecode, globals -> globals[0] = monkeyInteger(10), Duration.ofMillis(100));
+
+            assertThat(waiting.get(10, SECONDS).inspect()).isEqualTo("55");
+            assertThat(slow).isCompletedExceptionally();
+        }
+    }
+
+    @Test
+    void stop_cancelled_job() throws Exception {
+        var bytecode = compile(FIBONACCI);
+
+        try (var executor = scriptExecutor(1)) {
+            var cancelled = executor.submit(bytecode, globals -> globals[0] = monkeyInteger(60));
+            var next = executor.submit(bytecode, globals -> globals[0] = monkeyInteger(20));
+            cancelled.cancel(true);
+
+            assertThat(next.get(10, SECONDS).inspect()).isEqualTo("6765");
+        }
+    }
+
+    @Test
+    void reuse_virtual_machine_after_failed_job() throws Exception {
+        var bytecode = compile("let f = fn(x) { x + input }; f(1);");
+
+        try (var executor = scriptExecutor(1)) {
+            var failed = executor.submit(bytecode, globals -> globals[0] = new MonkeyString("monkey"));
+            var next = executor.submit(bytecode, globals -> globals[0] = monkeyInteger(41));
+
+            assertThat(failed).failsWithin(10, SECONDS);
+            assertThat(next.get(10, SECONDS).inspect()).isEqualTo("42");
+        }
+    }
+
+    @Test
+    void start_reused_virtual_machine_without_state_of_previous_job() throws Exception {
+        var virtualMachines = new CopyOnWriteArrayList<VirtualMachine>();
+
+        try (var executor = scriptExecutor(1).withVirtualMachine(vm -> {
+            virtualMachines.add(vm);
+            return vm.withProfiler().withInstructionBudget(1000);
+        })) {
+            var first = executor.submit(compile(FIBONACCI), globals -> globals[0] = monkeyInteger(15));
+            assertThat(first.get(10, SECONDS).inspect()).isEqualTo("610");
+            var second = executor.submit(compile("input + 1;"), globals -> globals[0] = monkeyInteger(41));
+            assertThat(second.get(10, SECONDS).inspect()).isEqualTo("42");
+        }
+
+        assertThat(virtualMachines).hasSize(1);
+        var vm = virtualMachines.getFirst();
+        assertThat(vm.inlineCacheHits()).isZero();
+        assertThat(vm.inlineCacheMisses()).isZero();
+        assertThat(vm.profile().functions()).hasSize(1);
+        assertThat(vm.profile().opcodes())
+                .extracting(OpcodeProfile::opcode, OpcodeProfile::count)
+                .containsExactlyInAnyOrder(
+                        tuple("OpGetGlobal", 1L),
+                        tuple("OpConstant", 1L),
+                        tuple("OpAdd", 1L),
+                        tuple("OpPop", 1L)
+                );
+    }
+
+    @Test
+    void fail_job_whose_globals_initializer_throws_error() throws Exception {
+        var bytecode = compile("input + 1;");
+
+        try (var executor = scriptExecutor(1)) {
+            var failed = executor.submit(bytecode, globals -> {
+                throw new AssertionError("broken initializer");
+            });
+            var next = executor.submit(bytecode, globals -> globals[0] = monkeyInteger(41));
+
+            assertThat(failed)
+                    .failsWithin(10, SECONDS)
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseInstanceOf(AssertionError.class);
+            assertThat(next.get(10, SECONDS).inspect()).isEqualTo("42");
+        }
+    }
+
+    @Test
+    void time_slice_jobs_with_instruction_budget() throws Exception {
+        var bytecode = compile(FIBONACCI);
+
+        try (var executor = scriptExecutor(1).withVirtualMachine(vm -> vm.withInstructionBudget(1000))) {
+            var slow = executor.submit(bytecode, globals -> globals[0] = monkeyInteger(60));
+            var quick = executor.submit(bytecode, globals -> globals[0] = monkeyInteger(10));
+
+            assertThat(quick.get(10, SECONDS).inspect()).isEqualTo("55");
+            assertThat(slow).isNotDone();
+            slow.cancel(true);
+        }
+    }
+
+    @Test
+    void reject_non_positive_concurrency() {
+        assertThatThrownBy(() -> scriptExecutor(0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("max concurrency must be positive, got 0");
+    }
+
+    // input is the first global, the globals initializer of every job sets it
+    private Bytecode compile(String input) {
+        var symbolTable = symbolTable();
+        var builtins = builtins();
+        for (var i = 0; i < builtins.size(); i++) {
+            symbolTable.defineBuiltin(i, builtins.get(i).name());
+        }
+        symbolTable.define("input");
+
+        var compiler = compiler(new ArrayList<>(), symbolTable);
+        var error = compiler.compile(new Parser(lexer(input)).parseProgram());
+        assertThat(error).isEmpty();
+        return compiler.bytecode().freeze();
+    }
+}
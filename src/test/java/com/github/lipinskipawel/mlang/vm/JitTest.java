@@ -0,0 +1,89 @@
+package com.github.lipinskipawel.mlang.vm;
+
+import com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
+import com.github.lipinskipawel.mlang.parser.Parser;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.github.lipinskipawel.mlang.code.Instructions.instructions;
+import static com.github.lipinskipawel.mlang.code.Instructions.make;
+import static com.github.lipinskipawel.mlang.code.Instructions.merge;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_CONSTANT;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_RETURN_VALUE;
+import static com.github.lipinskipawel.mlang.code.OpCode.OP_SET_GLOBAL;
+import static com.github.lipinskipawel.mlang.compiler.Compiler.compiler;
+import static com.github.lipinskipawel.mlang.evaluator.objects.CompilerFunction.compilerFunction;
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.virtualMachine;
+
+@DisplayName("JIT Spec")
+class JitTest implements WithAssertions {
+
+    @Test
+    @DisplayName("compile function once it reaches the threshold")
+    void compile_function_once_it_reaches_the_threshold() {
+        var compiler = compiler();
+        var program = new Parser(lexer("""
+                let sum = fn(n) { if (n == 0) { 0 } else { n + sum(n - 1) } };
+                sum(10);
+                """)).parseProgram();
+        compiler.compile(program).ifPresent(err -> fail("compiler error: [{}]", err));
+        var bytecode = compiler.bytecode();
+        var virtualMachine = virtualMachine(bytecode).withJit(5);
+
+        virtualMachine.run();
+
+        var sum = bytecode.constants().stream()
+                .filter(CompilerFunction.class::isInstance)
+                .map(CompilerFunction.class::cast)
+                .findFirst()
+                .orElseThrow();
+        assertThat(sum.jitted()).isNotNull();
+        assertThat(((MonkeyInteger) virtualMachine.lastPoppedStackElement()).value()).isEqualTo(55);
+    }
+
+    @Test
+    @DisplayName("compile shared function past the threshold counted by another virtual machine")
+    void compile_shared_function_past_the_threshold_counted_by_another_virtual_machine() {
+        var compiler = compiler();
+        var program = new Parser(lexer("""
+                let sum = fn(n) { if (n == 0) { 0 } else { n + sum(n - 1) } };
+                sum(500);
+                """)).parseProgram();
+        compiler.compile(program).ifPresent(err -> fail("compiler error: [{}]", err));
+        var bytecode = compiler.bytecode().freeze();
+        var sum = bytecode.constants().stream()
+                .filter(CompilerFunction.class::isInstance)
+                .map(CompilerFunction.class::cast)
+                .findFirst()
+                .orElseThrow();
+
+        virtualMachine(bytecode).withJit(1000).run();
+        assertThat(sum.jitted()).isNull();
+        var virtualMachine = virtualMachine(bytecode).withJit(2);
+        virtualMachine.run();
+
+        assertThat(sum.jitted()).isNotNull();
+        assertThat(((MonkeyInteger) virtualMachine.lastPoppedStackElement()).value()).isEqualTo(125250);
+    }
+
+    @Test
+    @DisplayName("bail out on unsupported instruction")
+    void bail_out_on_unsupported_instruction() {
+        var fn = compilerFunction(merge(List.of(
+                instructions(make(OP_CONSTANT, new int[]{0})),
+                instructions(make(OP_SET_GLOBAL, new int[]{0})),
+                instructions(make(OP_CONSTANT, new int[]{0})),
+                instructions(make(OP_RETURN_VALUE, new int[0]))
+        )));
+
+        var jit = new Jit(1);
+
+        assertThat(jit.compiled(fn)).isNull();
+        assertThat(jit.compiled(fn)).isNull();
+    }
+}
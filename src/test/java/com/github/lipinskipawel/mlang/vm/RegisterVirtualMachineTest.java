@@ -0,0 +1,165 @@
+package com.github.lipinskipawel.mlang.vm;
+
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyArray;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyBoolean;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyInteger;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyNull;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyObject;
+import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyString;
+import com.github.lipinskipawel.mlang.parser.Parser;
+import com.github.lipinskipawel.mlang.parser.ast.Program;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+import static com.github.lipinskipawel.mlang.compiler.RegisterCompiler.registerCompiler;
+import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
+import static com.github.lipinskipawel.mlang.vm.RegisterVirtualMachine.registerVirtualMachine;
+import static com.github.lipinskipawel.mlang.vm.VirtualMachine.NULL;
+import static org.junit.jupiter.params.provider.Arguments.of;
+
+@DisplayName("Register Virtual Machine Spec")
+class RegisterVirtualMachineTest implements WithAssertions {
+
+    private record VmTestCase(
+            String input,
+            Object expected
+    ) {
+    }
+
+    private static Stream<Arguments> programs() {
+        return Stream.of(
+                of(new VmTestCase("(5 + 10 * 2 + 15 / 3) * 2 + -10", 50)),
+                of(new VmTestCase("!(1 < 2) == false", true)),
+                of(new VmTestCase("if (1 > 2) { 10 }", NULL)),
+                of(new VmTestCase("if (false) { 10 } else { 20 }", 20)),
+                of(new VmTestCase("let one = 1; let two = one + one; one + two", 3)),
+                of(new VmTestCase("\"mon\" + \"key\"", "monkey")),
+                of(new VmTestCase("[1, 2 * 2, 3 + 3][1]", 4)),
+                of(new VmTestCase("{1: 1, 2: 2 * 2}[2]", 4)),
+                of(new VmTestCase("len(push([1, 2], 3))", 3)),
+                of(new VmTestCase("let sum = fn(a, b) { let c = a + b; c; }; sum(1, 2) + sum(3, 4)", 10)),
+                of(new VmTestCase("let noReturn = fn() { }; noReturn()", NULL)),
+                of(new VmTestCase("""
+                        let newAdder = fn(a, b) { fn(c) { a + b + c } };
+                        let adder = newAdder(1, 2);
+                        adder(8);
+                        """, 11)),
+                of(new VmTestCase("""
+                        let wrapper = fn() {
+                            let countDown = fn(x) { if (x == 0) { return 0; } else { countDown(x - 1); } };
+                            countDown(1);
+                        };
+                        wrapper();
+                        """, 0)),
+                of(new VmTestCase("""
+                        let map = fn(arr, f) {
+                            let iter = fn(arr, acc) {
+                                if (len(arr) == 0) { acc } else { iter(rest(arr), push(acc, f(first(arr)))) }
+                            };
+                            iter(arr, []);
+                        };
+                        map([1, 2, 3], fn(x) { x * 2 });
+                        """, new int[]{2, 4, 6}))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("programs")
+    @DisplayName("run programs on registers")
+    void run_programs_on_registers(VmTestCase vmTestCase) {
+        runVirtualMachineTest(vmTestCase);
+    }
+
+    @Test
+    @DisplayName("recursive fibonacci")
+    void recursive_fibonacci() {
+        runVirtualMachineTest(new VmTestCase("""
+                let fibonacci = fn(x) {
+                    if (x == 0) {
+                        return 0;
+                    } else {
+                        if (x == 1) {
+                            return 1;
+                        } else {
+                            fibonacci(x - 1) + fibonacci(x - 2);
+                        }
+                    }
+                };
+                fibonacci(15);
+                """, 610));
+    }
+
+    @Test
+    @DisplayName("wrong number of arguments")
+    void wrong_number_of_arguments() {
+        var compiler = registerCompiler();
+        var compilerError = compiler.compile(parse("fn(a, b) { a + b; }(1);"));
+        compilerError.ifPresent(err -> fail("compiler error: [{}]", err));
+
+        var virtualMachine = registerVirtualMachine(compiler.bytecode());
+
+        assertThatThrownBy(virtualMachine::run)
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("wrong number of arguments want=2, got=1");
+    }
+
+    @Test
+    @DisplayName("undefined variable")
+    void undefined_variable() {
+        var compiler = registerCompiler();
+
+        var compilerError = compiler.compile(parse("let f = fn(a) { let b = a + 1; [b, c] }; f(1);"));
+
+        assertThat(compilerError).contains("undefined variable [c]");
+    }
+
+    private void runVirtualMachineTest(VmTestCase vmTestCase) {
+        var compiler = registerCompiler();
+        var compilerError = compiler.compile(parse(vmTestCase.input()));
+        compilerError.ifPresent(err -> fail("compiler error: [{}]", err));
+
+        var virtualMachine = registerVirtualMachine(compiler.bytecode());
+        virtualMachine.run();
+
+        testExpectedObject(vmTestCase.expected(), virtualMachine.lastPoppedStackElement());
+    }
+
+    private void testExpectedObject(Object expected, MonkeyObject actual) {
+        switch (expected) {
+            case Integer integer -> assertThat(actual)
+                    .isInstanceOf(MonkeyInteger.class)
+                    .extracting(it -> ((MonkeyInteger) it).value())
+                    .isEqualTo(integer);
+            case String string -> assertThat(actual)
+                    .isInstanceOf(MonkeyString.class)
+                    .extracting(it -> ((MonkeyString) it).value())
+                    .isEqualTo(string);
+            case Boolean bool -> assertThat(actual)
+                    .isInstanceOf(MonkeyBoolean.class)
+                    .extracting(it -> ((MonkeyBoolean) it).value())
+                    .isEqualTo(bool);
+            case int[] array -> {
+                assertThat(actual).isInstanceOf(MonkeyArray.class);
+                var elements = ((MonkeyArray) actual).elements();
+                assertThat(elements).hasSize(array.length);
+                for (var i = 0; i < array.length; i++) {
+                    testExpectedObject(array[i], elements.get(i));
+                }
+            }
+            case MonkeyNull monkeyNull -> assertThat(actual).isEqualTo(monkeyNull);
+            default -> throw new IllegalStateException("Unexpected value: " + expected);
+        }
+    }
+
+    private Program parse(String input) {
+        var lexer = lexer(input);
+        var parser = new Parser(lexer);
+        return parser.parseProgram();
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.lipinskipawel.mlang.vm;
 
+import com.github.lipinskipawel.mlang.compiler.Compiler;
 import com.github.lipinskipawel.mlang.evaluator.objects.HashKey;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyArray;
 import com.github.lipinskipawel.mlang.evaluator.objects.MonkeyBoolean;
@@ -19,6 +20,9 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -27,6 +31,7 @@ import static com.github.lipinskipawel.mlang.evaluator.objects.ObjectType.INTEGE
 import static com.github.lipinskipawel.mlang.lexer.Lexer.lexer;
 import static com.github.lipinskipawel.mlang.vm.VirtualMachine.NULL;
 import static com.github.lipinskipawel.mlang.vm.VirtualMachine.virtualMachine;
+import static com.github.lipinskipawel.mlang.vm.VmConfig.vmConfig;
 import static org.junit.jupiter.params.provider.Arguments.of;
 
 @DisplayName("Virtual Machine Spec")
@@ -93,7 +98,11 @@ class VirtualMachineTest implements WithAssertions {
                 of(new VmTestCase("!!true", true)),
                 of(new VmTestCase("!!false", false)),
                 of(new VmTestCase("!!5", true)),
-                of(new VmTestCase("!(if (false) { 5; })", true))
+                of(new VmTestCase("!(if (false) { 5; })", true)),
+                of(new VmTestCase("\"monkey\" == \"monkey\"", true)),
+                of(new VmTestCase("\"mon\" + \"key\" == \"monkey\"", true)),
+                of(new VmTestCase("\"mon\" + \"key\" != \"monkey\"", false)),
+                of(new VmTestCase("\"monkey\" != \"banana\"", true))
         );
     }
 
@@ -151,7 +160,15 @@ class VirtualMachineTest implements WithAssertions {
                         """), "monkey")),
                 of(new VmTestCase(("""
                         "mon" + "key" + "banana"
-                        """), "monkeybanana"))
+                        """), "monkeybanana")),
+                of(new VmTestCase(("""
+                        let append = fn(string, n) {
+                          if (n == 0) { string } else { append(string + "0123456789", n - 1) }
+                        };
+                        let rope = append("", 100000);
+                        let hash = {rope: 1};
+                        len(rope) + hash[append("", 100000)]
+                        """), 1_000_001))
         );
     }
 
@@ -440,7 +457,13 @@ class VirtualMachineTest implements WithAssertions {
                 of(new VmTestCase("rest([1, 2, 3])", new int[]{2, 3})),
                 of(new VmTestCase("rest([])", NULL)),
                 of(new VmTestCase("push([], 1)", new int[]{1})),
-                of(new VmTestCase("push(1, 1)", new MonkeyError("argument to 'push' must be ARRAY, got INTEGER")))
+                of(new VmTestCase("push(1, 1)", new MonkeyError("argument to 'push' must be ARRAY, got INTEGER"))),
+                of(new VmTestCase("put({1: 2}, 3, 4)", Map.of(1, 2, 3, 4))),
+                of(new VmTestCase("put({1: 2}, 1, 5)", Map.of(1, 5))),
+                of(new VmTestCase("let hash = {1: 2}; put(hash, 3, 4); hash[3]", NULL)),
+                of(new VmTestCase("put(1, 1, 1)", new MonkeyError("argument to 'put' must be HASH, got INTEGER"))),
+                of(new VmTestCase("put({}, [], 1)", new MonkeyError("unusable as hash key: ARRAY_OBJ"))),
+                of(new VmTestCase("put({})", new MonkeyError("wrong number of arguments. got=1, want=3")))
         );
     }
 
@@ -583,14 +606,384 @@ class VirtualMachineTest implements WithAssertions {
                 """, 610));
     }
 
+    @Test
+    void recursive_fibonacci_with_superinstructions() {
+        runVirtualMachineTest(new VmTestCase("""
+                let fibonacci = fn(x) {
+                    if (x == 0) {
+                        return 0;
+                    } else {
+                        if (x == 1) {
+                            return 1;
+                        } else {
+                            fibonacci(x - 1) + fibonacci(x - 2);
+                        }
+                    }
+                };
+                fibonacci(15);
+                """, 610), compiler().withSuperinstructions());
+    }
+
+    private static Stream<Arguments> tailCalls() {
+        return Stream.of(
+                of(new VmTestCase("""
+                        let loop = fn(x, acc) {
+                            if (x > 0) {
+                                loop(x - 1, acc + 1)
+                            } else {
+                                acc
+                            }
+                        };
+                        loop(100000, 0);
+                        """, 100000)),
+                of(new VmTestCase("""
+                        let wrapper = fn() {
+                            let countDown = fn(x) { if (x == 0) { true } else { countDown(x - 1) } };
+                            countDown(50000);
+                        };
+                        wrapper();
+                        """, true)),
+                of(new VmTestCase("""
+                        let apply = fn(f, x) { f(x) };
+                        apply(fn(x) { x * 2 }, 21);
+                        """, 42))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("tailCalls")
+    @DisplayName("tail calls")
+    void tail_calls(VmTestCase vmTestCase) {
+        runVirtualMachineTest(vmTestCase);
+        runVirtualMachineTest(vmTestCase, compiler().withSuperinstructions(), VirtualMachine::withUnboxedIntegers);
+        runVirtualMachineTest(vmTestCase, compiler(), vm -> vm.withJit(1));
+    }
+
+    @Test
+    void run_frozen_bytecode_on_many_threads() throws Exception {
+        var compiler = compiler().withSuperinstructions();
+        compiler.compile(parse("""
+                let fibonacci = fn(x) { if (x < 2) { x } else { fibonacci(x - 1) + fibonacci(x - 2) } };
+                let total = fn(x, acc) { if (x == 0) { acc } else { total(x - 1, acc + fibonacci(15)) } };
+                total(20, 0);
+                """));
+        var bytecode = compiler.bytecode().freeze();
+
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            var results = IntStream.range(0, 8)
+                    .mapToObj(i -> executor.submit(() -> {
+                        var vm = virtualMachine(bytecode).withUnboxedIntegers().withJit(i + 1);
+                        vm.run();
+                        return vm.lastPoppedStackElement();
+                    }))
+                    .toList();
+
+            for (var result : results) {
+                testExpectedObject(12200, result.get());
+            }
+        }
+    }
+
+    private static Stream<Arguments> instructionBudgets() {
+        return Stream.<UnaryOperator<VirtualMachine>>of(
+                vm -> vm,
+                VirtualMachine::withUnboxedIntegers,
+                // jitted fibonacci runs out of fuel, the interpreted loop suspends
+                vm -> vm.withJit(100)
+        ).map(Arguments::of);
+    }
+
+    @ParameterizedTest
+    @MethodSource("instructionBudgets")
+    void suspend_when_out_of_fuel_and_resume(UnaryOperator<VirtualMachine> configuration) {
+        var compiler = compiler().withSuperinstructions();
+        compiler.compile(parse("""
+                let fibonacci = fn(x) { if (x < 2) { x } else { fibonacci(x - 1) + fibonacci(x - 2) } };
+                let loop = fn(x, acc) { if (x == 0) { acc } else { loop(x - 1, acc + fibonacci(10)) } };
+                loop(50, 0);
+                """));
+        var virtualMachine = configuration.apply(virtualMachine(compiler.bytecode())).withInstructionBudget(500);
+
+        var suspensions = 0;
+        virtualMachine.run();
+        while (virtualMachine.isSuspended()) {
+            suspensions++;
+            virtualMachine.resume();
+        }
+
+        testExpectedObject(2750, virtualMachine.lastPoppedStackElement());
+        assertThat(suspensions).isPositive();
+    }
+
+    @Test
+    void keep_running_when_yield_hook_refuels() {
+        var compiler = compiler();
+        compiler.compile(parse("""
+                let loop = fn(x, acc) { if (x > 0) { loop(x - 1, acc + 1) } else { acc } };
+                loop(10000, 0);
+                """));
+        var yields = new AtomicInteger();
+        var virtualMachine = virtualMachine(compiler.bytecode())
+                .withInstructionBudget(1000)
+                .withYieldHook(vm -> {
+                    yields.incrementAndGet();
+                    return true;
+                });
+
+        virtualMachine.run();
+
+        testExpectedObject(10000, virtualMachine.lastPoppedStackElement());
+        assertThat(virtualMachine.isSuspended()).isFalse();
+        assertThat(yields.get()).isPositive();
+    }
+
+    @Test
+    void stop_cancelled_program() {
+        var compiler = compiler();
+        compiler.compile(parse("""
+                let loop = fn(x) { if (x > 0) { loop(x - 1) } else { x } };
+                loop(10000);
+                """));
+        var virtualMachine = virtualMachine(compiler.bytecode())
+                .withInstructionBudget(100)
+                .withYieldHook(vm -> {
+                    vm.cancel();
+                    return true;
+                });
+
+        assertThat(catchException(virtualMachine::run))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("cancelled");
+    }
+
+    @Test
+    void reject_resume_of_running_program() {
+        var compiler = compiler();
+        compiler.compile(parse("1 + 2"));
+        var virtualMachine = virtualMachine(compiler.bytecode());
+        virtualMachine.run();
+
+        assertThatThrownBy(virtualMachine::resume)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("virtual machine is not suspended");
+    }
+
+    @ParameterizedTest
+    @MethodSource({
+            "closures",
+            "recursiveFunctions",
+            "tailCalls"
+    })
+    @DisplayName("profiled programs")
+    void profiled_programs(VmTestCase vmTestCase) {
+        runVirtualMachineTest(vmTestCase, compiler(), VirtualMachine::withProfiler);
+        runVirtualMachineTest(vmTestCase, compiler().withSuperinstructions(), vm -> vm.withProfiler().withJit(2));
+    }
+
+    @Test
+    void profile_instructions_per_opcode_and_function() {
+        var compiler = compiler();
+        compiler.compile(parse("""
+                let add = fn(a, b) { a + b };
+                add(1, 2) + add(3, 4);
+                """));
+        var virtualMachine = virtualMachine(compiler.bytecode()).withProfiler();
+
+        virtualMachine.run();
+
+        testExpectedObject(10, virtualMachine.lastPoppedStackElement());
+        var profile = virtualMachine.profile();
+        assertThat(profile.opcodes())
+                .filteredOn(it -> it.opcode().equals("OpAdd"))
+                .singleElement()
+                .extracting(Profile.OpcodeProfile::count)
+                .isEqualTo(3L);
+        assertThat(profile.functions()).extracting(Profile.FunctionProfile::name)
+                .containsExactlyInAnyOrder("main", "constant 0");
+        var add = profile.functions().stream().filter(it -> it.name().equals("constant 0")).findFirst().orElseThrow();
+        assertThat(add.totalCount()).isEqualTo(8);
+        assertThat(add.count(4)).isEqualTo(2);
+        assertThat(profile.report())
+                .contains("constant 0: count=8")
+                .containsPattern(" +2 +\\d+  0004 OpAdd\n");
+    }
+
+    @Test
+    void reject_profile_without_profiler() {
+        var virtualMachine = virtualMachine(compiler().bytecode());
+
+        assertThatThrownBy(virtualMachine::profile)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("profiler is not enabled");
+    }
+
+    @Test
+    void grows_stack_and_frames_for_deep_recursion() {
+        runVirtualMachineTest(new VmTestCase("""
+                let sum = fn(x) { if (x == 0) { 0 } else { x + sum(x - 1) } };
+                sum(20000);
+                """, 200010000));
+    }
+
+    private static Stream<Arguments> vmConfigLimits() {
+        return Stream.of(
+                of(vmConfig().withMaxFrames(100)),
+                of(vmConfig().withInitialStackSize(8).withMaxStackSize(100))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("vmConfigLimits")
+    void stack_overflow_at_configured_limit(VmConfig config) {
+        var compiler = compiler();
+        compiler.compile(parse("""
+                let sum = fn(x) { if (x == 0) { 0 } else { x + sum(x - 1) } };
+                sum(200);
+                """));
+
+        var virtualMachine = virtualMachine(compiler.bytecode(), config);
+
+        assertThat(catchException(virtualMachine::run))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("stack overflow");
+    }
+
+    @Test
+    void grows_globals_beyond_initial_capacity() {
+        var compiler = compiler();
+        compiler.compile(parse("let a = 1; let b = 2; let c = 3; a + b + c"));
+
+        var virtualMachine = virtualMachine(compiler.bytecode(), vmConfig().withGlobalsCapacity(1));
+        virtualMachine.run();
+
+        testExpectedObject(6, virtualMachine.lastPoppedStackElement());
+        assertThat(virtualMachine.globals()).hasSizeGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    void monomorphic_call_sites_hit_the_inline_cache() {
+        var compiler = compiler();
+        compiler.compile(parse("""
+                let fibonacci = fn(x) { if (x < 2) { x } else { fibonacci(x - 1) + fibonacci(x - 2) } };
+                fibonacci(15);
+                """));
+
+        var virtualMachine = virtualMachine(compiler.bytecode());
+        virtualMachine.run();
+
+        testExpectedObject(610, virtualMachine.lastPoppedStackElement());
+        assertThat(virtualMachine.inlineCacheMisses()).isEqualTo(3);
+        assertThat(virtualMachine.inlineCacheHits()).isEqualTo(1973 - 3);
+    }
+
+    @Test
+    void polymorphic_call_site_misses_the_inline_cache() {
+        var compiler = compiler();
+        compiler.compile(parse("""
+                let one = fn() { 1 };
+                let two = fn() { 2 };
+                let apply = fn(f) { f() + 0 };
+                apply(one) + apply(two) + apply(one) + apply(one);
+                """));
+
+        var virtualMachine = virtualMachine(compiler.bytecode());
+        virtualMachine.run();
+
+        testExpectedObject(5, virtualMachine.lastPoppedStackElement());
+        assertThat(virtualMachine.inlineCacheMisses()).isEqualTo(4 + 3);
+        assertThat(virtualMachine.inlineCacheHits()).isEqualTo(1);
+    }
+
+    @ParameterizedTest
+    @MethodSource({
+            "callFunctionsWithoutArguments",
+            "callFunctionsWithoutArgumentsAndWithoutReturnValue",
+            "firstClassFunctions",
+            "callClosureWithBindings",
+            "callClosureWithArgumentsAndBindings",
+            "closures",
+            "recursiveFunctions"
+    })
+    @DisplayName("functions compiled by the jit")
+    void functions_compiled_by_the_jit(VmTestCase vmTestCase) {
+        runVirtualMachineTest(vmTestCase, compiler(), vm -> vm.withJit(1));
+        runVirtualMachineTest(vmTestCase, compiler().withSuperinstructions(), vm -> vm.withJit(1));
+    }
+
+    @ParameterizedTest
+    @MethodSource({
+            "arithmetic",
+            "booleans",
+            "conditionals",
+            "globalLetStatements",
+            "strings",
+            "arrays",
+            "hashs",
+            "indexes",
+            "callFunctionsWithoutArguments",
+            "callClosureWithArgumentsAndBindings",
+            "builtinFunctions",
+            "closures",
+            "recursiveFunctions"
+    })
+    @DisplayName("unboxed integers")
+    void unboxed_integers(VmTestCase vmTestCase) {
+        runVirtualMachineTest(vmTestCase, compiler(), VirtualMachine::withUnboxedIntegers);
+        runVirtualMachineTest(vmTestCase, compiler().withSuperinstructions(), VirtualMachine::withUnboxedIntegers);
+    }
+
+    @ParameterizedTest
+    @MethodSource({
+            "arithmetic",
+            "booleans",
+            "conditionals",
+            "globalLetStatements",
+            "strings",
+            "arrays",
+            "hashs",
+            "indexes",
+            "callFunctionsWithoutArguments",
+            "builtinFunctions",
+            "closures",
+            "recursiveFunctions"
+    })
+    @DisplayName("constant folding")
+    void constant_folding(VmTestCase vmTestCase) {
+        runVirtualMachineTest(vmTestCase, compiler().withConstantFolding());
+        runVirtualMachineTest(vmTestCase, compiler().withConstantFolding().withSuperinstructions(), vm -> vm.withJit(1));
+    }
+
+    @ParameterizedTest
+    @MethodSource({
+            "conditionals",
+            "globalLetStatements",
+            "callFunctionsWithoutArgumentsAndWithoutReturnValue",
+            "closures",
+            "recursiveFunctions",
+            "tailCalls"
+    })
+    @DisplayName("peephole optimizer")
+    void peephole_optimizer(VmTestCase vmTestCase) {
+        runVirtualMachineTest(vmTestCase, compiler().withPeepholeOptimizer());
+        runVirtualMachineTest(vmTestCase, compiler().withConstantFolding().withPeepholeOptimizer().withSuperinstructions(),
+                vm -> vm.withUnboxedIntegers().withJit(1));
+    }
+
     private void runVirtualMachineTest(VmTestCase vmTestCase) {
+        runVirtualMachineTest(vmTestCase, compiler());
+    }
+
+    private void runVirtualMachineTest(VmTestCase vmTestCase, Compiler compiler) {
+        runVirtualMachineTest(vmTestCase, compiler, UnaryOperator.identity());
+    }
+
+    private void runVirtualMachineTest(VmTestCase vmTestCase, Compiler compiler, UnaryOperator<VirtualMachine> configuration) {
         var program = parse(vmTestCase.input());
 
-        var compiler = compiler();
         var compilerError = compiler.compile(program);
         compilerError.ifPresent(err -> fail("compiler error: [{}]", err));
 
-        var virtualMachine = virtualMachine(compiler.bytecode());
+        var virtualMachine = configuration.apply(virtualMachine(compiler.bytecode()));
         virtualMachine.run();
 
         var stackElement = virtualMachine.lastPoppedStackElement();